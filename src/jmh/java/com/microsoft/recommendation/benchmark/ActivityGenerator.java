@@ -0,0 +1,114 @@
+package com.microsoft.recommendation.benchmark;
+
+import com.microsoft.recommendation.model.Activity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic activity stream. Users and items are drawn from Zipf distributions
+ * (skew 0 is uniform), so a few popular items and heavy users dominate as they do in real traffic.
+ * Popularity ranks are shuffled over the IDs so popular items are not also the smallest IDs.
+ * Actions follow a weighted mix such as {@code "view:70,add_to_cart:25,purchase:5"}.
+ */
+public final class ActivityGenerator {
+
+    private final ZipfSampler users;
+    private final ZipfSampler items;
+    private final String[] actions;
+    private final double[] actionCumulative;
+    private final long seed;
+
+    public ActivityGenerator(int numUsers, int numItems, double userSkew, double itemSkew, String actionMix, long seed) {
+        this.users = new ZipfSampler(numUsers, userSkew, seed);
+        this.items = new ZipfSampler(numItems, itemSkew, seed + 1);
+        this.seed = seed;
+
+        String[] parts = actionMix.split(",");
+        this.actions = new String[parts.length];
+        this.actionCumulative = new double[parts.length];
+        double total = 0.0;
+        for (int i = 0; i < parts.length; i++) {
+            String[] pair = parts[i].trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Action mix entries must look like action:weight, got '" + parts[i] + "'");
+            }
+            actions[i] = pair[0].trim();
+            total += Double.parseDouble(pair[1].trim());
+            actionCumulative[i] = total;
+        }
+        for (int i = 0; i < parts.length; i++) {
+            actionCumulative[i] /= total;
+        }
+    }
+
+    /**
+     * Generate activities; the same generator and count always give the same list
+     */
+    public List<Activity> generate(int count) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Activity> activities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            activities.add(new Activity(
+                    "U" + users.sample(random),
+                    "P" + items.sample(random),
+                    actions[indexOf(actionCumulative, random.nextDouble())]));
+        }
+        return activities;
+    }
+
+    /**
+     * Distinct user IDs that appear in the activities
+     */
+    public static List<String> userIds(List<Activity> activities) {
+        return activities.stream().map(Activity::getUserId).distinct().sorted().toList();
+    }
+
+    private static int indexOf(double[] cumulative, double u) {
+        int pos = Arrays.binarySearch(cumulative, u);
+        int index = pos >= 0 ? pos : -pos - 1;
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    /**
+     * Inverse-CDF sampler over ranks 0..n-1 with P(rank) proportional to 1 / (rank + 1)^skew,
+     * mapped to IDs through a fixed random permutation
+     */
+    private static final class ZipfSampler {
+
+        private final double[] cumulative;
+        private final int[] idOfRank;
+
+        ZipfSampler(int n, double skew, long seed) {
+            if (n < 1 || skew < 0.0) {
+                throw new IllegalArgumentException("Zipf sampler needs n >= 1 and skew >= 0");
+            }
+            cumulative = new double[n];
+            double total = 0.0;
+            for (int rank = 0; rank < n; rank++) {
+                total += 1.0 / Math.pow(rank + 1, skew);
+                cumulative[rank] = total;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= total;
+            }
+
+            idOfRank = new int[n];
+            Arrays.setAll(idOfRank, rank -> rank);
+            Random random = new Random(seed);
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = idOfRank[i];
+                idOfRank[i] = idOfRank[j];
+                idOfRank[j] = swap;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            return idOfRank[indexOf(cumulative, random.nextDouble())];
+        }
+    }
+}
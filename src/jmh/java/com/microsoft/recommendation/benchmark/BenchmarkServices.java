@@ -0,0 +1,52 @@
+package com.microsoft.recommendation.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.recommendation.service.ActivityStreamReader;
+import com.microsoft.recommendation.service.CollaborativeRecommendationService;
+import com.microsoft.recommendation.service.ItemBasedRecommendationService;
+import com.microsoft.recommendation.service.RecommendationCache;
+import com.microsoft.recommendation.service.RecommendationService;
+import com.microsoft.recommendation.service.ScoringExecutor;
+import com.microsoft.recommendation.service.ServiceMetrics;
+import com.microsoft.recommendation.service.UserSearchConfig;
+import com.microsoft.recommendation.service.VectorService;
+import com.microsoft.recommendation.service.VectorStore;
+import com.microsoft.recommendation.service.WriteAheadLog;
+import jakarta.validation.Validation;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * The service graph wired by hand the way the application context wires it, without Spring.
+ * The write-ahead log is disabled and a cache size of 0 makes every request compute its result.
+ */
+final class BenchmarkServices {
+
+    final VectorStore vectorStore;
+    final VectorService vectorService;
+    final RecommendationService recommendationService;
+    final CollaborativeRecommendationService collaborativeRecommendationService;
+
+    BenchmarkServices(UserSearchConfig searchConfig, long cacheSize) {
+        RecommendationCache cache = new RecommendationCache(cacheSize, Duration.ofMinutes(1));
+        ServiceMetrics metrics = new ServiceMetrics();
+        ScoringExecutor scoringExecutor = new ScoringExecutor(true, 0, 256, metrics);
+        vectorStore = new VectorStore(searchConfig);
+        vectorService = new VectorService(vectorStore, 0, metrics, Duration.ZERO);
+        ItemBasedRecommendationService itemBased = new ItemBasedRecommendationService(vectorService, 20);
+        ActivityStreamReader reader = new ActivityStreamReader(new ObjectMapper().findAndRegisterModules(),
+                Validation.buildDefaultValidatorFactory().getValidator(), 10_000);
+        try {
+            WriteAheadLog writeAheadLog = new WriteAheadLog("", "none", DataSize.ofMegabytes(64), Duration.ofMillis(2));
+            recommendationService = new RecommendationService(vectorStore, vectorService, itemBased, cache, reader,
+                    writeAheadLog, metrics, scoringExecutor);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        collaborativeRecommendationService = new CollaborativeRecommendationService(vectorService, vectorStore, cache,
+                metrics, scoringExecutor);
+    }
+}
@@ -0,0 +1,43 @@
+package com.microsoft.recommendation.benchmark;
+
+import com.microsoft.recommendation.service.DenseVectorMath;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dense dot product of the scalar and SIMD (Vector API) kernels at several dimensions.
+ * Item vectors are 10-dimensional today.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class DenseVectorBenchmark {
+
+    @Param({"10", "64", "256"})
+    public int dimension;
+
+    @Param({"scalar", "simd"})
+    public String implementation;
+
+    private DenseVectorMath vectorMath;
+    private double[] a;
+    private double[] b;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vectorMath = DenseVectorMath.select(implementation);
+        SplittableRandom random = new SplittableRandom(1);
+        a = random.doubles(dimension).toArray();
+        b = random.doubles(dimension).toArray();
+    }
+
+    @Benchmark
+    public double dot() {
+        return vectorMath.dot(a, b);
+    }
+}
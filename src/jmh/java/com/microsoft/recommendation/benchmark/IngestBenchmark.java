@@ -0,0 +1,61 @@
+package com.microsoft.recommendation.benchmark;
+
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.service.UserSearchConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full rebuilds: user vectors alone and the complete replace ingest (activity log, per-user
+ * counts, item vectors and user model)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IngestBenchmark {
+
+    @Param("10000")
+    public int users;
+
+    @Param("5000")
+    public int items;
+
+    @Param("200000")
+    public int activities;
+
+    @Param("1.0")
+    public double itemSkew;
+
+    @Param("0.5")
+    public double userSkew;
+
+    @Param("view:70,add_to_cart:25,purchase:5")
+    public String actionMix;
+
+    private List<Activity> batch;
+    private BenchmarkServices services;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batch = new ActivityGenerator(users, items, userSkew, itemSkew, actionMix, 42).generate(activities);
+        services = new BenchmarkServices(UserSearchConfig.EXACT, 0);
+    }
+
+    @Benchmark
+    public Object buildUserVectors() {
+        services.vectorService.buildUserVectors(batch);
+        return services.vectorService.getModel();
+    }
+
+    @Benchmark
+    public void ingestActivities(Blackhole blackhole) {
+        services.recommendationService.ingestActivities(batch);
+        blackhole.consume(services.recommendationService.getActivityCount());
+    }
+}
@@ -0,0 +1,94 @@
+package com.microsoft.recommendation.benchmark;
+
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.RecommendationItem;
+import com.microsoft.recommendation.service.SparseVector;
+import com.microsoft.recommendation.service.UserModel;
+import com.microsoft.recommendation.service.UserSearchConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request work against a model built once per trial. Every invocation asks for a different
+ * random user; the result cache is disabled unless cacheSize is raised.
+ * Throughput and sampled latency (with percentiles) are both reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class QueryBenchmark {
+
+    @Param("10000")
+    public int users;
+
+    @Param("5000")
+    public int items;
+
+    @Param("200000")
+    public int activities;
+
+    @Param("1.0")
+    public double itemSkew;
+
+    @Param("0.5")
+    public double userSkew;
+
+    @Param("view:70,add_to_cart:25,purchase:5")
+    public String actionMix;
+
+    @Param({"exact", "hnsw"})
+    public String search;
+
+    @Param("0")
+    public long cacheSize;
+
+    private BenchmarkServices services;
+    private String[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Activity> batch = new ActivityGenerator(users, items, userSkew, itemSkew, actionMix, 42).generate(activities);
+        UserSearchConfig.Mode mode = UserSearchConfig.Mode.valueOf(search.toUpperCase());
+        services = new BenchmarkServices(new UserSearchConfig(mode, 16, 200, 64), cacheSize);
+        services.recommendationService.ingestActivities(batch);
+        userIds = ActivityGenerator.userIds(batch).toArray(new String[0]);
+    }
+
+    /**
+     * Per-thread cursor over random users
+     */
+    @State(Scope.Thread)
+    public static class UserCursor {
+
+        private final SplittableRandom random = new SplittableRandom(7);
+
+        String next(String[] userIds) {
+            return userIds[random.nextInt(userIds.length)];
+        }
+    }
+
+    @Benchmark
+    public List<RecommendationItem> getRecommendations(UserCursor cursor) {
+        return services.recommendationService.getRecommendations(cursor.next(userIds), 10);
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Float>> topKSimilarUsers(UserCursor cursor) {
+        String userId = cursor.next(userIds);
+        UserModel model = services.vectorService.getModel();
+        SparseVector vector = model.getUserVector(userId);
+        return services.vectorStore.topKSimilarUsers(model, vector, 5, userId);
+    }
+
+    @Benchmark
+    public List<RecommendationItem> getCollaborativeRecommendations(UserCursor cursor) {
+        return services.collaborativeRecommendationService.getCollaborativeRecommendations(cursor.next(userIds), 10);
+    }
+}
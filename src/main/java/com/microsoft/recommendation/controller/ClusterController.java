@@ -0,0 +1,102 @@
+package com.microsoft.recommendation.controller;
+
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.ClusterNeighbor;
+import com.microsoft.recommendation.model.ClusterSearchRequest;
+import com.microsoft.recommendation.model.ClusterUserVector;
+import com.microsoft.recommendation.model.CollaborativeRecommendationResponse;
+import com.microsoft.recommendation.model.SimilarUser;
+import com.microsoft.recommendation.service.ClusterService;
+import com.microsoft.recommendation.service.ClusterTopology;
+import com.microsoft.recommendation.service.InvalidRequestException;
+import com.microsoft.recommendation.service.RecommendationService;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cluster mode endpoints: the coordinator for collaborative recommendations and the node-to-node
+ * calls it fans out to
+ */
+@RestController
+@RequestMapping("/cluster")
+public class ClusterController {
+
+    private final ClusterService clusterService;
+    private final ClusterTopology clusterTopology;
+    private final RecommendationService recommendationService;
+
+    public ClusterController(ClusterService clusterService,
+                             ClusterTopology clusterTopology,
+                             RecommendationService recommendationService) {
+        this.clusterService = clusterService;
+        this.clusterTopology = clusterTopology;
+        this.recommendationService = recommendationService;
+    }
+
+    /**
+     * GET /cluster - Membership of this node
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> topology() {
+        return ResponseEntity.ok(Map.of(
+                "enabled", clusterTopology.isEnabled(),
+                "nodeIndex", clusterTopology.getNodeIndex(),
+                "peers", clusterTopology.getPeers(),
+                "activities", recommendationService.getActivityCount()
+        ));
+    }
+
+    /**
+     * GET /cluster/recommendCollaborative - Collaborative recommendations computed over every node
+     */
+    @GetMapping("/recommendCollaborative")
+    public ResponseEntity<CollaborativeRecommendationResponse> recommendCollaborative(
+            @RequestParam String userId,
+            @RequestParam(defaultValue = "5") int k,
+            @RequestParam(defaultValue = "5") int neighbors) {
+
+        var result = clusterService.recommend(userId, k, neighbors);
+        var similarUsers = result.similarUsers()
+                .stream()
+                .map(entry -> new SimilarUser(entry.getKey(), Math.round(entry.getValue() * 100.0) / 100.0))
+                .toList();
+        return ResponseEntity.ok(new CollaborativeRecommendationResponse(userId, result.recommendations(), similarUsers));
+    }
+
+    /**
+     * POST /cluster/ingest - Apply activities routed to this node by another node's /ingest
+     */
+    @PostMapping("/ingest")
+    public ResponseEntity<Map<String, Object>> ingest(
+            @Valid @RequestBody List<Activity> activities,
+            @RequestParam(defaultValue = "replace") String mode) {
+
+        boolean append = "append".equalsIgnoreCase(mode);
+        if (!append && !"replace".equalsIgnoreCase(mode)) {
+            throw new InvalidRequestException("Unsupported ingest mode '" + mode + "'. Use 'replace' or 'append'.");
+        }
+        clusterService.ingestLocal(activities, append);
+        return ResponseEntity.ok(Map.of("count", activities.size(), "mode", mode.toLowerCase()));
+    }
+
+    /**
+     * GET /cluster/users/{userId} - Normalized vector of a user owned by this node
+     */
+    @GetMapping("/users/{userId}")
+    public ResponseEntity<ClusterUserVector> user(@PathVariable String userId) {
+        ClusterUserVector user = clusterService.getLocalUser(userId);
+        return user != null ? ResponseEntity.ok(user) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * POST /cluster/similarUsers - This node's top-K neighbors of a query, with their item weights
+     */
+    @PostMapping("/similarUsers")
+    public ResponseEntity<List<ClusterNeighbor>> similarUsers(@RequestBody ClusterSearchRequest request) {
+        return ResponseEntity.ok(clusterService.searchLocal(request));
+    }
+}
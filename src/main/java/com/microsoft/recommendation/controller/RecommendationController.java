@@ -1,16 +1,32 @@
 package com.microsoft.recommendation.controller;
 
 import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.AnnRecallReport;
+import com.microsoft.recommendation.model.BatchRecommendationRequest;
+import com.microsoft.recommendation.model.CacheStatsResponse;
 import com.microsoft.recommendation.model.CollaborativeRecommendationResponse;
 import com.microsoft.recommendation.model.HealthResponse;
 import com.microsoft.recommendation.model.RecommendationResponse;
 import com.microsoft.recommendation.model.SimilarUser;
+import com.microsoft.recommendation.model.UserShardStats;
+import com.microsoft.recommendation.service.ClusterService;
+import com.microsoft.recommendation.service.ClusterTopology;
 import com.microsoft.recommendation.service.CollaborativeRecommendationService;
+import com.microsoft.recommendation.service.InvalidRequestException;
+import com.microsoft.recommendation.service.ItemBasedRecommendationService;
+import com.microsoft.recommendation.service.MetricsService;
+import com.microsoft.recommendation.service.RecommendationCache;
 import com.microsoft.recommendation.service.RecommendationService;
+import com.microsoft.recommendation.service.SnapshotService;
+import com.microsoft.recommendation.service.VectorStore;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -20,11 +36,32 @@ public class RecommendationController {
     
     private final RecommendationService recommendationService;
     private final CollaborativeRecommendationService collaborativeRecommendationService;
+    private final ItemBasedRecommendationService itemBasedRecommendationService;
+    private final VectorStore vectorStore;
+    private final RecommendationCache recommendationCache;
+    private final SnapshotService snapshotService;
+    private final ClusterTopology clusterTopology;
+    private final ClusterService clusterService;
+    private final MetricsService metricsService;
     
     public RecommendationController(RecommendationService recommendationService,
-                                   CollaborativeRecommendationService collaborativeRecommendationService) {
+                                   CollaborativeRecommendationService collaborativeRecommendationService,
+                                   ItemBasedRecommendationService itemBasedRecommendationService,
+                                   VectorStore vectorStore,
+                                   RecommendationCache recommendationCache,
+                                   SnapshotService snapshotService,
+                                   ClusterTopology clusterTopology,
+                                   ClusterService clusterService,
+                                   MetricsService metricsService) {
         this.recommendationService = recommendationService;
         this.collaborativeRecommendationService = collaborativeRecommendationService;
+        this.itemBasedRecommendationService = itemBasedRecommendationService;
+        this.vectorStore = vectorStore;
+        this.recommendationCache = recommendationCache;
+        this.snapshotService = snapshotService;
+        this.clusterTopology = clusterTopology;
+        this.clusterService = clusterService;
+        this.metricsService = metricsService;
     }
     
     /**
@@ -35,20 +72,61 @@ public class RecommendationController {
         return ResponseEntity.ok(Map.of(
                 "service", "recommendation-service",
                 "status", "ok",
-                "endpoints", List.of("/health", "/ingest", "/recommend", "/recommendCollaborative")
+                "endpoints", List.of("/health", "/metrics", "/ingest", "/recommend", "/recommendCollaborative",
+                        "/recommendItemBased")
         ));
     }
-
+    
     /**
-     * POST /ingest - Ingest user activities
+     * POST /ingest - Ingest user activities.
+     * mode=replace (default) rebuilds everything from the batch; mode=append adds it to the existing data.
+     * In cluster mode the activities are routed to the nodes owning their users.
      */
     @PostMapping("/ingest")
-    public ResponseEntity<Map<String, Object>> ingestActivities(@Valid @RequestBody List<Activity> activities) {
-        recommendationService.ingestActivities(activities);
+    public ResponseEntity<Map<String, Object>> ingestActivities(
+            @Valid @RequestBody List<Activity> activities,
+            @RequestParam(defaultValue = "replace") String mode) {
+        
+        boolean append = "append".equalsIgnoreCase(mode);
+        if (!append && !"replace".equalsIgnoreCase(mode)) {
+            throw new InvalidRequestException("Unsupported ingest mode '" + mode + "'. Use 'replace' or 'append'.");
+        }
+        if (clusterTopology.isEnabled()) {
+            clusterService.ingest(activities, append);
+        } else if (append) {
+            recommendationService.appendActivities(activities);
+        } else {
+            recommendationService.ingestActivities(activities);
+        }
         
         return ResponseEntity.ok(Map.of(
                 "message", "Activities ingested successfully",
                 "count", activities.size(),
+                "mode", mode.toLowerCase(),
+                "status", "success"
+        ));
+    }
+    
+    /**
+     * POST /ingest/stream - Ingest a large body of activities (NDJSON or a JSON array) incrementally,
+     * without binding the whole payload into memory. Supports the same modes as /ingest.
+     * In cluster mode the node keeps only the users it owns, so the same stream can be sent to every node.
+     */
+    @PostMapping(path = "/ingest/stream", consumes = {"application/x-ndjson", "application/json"})
+    public ResponseEntity<Map<String, Object>> ingestActivitiesStream(
+            InputStream body,
+            @RequestParam(defaultValue = "replace") String mode) throws IOException {
+        
+        boolean append = "append".equalsIgnoreCase(mode);
+        if (!append && !"replace".equalsIgnoreCase(mode)) {
+            throw new InvalidRequestException("Unsupported ingest mode '" + mode + "'. Use 'replace' or 'append'.");
+        }
+        long count = recommendationService.ingestActivities(body, append, clusterTopology::owns);
+        
+        return ResponseEntity.ok(Map.of(
+                "message", "Activities ingested successfully",
+                "count", count,
+                "mode", mode.toLowerCase(),
                 "status", "success"
         ));
     }
@@ -67,6 +145,21 @@ public class RecommendationController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * POST /recommend/batch - Get recommendations for many users; results follow the order of userIds
+     */
+    @PostMapping("/recommend/batch")
+    public ResponseEntity<List<RecommendationResponse>> getRecommendationsBatch(
+            @Valid @RequestBody BatchRecommendationRequest request) {
+        
+        var recommendations = recommendationService.getRecommendations(request.getUserIds(), request.getK());
+        String generatedAt = ZonedDateTime.now().toString();
+        var responses = request.getUserIds().stream()
+                .map(userId -> new RecommendationResponse(userId, recommendations.get(userId), generatedAt))
+                .toList();
+        return ResponseEntity.ok(responses);
+    }
+    
     /**
      * GET /health - Health check endpoint
      */
@@ -75,16 +168,29 @@ public class RecommendationController {
         return ResponseEntity.ok(new HealthResponse("ok"));
     }
     
+    /**
+     * GET /metrics - Latency histograms and model gauges in the Prometheus text format
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<String> metrics() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("text/plain; version=0.0.4; charset=utf-8"))
+                .body(metricsService.scrape());
+    }
+    
     /**
      * GET /recommendCollaborative - Get collaborative filtering recommendations
+     * and the similar users they were computed from
      */
     @GetMapping("/recommendCollaborative")
     public ResponseEntity<CollaborativeRecommendationResponse> getCollaborativeRecommendations(
             @RequestParam String userId,
-            @RequestParam(defaultValue = "5") int k) {
+            @RequestParam(defaultValue = "5") int k,
+            @RequestParam(defaultValue = "5") int neighbors) {
         
-        var recommendations = collaborativeRecommendationService.getCollaborativeRecommendations(userId, k);
-        var similarUsers = collaborativeRecommendationService.getSimilarUsers(userId, 5)
+        var result = collaborativeRecommendationService.recommend(userId, k, neighbors);
+        var recommendations = result.recommendations();
+        var similarUsers = result.similarUsers()
                 .stream()
                 .map(entry -> new SimilarUser(entry.getKey(), Math.round(entry.getValue() * 100.0) / 100.0))
                 .toList();
@@ -92,4 +198,87 @@ public class RecommendationController {
         var response = new CollaborativeRecommendationResponse(userId, recommendations, similarUsers);
         return ResponseEntity.ok(response);
     }
+    
+    /**
+     * POST /recommendCollaborative/batch - Get collaborative recommendations for many users;
+     * results follow the order of userIds
+     */
+    @PostMapping("/recommendCollaborative/batch")
+    public ResponseEntity<List<CollaborativeRecommendationResponse>> getCollaborativeRecommendationsBatch(
+            @Valid @RequestBody BatchRecommendationRequest request) {
+        
+        var results = collaborativeRecommendationService.recommend(
+                request.getUserIds(), request.getK(), request.getNeighbors());
+        String generatedAt = ZonedDateTime.now().toString();
+        var responses = request.getUserIds().stream()
+                .map(userId -> {
+                    var result = results.get(userId);
+                    var similarUsers = result.similarUsers()
+                            .stream()
+                            .map(entry -> new SimilarUser(entry.getKey(), Math.round(entry.getValue() * 100.0) / 100.0))
+                            .toList();
+                    var response = new CollaborativeRecommendationResponse(userId, result.recommendations(), similarUsers);
+                    response.setGeneratedAt(generatedAt);
+                    return response;
+                })
+                .toList();
+        return ResponseEntity.ok(responses);
+    }
+    
+    /**
+     * GET /recommendItemBased - Get item-based recommendations from precomputed item-item similarities
+     */
+    @GetMapping("/recommendItemBased")
+    public ResponseEntity<RecommendationResponse> getItemBasedRecommendations(
+            @RequestParam String userId,
+            @RequestParam(defaultValue = "5") int k) {
+        
+        var recommendations = itemBasedRecommendationService.getItemBasedRecommendations(userId, k);
+        return ResponseEntity.ok(new RecommendationResponse(userId, recommendations));
+    }
+    
+    /**
+     * GET /similarUsers/recall - Compare approximate (HNSW) neighbor search with exact search
+     */
+    @GetMapping("/similarUsers/recall")
+    public ResponseEntity<AnnRecallReport> similarUsersRecall(
+            @RequestParam(defaultValue = "200") int sampleSize,
+            @RequestParam(defaultValue = "5") int k,
+            @RequestParam(defaultValue = "16,32,64,128,256") List<Integer> efSearch) {
+        
+        return ResponseEntity.ok(vectorStore.evaluateRecall(sampleSize, k, efSearch));
+    }
+    
+    /**
+     * GET /similarUsers/shards - Per-shard sizes and search latency of sharded exact search
+     */
+    @GetMapping("/similarUsers/shards")
+    public ResponseEntity<List<UserShardStats>> similarUsersShards() {
+        return ResponseEntity.ok(vectorStore.getShardStats());
+    }
+    
+    /**
+     * GET /cache/stats - Recommendation cache hit, miss and eviction counters
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<CacheStatsResponse> cacheStats() {
+        return ResponseEntity.ok(recommendationCache.getStats());
+    }
+    
+    /**
+     * POST /snapshot - Write the current state to the configured snapshot file
+     */
+    @PostMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> writeSnapshot() throws IOException {
+        long start = System.nanoTime();
+        long sizeBytes = snapshotService.writeSnapshot();
+        
+        return ResponseEntity.ok(Map.of(
+                "message", "Snapshot written successfully",
+                "path", snapshotService.getPath().toString(),
+                "sizeBytes", sizeBytes,
+                "activities", recommendationService.getActivityCount(),
+                "durationMs", (System.nanoTime() - start) / 1_000_000
+        ));
+    }
 }
@@ -0,0 +1,202 @@
+package com.microsoft.recommendation.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.microsoft.recommendation.model.BatchRecommendationRequest;
+import com.microsoft.recommendation.model.CollaborativeRecommendationResponse;
+import com.microsoft.recommendation.model.RecommendationResponse;
+import com.microsoft.recommendation.model.SimilarUser;
+import com.microsoft.recommendation.model.SimilarUsersResponse;
+import com.microsoft.recommendation.service.CollaborativeRecommendationService;
+import com.microsoft.recommendation.service.InvalidRequestException;
+import com.microsoft.recommendation.service.RecommendationService;
+import com.microsoft.recommendation.service.ScoringExecutor;
+import com.microsoft.recommendation.service.UserModel;
+import com.microsoft.recommendation.service.VectorService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Streaming variants of the batch endpoints, for consumers of large result sets.
+ * Results are written as newline-delimited JSON (one object per user) while they are computed,
+ * a chunk of users at a time, on an async request thread rather than a servlet container thread.
+ * The next chunk is computed only after the previous one has been written, and writes block while
+ * the client is not reading, so a slow consumer slows the stream down instead of making the server
+ * buffer the whole response.
+ */
+@RestController
+public class StreamingController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final RecommendationService recommendationService;
+    private final CollaborativeRecommendationService collaborativeRecommendationService;
+    private final VectorService vectorService;
+    private final ScoringExecutor scoringExecutor;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter lineWriter;
+    private final int chunkSize;
+
+    public StreamingController(RecommendationService recommendationService,
+                               CollaborativeRecommendationService collaborativeRecommendationService,
+                               VectorService vectorService,
+                               ScoringExecutor scoringExecutor,
+                               ObjectMapper objectMapper,
+                               @Value("${recommendation.stream.chunk-size:256}") int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("recommendation.stream.chunk-size must be at least 1");
+        }
+        this.recommendationService = recommendationService;
+        this.collaborativeRecommendationService = collaborativeRecommendationService;
+        this.vectorService = vectorService;
+        this.scoringExecutor = scoringExecutor;
+        this.objectMapper = objectMapper;
+        // Flushing is done once per chunk, not once per line
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * POST /recommend/batch/stream - Personalized recommendations for many users as NDJSON,
+     * in the order of userIds
+     */
+    @PostMapping(path = "/recommend/batch/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamRecommendations(
+            @Valid @RequestBody BatchRecommendationRequest request) {
+
+        String generatedAt = ZonedDateTime.now().toString();
+        return ndjson(partition(request.getUserIds()), chunk -> {
+            var recommendations = scoringExecutor.executeWhenAdmitted(
+                    () -> recommendationService.getRecommendations(chunk, request.getK()));
+            return chunk.stream()
+                    .map(userId -> new RecommendationResponse(userId, recommendations.get(userId), generatedAt))
+                    .toList();
+        });
+    }
+
+    /**
+     * POST /recommendCollaborative/batch/stream - Collaborative recommendations for many users as NDJSON,
+     * in the order of userIds
+     */
+    @PostMapping(path = "/recommendCollaborative/batch/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamCollaborativeRecommendations(
+            @Valid @RequestBody BatchRecommendationRequest request) {
+
+        String generatedAt = ZonedDateTime.now().toString();
+        return ndjson(partition(request.getUserIds()), chunk -> {
+            var results = scoringExecutor.executeWhenAdmitted(
+                    () -> collaborativeRecommendationService.recommend(chunk, request.getK(), request.getNeighbors()));
+            return chunk.stream()
+                    .map(userId -> {
+                        var result = results.get(userId);
+                        var response = new CollaborativeRecommendationResponse(userId, result.recommendations(),
+                                toSimilarUsers(result.similarUsers()));
+                        response.setGeneratedAt(generatedAt);
+                        return response;
+                    })
+                    .toList();
+        });
+    }
+
+    /**
+     * GET /similarUsers/export - The similar users of every user as NDJSON, in user ordinal order.
+     * The whole export is computed from the model published when the request arrived.
+     */
+    @GetMapping(path = "/similarUsers/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportSimilarUsers(
+            @RequestParam(defaultValue = "5") int neighbors) {
+
+        if (neighbors < 1) {
+            throw new InvalidRequestException("neighbors must be at least 1");
+        }
+        UserModel model = vectorService.getModel();
+        return ndjson(userChunks(model), chunk -> {
+            var similarUsers = collaborativeRecommendationService.getSimilarUsers(model, chunk, neighbors);
+            List<SimilarUsersResponse> responses = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                responses.add(new SimilarUsersResponse(chunk.get(i), toSimilarUsers(similarUsers.get(i))));
+            }
+            return responses;
+        });
+    }
+
+    /**
+     * Stream one JSON line per response, computing the responses of one chunk of users at a time
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(Iterator<List<String>> userChunks,
+                                                         Function<List<String>, List<?>> responses) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                while (userChunks.hasNext()) {
+                    for (Object response : responses.apply(userChunks.next())) {
+                        lineWriter.writeValue(generator, response);
+                        generator.writeRaw('\n');
+                    }
+                    // Blocks while the client is not reading
+                    generator.flush();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
+    private Iterator<List<String>> partition(List<String> userIds) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < userIds.size(); from += chunkSize) {
+            chunks.add(userIds.subList(from, Math.min(from + chunkSize, userIds.size())));
+        }
+        return chunks.iterator();
+    }
+
+    /**
+     * Chunks of the users of a model in ordinal order, collected lazily as the stream advances
+     */
+    private Iterator<List<String>> userChunks(UserModel model) {
+        return new Iterator<>() {
+
+            private int nextOrdinal = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (nextOrdinal < model.getNumOrdinals() && model.getUser(nextOrdinal) == null) {
+                    nextOrdinal++;
+                }
+                return nextOrdinal < model.getNumOrdinals();
+            }
+
+            @Override
+            public List<String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<String> chunk = new ArrayList<>(chunkSize);
+                for (; nextOrdinal < model.getNumOrdinals() && chunk.size() < chunkSize; nextOrdinal++) {
+                    if (model.getUser(nextOrdinal) != null) {
+                        chunk.add(model.getUserId(nextOrdinal));
+                    }
+                }
+                return chunk;
+            }
+        };
+    }
+
+    private static List<SimilarUser> toSimilarUsers(List<Map.Entry<String, Float>> similarUsers) {
+        return similarUsers.stream()
+                .map(entry -> new SimilarUser(entry.getKey(), Math.round(entry.getValue() * 100.0) / 100.0))
+                .toList();
+    }
+}
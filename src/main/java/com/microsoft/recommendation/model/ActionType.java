@@ -0,0 +1,24 @@
+package com.microsoft.recommendation.model;
+
+/**
+ * Interaction types understood by the engine. Raw action strings are parsed once at ingest;
+ * anything other than view or add_to_cart is kept as OTHER.
+ */
+public enum ActionType {
+    
+    VIEW,
+    ADD_TO_CART,
+    OTHER;
+    
+    /**
+     * Parse an action string case-insensitively
+     */
+    public static ActionType parse(String action) {
+        if ("add_to_cart".equalsIgnoreCase(action)) {
+            return ADD_TO_CART;
+        } else if ("view".equalsIgnoreCase(action)) {
+            return VIEW;
+        }
+        return OTHER;
+    }
+}
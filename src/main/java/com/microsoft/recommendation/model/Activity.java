@@ -2,6 +2,8 @@ package com.microsoft.recommendation.model;
 
 import jakarta.validation.constraints.NotBlank;
 
+import java.time.Instant;
+
 public class Activity {
     
     @NotBlank(message = "userId is required")
@@ -13,6 +15,9 @@ public class Activity {
     @NotBlank(message = "action is required")
     private String action;
     
+    // Optional time of the event; events without one are stamped with the time they were ingested
+    private Instant timestamp;
+    
     public Activity() {}
     
     public Activity(String userId, String itemId, String action) {
@@ -21,6 +26,13 @@ public class Activity {
         this.action = action;
     }
     
+    public Activity(String userId, String itemId, String action, Instant timestamp) {
+        this.userId = userId;
+        this.itemId = itemId;
+        this.action = action;
+        this.timestamp = timestamp;
+    }
+    
     public String getUserId() {
         return userId;
     }
@@ -44,4 +56,12 @@ public class Activity {
     public void setAction(String action) {
         this.action = action;
     }
+    
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+    
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
 }
@@ -0,0 +1,135 @@
+package com.microsoft.recommendation.model;
+
+import java.util.List;
+
+public class AnnRecallReport {
+    
+    private String searchMode;
+    private int users;
+    private int sampleSize;
+    private int k;
+    private int m;
+    private int efConstruction;
+    private double exactAvgMicros;
+    private List<EfSearchResult> results;
+    
+    public AnnRecallReport() {}
+    
+    public AnnRecallReport(String searchMode, int users, int sampleSize, int k, int m, int efConstruction,
+                           double exactAvgMicros, List<EfSearchResult> results) {
+        this.searchMode = searchMode;
+        this.users = users;
+        this.sampleSize = sampleSize;
+        this.k = k;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.exactAvgMicros = exactAvgMicros;
+        this.results = results;
+    }
+    
+    public String getSearchMode() {
+        return searchMode;
+    }
+    
+    public void setSearchMode(String searchMode) {
+        this.searchMode = searchMode;
+    }
+    
+    public int getUsers() {
+        return users;
+    }
+    
+    public void setUsers(int users) {
+        this.users = users;
+    }
+    
+    public int getSampleSize() {
+        return sampleSize;
+    }
+    
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+    
+    public int getK() {
+        return k;
+    }
+    
+    public void setK(int k) {
+        this.k = k;
+    }
+    
+    public int getM() {
+        return m;
+    }
+    
+    public void setM(int m) {
+        this.m = m;
+    }
+    
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+    
+    public void setEfConstruction(int efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+    
+    public double getExactAvgMicros() {
+        return exactAvgMicros;
+    }
+    
+    public void setExactAvgMicros(double exactAvgMicros) {
+        this.exactAvgMicros = exactAvgMicros;
+    }
+    
+    public List<EfSearchResult> getResults() {
+        return results;
+    }
+    
+    public void setResults(List<EfSearchResult> results) {
+        this.results = results;
+    }
+    
+    /**
+     * Recall and latency of approximate search at one efSearch setting
+     */
+    public static class EfSearchResult {
+        
+        private int efSearch;
+        private double recall;
+        private double avgMicros;
+        
+        public EfSearchResult() {}
+        
+        public EfSearchResult(int efSearch, double recall, double avgMicros) {
+            this.efSearch = efSearch;
+            this.recall = recall;
+            this.avgMicros = avgMicros;
+        }
+        
+        public int getEfSearch() {
+            return efSearch;
+        }
+        
+        public void setEfSearch(int efSearch) {
+            this.efSearch = efSearch;
+        }
+        
+        public double getRecall() {
+            return recall;
+        }
+        
+        public void setRecall(double recall) {
+            this.recall = recall;
+        }
+        
+        public double getAvgMicros() {
+            return avgMicros;
+        }
+        
+        public void setAvgMicros(double avgMicros) {
+            this.avgMicros = avgMicros;
+        }
+    }
+}
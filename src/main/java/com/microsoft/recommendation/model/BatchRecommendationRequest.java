@@ -0,0 +1,50 @@
+package com.microsoft.recommendation.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BatchRecommendationRequest {
+    
+    @NotEmpty(message = "userIds is required")
+    @Size(max = 10000, message = "at most 10000 userIds per batch")
+    private List<@NotBlank(message = "userIds must not contain blank IDs") String> userIds;
+    
+    private int k = 5;
+    
+    private int neighbors = 5;
+    
+    public BatchRecommendationRequest() {}
+    
+    public BatchRecommendationRequest(List<String> userIds, int k, int neighbors) {
+        this.userIds = userIds;
+        this.k = k;
+        this.neighbors = neighbors;
+    }
+    
+    public List<String> getUserIds() {
+        return userIds;
+    }
+    
+    public void setUserIds(List<String> userIds) {
+        this.userIds = userIds;
+    }
+    
+    public int getK() {
+        return k;
+    }
+    
+    public void setK(int k) {
+        this.k = k;
+    }
+    
+    public int getNeighbors() {
+        return neighbors;
+    }
+    
+    public void setNeighbors(int neighbors) {
+        this.neighbors = neighbors;
+    }
+}
@@ -0,0 +1,70 @@
+package com.microsoft.recommendation.model;
+
+public class CacheStatsResponse {
+    
+    private long size;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long invalidations;
+    
+    public CacheStatsResponse() {}
+    
+    public CacheStatsResponse(long size, long hits, long misses, double hitRate, long evictions, long invalidations) {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.hitRate = hitRate;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public void setSize(long size) {
+        this.size = size;
+    }
+    
+    public long getHits() {
+        return hits;
+    }
+    
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+    
+    public long getMisses() {
+        return misses;
+    }
+    
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+    
+    public double getHitRate() {
+        return hitRate;
+    }
+    
+    public void setHitRate(double hitRate) {
+        this.hitRate = hitRate;
+    }
+    
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+    
+    public long getInvalidations() {
+        return invalidations;
+    }
+    
+    public void setInvalidations(long invalidations) {
+        this.invalidations = invalidations;
+    }
+}
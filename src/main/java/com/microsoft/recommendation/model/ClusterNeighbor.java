@@ -0,0 +1,52 @@
+package com.microsoft.recommendation.model;
+
+import java.util.List;
+
+public class ClusterNeighbor {
+    
+    private String userId;
+    private float similarity;
+    private List<String> itemIds;
+    private float[] weights;
+    
+    public ClusterNeighbor() {}
+    
+    public ClusterNeighbor(String userId, float similarity, List<String> itemIds, float[] weights) {
+        this.userId = userId;
+        this.similarity = similarity;
+        this.itemIds = itemIds;
+        this.weights = weights;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+    
+    public float getSimilarity() {
+        return similarity;
+    }
+    
+    public void setSimilarity(float similarity) {
+        this.similarity = similarity;
+    }
+    
+    public List<String> getItemIds() {
+        return itemIds;
+    }
+    
+    public void setItemIds(List<String> itemIds) {
+        this.itemIds = itemIds;
+    }
+    
+    public float[] getWeights() {
+        return weights;
+    }
+    
+    public void setWeights(float[] weights) {
+        this.weights = weights;
+    }
+}
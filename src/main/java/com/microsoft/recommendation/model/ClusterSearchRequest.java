@@ -0,0 +1,52 @@
+package com.microsoft.recommendation.model;
+
+import java.util.List;
+
+public class ClusterSearchRequest {
+    
+    private List<String> itemIds;
+    private float[] values;
+    private int k;
+    private String excludeUserId;
+    
+    public ClusterSearchRequest() {}
+    
+    public ClusterSearchRequest(List<String> itemIds, float[] values, int k, String excludeUserId) {
+        this.itemIds = itemIds;
+        this.values = values;
+        this.k = k;
+        this.excludeUserId = excludeUserId;
+    }
+    
+    public List<String> getItemIds() {
+        return itemIds;
+    }
+    
+    public void setItemIds(List<String> itemIds) {
+        this.itemIds = itemIds;
+    }
+    
+    public float[] getValues() {
+        return values;
+    }
+    
+    public void setValues(float[] values) {
+        this.values = values;
+    }
+    
+    public int getK() {
+        return k;
+    }
+    
+    public void setK(int k) {
+        this.k = k;
+    }
+    
+    public String getExcludeUserId() {
+        return excludeUserId;
+    }
+    
+    public void setExcludeUserId(String excludeUserId) {
+        this.excludeUserId = excludeUserId;
+    }
+}
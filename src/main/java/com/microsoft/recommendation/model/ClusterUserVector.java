@@ -0,0 +1,42 @@
+package com.microsoft.recommendation.model;
+
+import java.util.List;
+
+public class ClusterUserVector {
+    
+    private String userId;
+    private List<String> itemIds;
+    private float[] values;
+    
+    public ClusterUserVector() {}
+    
+    public ClusterUserVector(String userId, List<String> itemIds, float[] values) {
+        this.userId = userId;
+        this.itemIds = itemIds;
+        this.values = values;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+    
+    public List<String> getItemIds() {
+        return itemIds;
+    }
+    
+    public void setItemIds(List<String> itemIds) {
+        this.itemIds = itemIds;
+    }
+    
+    public float[] getValues() {
+        return values;
+    }
+    
+    public void setValues(float[] values) {
+        this.values = values;
+    }
+}
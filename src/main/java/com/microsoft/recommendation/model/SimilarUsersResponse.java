@@ -0,0 +1,32 @@
+package com.microsoft.recommendation.model;
+
+import java.util.List;
+
+public class SimilarUsersResponse {
+    
+    private String userId;
+    private List<SimilarUser> similarUsers;
+    
+    public SimilarUsersResponse() {}
+    
+    public SimilarUsersResponse(String userId, List<SimilarUser> similarUsers) {
+        this.userId = userId;
+        this.similarUsers = similarUsers;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+    
+    public List<SimilarUser> getSimilarUsers() {
+        return similarUsers;
+    }
+    
+    public void setSimilarUsers(List<SimilarUser> similarUsers) {
+        this.similarUsers = similarUsers;
+    }
+}
@@ -0,0 +1,81 @@
+package com.microsoft.recommendation.model;
+
+public class UserShardStats {
+    
+    private int shard;
+    private int firstOrdinal;
+    private int ordinals;
+    private int users;
+    private int postings;
+    private long searches;
+    private double avgSearchMicros;
+    
+    public UserShardStats() {}
+    
+    public UserShardStats(int shard, int firstOrdinal, int ordinals, int users, int postings, long searches,
+                          double avgSearchMicros) {
+        this.shard = shard;
+        this.firstOrdinal = firstOrdinal;
+        this.ordinals = ordinals;
+        this.users = users;
+        this.postings = postings;
+        this.searches = searches;
+        this.avgSearchMicros = avgSearchMicros;
+    }
+    
+    public int getShard() {
+        return shard;
+    }
+    
+    public void setShard(int shard) {
+        this.shard = shard;
+    }
+    
+    public int getFirstOrdinal() {
+        return firstOrdinal;
+    }
+    
+    public void setFirstOrdinal(int firstOrdinal) {
+        this.firstOrdinal = firstOrdinal;
+    }
+    
+    public int getOrdinals() {
+        return ordinals;
+    }
+    
+    public void setOrdinals(int ordinals) {
+        this.ordinals = ordinals;
+    }
+    
+    public int getUsers() {
+        return users;
+    }
+    
+    public void setUsers(int users) {
+        this.users = users;
+    }
+    
+    public int getPostings() {
+        return postings;
+    }
+    
+    public void setPostings(int postings) {
+        this.postings = postings;
+    }
+    
+    public long getSearches() {
+        return searches;
+    }
+    
+    public void setSearches(long searches) {
+        this.searches = searches;
+    }
+    
+    public double getAvgSearchMicros() {
+        return avgSearchMicros;
+    }
+    
+    public void setAvgSearchMicros(double avgSearchMicros) {
+        this.avgSearchMicros = avgSearchMicros;
+    }
+}
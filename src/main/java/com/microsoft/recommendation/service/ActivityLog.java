@@ -0,0 +1,219 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.ActionType;
+import com.microsoft.recommendation.model.Activity;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Append-only activity log stored column-wise in off-heap chunks: one int column for the user,
+ * one for the item, a byte column for the action and a long column for the timestamp.
+ * Users and items are interned into the log's own dictionaries in arrival order, so an event
+ * costs 17 bytes outside the Java heap and no object per event.
+ * Appends must be serialized by the caller; scans are safe from any thread and see every event
+ * appended before they started.
+ */
+public final class ActivityLog {
+
+    // Events per chunk; the log grows one chunk at a time and never copies existing events
+    private static final int CHUNK_EVENTS = 1 << 16;
+    private static final int BYTES_PER_EVENT = Integer.BYTES + Integer.BYTES + Byte.BYTES + Long.BYTES;
+    private static final ActionType[] ACTIONS = ActionType.values();
+
+    private final IdDictionary users = new IdDictionary();
+    private final IdDictionary items = new IdDictionary();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile long size;
+
+    /**
+     * Append a batch of activities received at the given time (epoch millis)
+     */
+    public void append(List<Activity> activities, long receivedAt) {
+        for (Activity activity : activities) {
+            append(activity.getUserId(), activity.getItemId(), ActionType.parse(activity.getAction()),
+                    eventTime(activity, receivedAt));
+        }
+    }
+
+    /**
+     * Time an activity is logged with: its own timestamp, or the time it was received if it has none.
+     * Timestamps in the future are capped at the time received.
+     */
+    public static long eventTime(Activity activity, long receivedAt) {
+        return activity.getTimestamp() != null
+                ? Math.min(activity.getTimestamp().toEpochMilli(), receivedAt)
+                : receivedAt;
+    }
+
+    /**
+     * Append a single event (single writer only)
+     */
+    public void append(String userId, String itemId, ActionType action, long timestamp) {
+        append(users.getOrAdd(userId), items.getOrAdd(itemId), action, timestamp);
+    }
+
+    /**
+     * Append an event whose user and item are already interned in this log's dictionaries
+     */
+    void append(int user, int item, ActionType action, long timestamp) {
+        long next = size;
+        int offset = (int) (next % CHUNK_EVENTS);
+        Chunk[] current = chunks;
+        if (offset == 0) {
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = new Chunk();
+            chunks = current;
+        }
+
+        Chunk chunk = current[current.length - 1];
+        chunk.users.put(offset, user);
+        chunk.items.put(offset, item);
+        chunk.actions.put(offset, (byte) action.ordinal());
+        chunk.timestamps.put(offset, timestamp);
+        // Publish the size last so scans never read a partially written event
+        size = next + 1;
+    }
+
+    /**
+     * Visit every event in append order
+     */
+    public void forEach(EventVisitor visitor) {
+        scan(-1, visitor);
+    }
+
+    /**
+     * Visit the events of one user in append order by scanning the user column
+     */
+    public void forEachOfUser(String userId, EventVisitor visitor) {
+        int user = users.get(userId);
+        if (user >= 0) {
+            scan(user, visitor);
+        }
+    }
+
+    /**
+     * Visit every event with the users split into shards (user % shards) that are visited in
+     * parallel. Each shard gets its own visitor and sees its users' events in append order, so
+     * per-user results match a sequential {@link #forEach(EventVisitor)}.
+     */
+    public void forEachByUserShard(int shards, IntFunction<EventVisitor> visitorForShard) {
+        if (shards == 1) {
+            forEach(visitorForShard.apply(0));
+            return;
+        }
+        long end = size;
+        Chunk[] current = chunks;
+        int numChunks = (int) ((end + CHUNK_EVENTS - 1) / CHUNK_EVENTS);
+
+        // Pass 1: bucket every chunk's event offsets by shard, chunks in parallel
+        int[][][] offsets = new int[numChunks][][];
+        IntStream.range(0, numChunks).parallel().forEach(c ->
+                offsets[c] = current[c].offsetsByShard((int) Math.min(CHUNK_EVENTS, end - (long) c * CHUNK_EVENTS), shards));
+
+        // Pass 2: every shard walks its buckets in chunk order
+        IntStream.range(0, shards).parallel().forEach(shard -> {
+            EventVisitor visitor = visitorForShard.apply(shard);
+            for (int c = 0; c < numChunks; c++) {
+                Chunk chunk = current[c];
+                for (int i : offsets[c][shard]) {
+                    visitor.accept(chunk.users.get(i), chunk.items.get(i), ACTIONS[chunk.actions.get(i)],
+                            chunk.timestamps.get(i));
+                }
+            }
+        });
+    }
+
+    private void scan(int user, EventVisitor visitor) {
+        long end = size;
+        Chunk[] current = chunks;
+        for (int c = 0; (long) c * CHUNK_EVENTS < end; c++) {
+            Chunk chunk = current[c];
+            int length = (int) Math.min(CHUNK_EVENTS, end - (long) c * CHUNK_EVENTS);
+            for (int i = 0; i < length; i++) {
+                if (user >= 0 && chunk.users.get(i) != user) {
+                    continue;
+                }
+                visitor.accept(chunk.users.get(i), chunk.items.get(i), ACTIONS[chunk.actions.get(i)],
+                        chunk.timestamps.get(i));
+            }
+        }
+    }
+
+    /**
+     * Number of events in the log
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Off-heap bytes reserved by the log's chunks
+     */
+    public long getOffHeapBytes() {
+        return (long) chunks.length * CHUNK_EVENTS * BYTES_PER_EVENT;
+    }
+
+    /**
+     * User IDs of the log, indexed by the user ints passed to visitors
+     */
+    public IdDictionary getUserDictionary() {
+        return users;
+    }
+
+    /**
+     * Item IDs of the log, indexed by the item ints passed to visitors
+     */
+    public IdDictionary getItemDictionary() {
+        return items;
+    }
+
+    /**
+     * Receives the columns of one event
+     */
+    @FunctionalInterface
+    public interface EventVisitor {
+        void accept(int user, int item, ActionType action, long timestamp);
+    }
+
+    /**
+     * One fixed-size block of every column, allocated outside the heap
+     */
+    private static final class Chunk {
+
+        private final IntBuffer users = allocate(Integer.BYTES).asIntBuffer();
+        private final IntBuffer items = allocate(Integer.BYTES).asIntBuffer();
+        private final ByteBuffer actions = allocate(Byte.BYTES);
+        private final LongBuffer timestamps = allocate(Long.BYTES).asLongBuffer();
+
+        /**
+         * Offsets of the first length events grouped by user shard, in offset order within each shard
+         */
+        private int[][] offsetsByShard(int length, int shards) {
+            int[] counts = new int[shards];
+            for (int i = 0; i < length; i++) {
+                counts[users.get(i) % shards]++;
+            }
+            int[][] offsets = new int[shards][];
+            for (int shard = 0; shard < shards; shard++) {
+                offsets[shard] = new int[counts[shard]];
+            }
+            int[] filled = new int[shards];
+            for (int i = 0; i < length; i++) {
+                int shard = users.get(i) % shards;
+                offsets[shard][filled[shard]++] = i;
+            }
+            return offsets;
+        }
+
+        private static ByteBuffer allocate(int bytesPerEvent) {
+            return ByteBuffer.allocateDirect(CHUNK_EVENTS * bytesPerEvent).order(ByteOrder.nativeOrder());
+        }
+    }
+}
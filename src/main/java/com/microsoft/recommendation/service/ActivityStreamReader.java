@@ -0,0 +1,102 @@
+package com.microsoft.recommendation.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.recommendation.model.Activity;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Incremental reader for large ingest payloads. Accepts either a JSON array of activities or
+ * NDJSON (one activity object per line) and hands validated activities to a consumer in
+ * fixed-size batches, so at most one batch of parsed activities is held at a time.
+ */
+@Component
+public class ActivityStreamReader {
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int batchSize;
+
+    public ActivityStreamReader(ObjectMapper objectMapper, Validator validator,
+                                @Value("${recommendation.ingest.stream-batch-size:10000}") int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("recommendation.ingest.stream-batch-size must be positive");
+        }
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Parse and validate activities from the stream, passing them to the consumer in batches.
+     * A malformed or invalid record stops the read with an InvalidRequestException; batches
+     * handed over before it are not rolled back.
+     *
+     * @return number of activities read
+     */
+    public long read(InputStream input, Consumer<List<Activity>> batchConsumer) throws IOException {
+        long count = 0;
+        List<Activity> batch = new ArrayList<>(batchSize);
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            JsonToken token = parser.nextToken();
+            // A top-level array is unwrapped; otherwise the body is a sequence of root-level objects
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new InvalidRequestException("Expected an activity object at record " + (count + 1)
+                            + " but found " + token);
+                }
+                Activity activity = objectMapper.readValue(parser, Activity.class);
+                validate(activity, count + 1);
+                batch.add(activity);
+                count++;
+
+                if (batch.size() == batchSize) {
+                    batchConsumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+                token = parser.nextToken();
+            }
+            if (array && token == null) {
+                throw new InvalidRequestException("Unterminated JSON array after record " + count);
+            }
+        } catch (JsonProcessingException e) {
+            throw new InvalidRequestException("Malformed activity at record " + (count + 1) + ": "
+                    + e.getOriginalMessage(), e);
+        }
+
+        if (!batch.isEmpty()) {
+            batchConsumer.accept(batch);
+        }
+        return count;
+    }
+
+    private void validate(Activity activity, long recordNumber) {
+        Set<ConstraintViolation<Activity>> violations = validator.validate(activity);
+        if (!violations.isEmpty()) {
+            throw new InvalidRequestException("Invalid activity at record " + recordNumber + ": "
+                    + violations.stream()
+                            .map(ConstraintViolation::getMessage)
+                            .sorted()
+                            .collect(Collectors.joining(", ")));
+        }
+    }
+}
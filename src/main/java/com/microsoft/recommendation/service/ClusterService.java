@@ -0,0 +1,272 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.ClusterNeighbor;
+import com.microsoft.recommendation.model.ClusterSearchRequest;
+import com.microsoft.recommendation.model.ClusterUserVector;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Partitioned serving across the nodes of a {@link ClusterTopology}. Every node holds only the
+ * users it owns; ingests are routed to the owners, and the coordinator of a collaborative request
+ * fetches the user's vector from its owner, fans the neighbor search out to all nodes, merges the
+ * partial top-K lists and scores the merged neighbors' items.
+ * Nodes exchange item IDs rather than item indices because each node interns items on its own.
+ */
+@Service
+public class ClusterService {
+
+    private static final ParameterizedTypeReference<List<ClusterNeighbor>> NEIGHBOR_LIST =
+            new ParameterizedTypeReference<>() {};
+
+    private final ClusterTopology topology;
+    private final RecommendationService recommendationService;
+    private final CollaborativeRecommendationService collaborativeRecommendationService;
+    private final VectorService vectorService;
+    private final VectorStore vectorStore;
+    private final ScoringExecutor scoringExecutor;
+    private final RestClient restClient;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private final ExecutorService fanOutExecutor;
+
+    public ClusterService(ClusterTopology topology,
+                          RecommendationService recommendationService,
+                          CollaborativeRecommendationService collaborativeRecommendationService,
+                          VectorService vectorService,
+                          VectorStore vectorStore,
+                          ScoringExecutor scoringExecutor,
+                          @Value("${recommendation.cluster.timeout:5s}") Duration timeout,
+                          @Value("${recommendation.cluster.fan-out-concurrency:4}") int fanOutConcurrency) {
+        if (fanOutConcurrency < 1) {
+            throw new IllegalArgumentException("recommendation.cluster.fan-out-concurrency must be at least 1");
+        }
+        this.topology = topology;
+        this.recommendationService = recommendationService;
+        this.collaborativeRecommendationService = collaborativeRecommendationService;
+        this.vectorService = vectorService;
+        this.vectorStore = vectorStore;
+        this.scoringExecutor = scoringExecutor;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+
+        // One thread per node for each fanned-out request in flight; further calls queue
+        int threads = topology.getNumNodes() * fanOutConcurrency;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "cluster-fan-out-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.fanOutExecutor = executor;
+    }
+
+    /**
+     * Route activities to the nodes that own their users and apply each share there.
+     * A replace sends every node its share, even an empty one, so every node drops its old data.
+     */
+    public void ingest(List<Activity> activities, boolean append) {
+        List<List<Activity>> shares = new ArrayList<>();
+        for (int node = 0; node < topology.getNumNodes(); node++) {
+            shares.add(new ArrayList<>());
+        }
+        for (Activity activity : activities) {
+            shares.get(topology.ownerOf(activity.getUserId())).add(activity);
+        }
+
+        fanOut(node -> {
+            List<Activity> share = shares.get(node);
+            if (append && share.isEmpty()) {
+                return null;
+            }
+            if (node == topology.getNodeIndex()) {
+                ingestLocal(share, append);
+            } else {
+                restClient.post()
+                        .uri(topology.getPeers().get(node) + "/cluster/ingest?mode={mode}", append ? "append" : "replace")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(share)
+                        .retrieve()
+                        .toBodilessEntity();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Apply activities of users owned by this node
+     */
+    public void ingestLocal(List<Activity> activities, boolean append) {
+        if (append) {
+            recommendationService.appendActivities(activities);
+        } else {
+            recommendationService.ingestActivities(activities);
+        }
+    }
+
+    /**
+     * Coordinate a collaborative recommendation across the cluster
+     */
+    public CollaborativeRecommendationService.Result recommend(String userId, int k, int numSimilarUsers) {
+        int owner = topology.ownerOf(userId);
+        ClusterUserVector user = owner == topology.getNodeIndex() ? getLocalUser(userId) : fetchUser(owner, userId);
+        if (user == null) {
+            return CollaborativeRecommendationService.Result.EMPTY;
+        }
+
+        ClusterSearchRequest request = new ClusterSearchRequest(user.getItemIds(), user.getValues(),
+                numSimilarUsers, userId);
+        List<List<ClusterNeighbor>> partials = fanOut(node -> node == topology.getNodeIndex()
+                ? searchLocal(request)
+                : restClient.post()
+                        .uri(topology.getPeers().get(node) + "/cluster/similarUsers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(request)
+                        .retrieve()
+                        .body(NEIGHBOR_LIST));
+
+        // Merge the partial top-K lists; ties go to the lower user ID
+        List<ClusterNeighbor> neighbors = partials.stream()
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(ClusterNeighbor::getSimilarity, Comparator.reverseOrder())
+                        .thenComparing(ClusterNeighbor::getUserId))
+                .limit(numSimilarUsers)
+                .toList();
+        return collaborativeRecommendationService.scoreNeighbors(new HashSet<>(user.getItemIds()), neighbors, k);
+    }
+
+    private ClusterUserVector fetchUser(int node, String userId) {
+        try {
+            return restClient.get()
+                    .uri(topology.getPeers().get(node) + "/cluster/users/{userId}", userId)
+                    .retrieve()
+                    .body(ClusterUserVector.class);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Normalized vector of a local user keyed by item ID, or null if the user is unknown here
+     */
+    public ClusterUserVector getLocalUser(String userId) {
+        UserModel model = vectorService.getModel();
+        SparseVector vector = model.getUserVector(userId);
+        if (vector == null) {
+            return null;
+        }
+        List<String> itemIds = new ArrayList<>(vector.nnz());
+        float[] values = new float[vector.nnz()];
+        for (int i = 0; i < vector.nnz(); i++) {
+            itemIds.add(model.getItemId(vector.indexAt(i)));
+            values[i] = vector.valueAt(i);
+        }
+        return new ClusterUserVector(userId, itemIds, values);
+    }
+
+    /**
+     * Top-K local neighbors of a query given by item ID, each with its item weights for scoring.
+     * Query items this node has never seen cannot match any local user and are dropped.
+     * The search runs on the scoring executor.
+     */
+    public List<ClusterNeighbor> searchLocal(ClusterSearchRequest request) {
+        return scoringExecutor.execute(() -> findLocalNeighbors(request));
+    }
+
+    private List<ClusterNeighbor> findLocalNeighbors(ClusterSearchRequest request) {
+        UserModel model = vectorService.getModel();
+        List<String> itemIds = request.getItemIds();
+        int[] indices = new int[itemIds.size()];
+        float[] values = new float[itemIds.size()];
+        int n = 0;
+        for (int i = 0; i < itemIds.size(); i++) {
+            int index = model.getItemIndex(itemIds.get(i));
+            if (index >= 0) {
+                indices[n] = index;
+                values[n] = request.getValues()[i];
+                n++;
+            }
+        }
+        SparseVector query = SparseVector.fromUnsorted(indices, values, n);
+
+        List<Map.Entry<String, Float>> similarUsers =
+                vectorStore.topKSimilarUsersByUserId(model, query, request.getK(), request.getExcludeUserId());
+        // Nodes decay their weights from different epochs, so weights are sent decayed to now
+        float decayFactor = (float) model.getDecay().factorAt(System.currentTimeMillis());
+        List<ClusterNeighbor> neighbors = new ArrayList<>(similarUsers.size());
+        for (Map.Entry<String, Float> similarUser : similarUsers) {
+            SparseVector weights = model.getUser(similarUser.getKey()).weights();
+            List<String> neighborItems = new ArrayList<>(weights.nnz());
+            float[] neighborWeights = new float[weights.nnz()];
+            for (int i = 0; i < weights.nnz(); i++) {
+                neighborItems.add(model.getItemId(weights.indexAt(i)));
+                neighborWeights[i] = weights.valueAt(i) * decayFactor;
+            }
+            neighbors.add(new ClusterNeighbor(similarUser.getKey(), similarUser.getValue(), neighborItems,
+                    neighborWeights));
+        }
+        return neighbors;
+    }
+
+    /**
+     * Run one call per node in parallel and collect the results in node order.
+     * The first failing call fails the whole request.
+     */
+    private <T> List<T> fanOut(IntFunction<T> call) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (int node = 0; node < topology.getNumNodes(); node++) {
+            int target = node;
+            futures.add(fanOutExecutor.submit(() -> call.apply(target)));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for cluster peers", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Cluster request failed", e.getCause());
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,86 @@
+package com.microsoft.recommendation.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Static cluster membership: the base URLs of all nodes, in the same order on every node, and the
+ * position of this node among them. Each node owns one contiguous range of a 32-bit hash of the
+ * user ID, so any node can compute the owner of a user without coordination.
+ * With no peers configured the service runs standalone and owns every user.
+ */
+@Component
+public class ClusterTopology {
+
+    private final List<String> peers;
+    private final int nodeIndex;
+
+    public ClusterTopology(@Value("${recommendation.cluster.peers:}") List<String> peers,
+                           @Value("${recommendation.cluster.node-index:0}") int nodeIndex) {
+        this.peers = peers.stream()
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .map(peer -> peer.endsWith("/") ? peer.substring(0, peer.length() - 1) : peer)
+                .toList();
+        if (!this.peers.isEmpty() && (nodeIndex < 0 || nodeIndex >= this.peers.size())) {
+            throw new IllegalArgumentException("recommendation.cluster.node-index must be between 0 and "
+                    + (this.peers.size() - 1));
+        }
+        this.nodeIndex = nodeIndex;
+    }
+
+    /**
+     * Whether the service runs as one node of a partitioned cluster
+     */
+    public boolean isEnabled() {
+        return !peers.isEmpty();
+    }
+
+    /**
+     * Base URLs of all nodes, including this one
+     */
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    /**
+     * Position of this node in {@link #getPeers()}
+     */
+    public int getNodeIndex() {
+        return nodeIndex;
+    }
+
+    /**
+     * Number of nodes sharing the user space (1 when standalone)
+     */
+    public int getNumNodes() {
+        return Math.max(1, peers.size());
+    }
+
+    /**
+     * Node that owns a user: node i owns hashes in [i * 2^32 / n, (i + 1) * 2^32 / n)
+     */
+    public int ownerOf(String userId) {
+        long hash = mix(userId.hashCode()) & 0xFFFFFFFFL;
+        return (int) ((hash * getNumNodes()) >>> 32);
+    }
+
+    /**
+     * Whether this node owns a user
+     */
+    public boolean owns(String userId) {
+        return !isEnabled() || ownerOf(userId) == nodeIndex;
+    }
+
+    // Murmur3 finalizer: spreads String.hashCode, which is stable across JVMs, over the whole range
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
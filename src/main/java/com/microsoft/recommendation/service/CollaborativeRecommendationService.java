@@ -1,92 +1,309 @@
 package com.microsoft.recommendation.service;
 
+import com.microsoft.recommendation.model.ClusterNeighbor;
 import com.microsoft.recommendation.model.RecommendationItem;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class CollaborativeRecommendationService {
     
     private final VectorService vectorService;
     private final VectorStore vectorStore;
+    private final RecommendationCache recommendationCache;
+    private final ServiceMetrics metrics;
+    private final ScoringExecutor scoringExecutor;
     private static final int DEFAULT_TOP_N_SIMILAR_USERS = 5;
     
-    public CollaborativeRecommendationService(VectorService vectorService, VectorStore vectorStore) {
+    // Cluster-scored items best first: highest score, then item ID
+    private static final Comparator<Map.Entry<String, Float>> RANKING =
+            Map.Entry.<String, Float>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+    
+    public CollaborativeRecommendationService(VectorService vectorService, VectorStore vectorStore,
+                                              RecommendationCache recommendationCache,
+                                              ServiceMetrics metrics,
+                                              ScoringExecutor scoringExecutor) {
         this.vectorService = vectorService;
         this.vectorStore = vectorStore;
+        this.recommendationCache = recommendationCache;
+        this.metrics = metrics;
+        this.scoringExecutor = scoringExecutor;
     }
     
     /**
      * Get collaborative filtering recommendations for a user
      */
     public List<RecommendationItem> getCollaborativeRecommendations(String userId, int k) {
+        return recommend(userId, k, DEFAULT_TOP_N_SIMILAR_USERS).recommendations();
+    }
+    
+    /**
+     * Get collaborative filtering recommendations together with the neighbors they were derived from.
+     * A single neighbor search serves both; results come from the cache when possible, and cache misses
+     * are computed on the scoring executor.
+     */
+    public Result recommend(String userId, int k, int numSimilarUsers) {
+        return recommendationCache.get(RecommendationCache.Endpoint.COLLABORATIVE, userId, k, numSimilarUsers,
+                () -> scoringExecutor.execute(() -> computeCollaborativeRecommendations(userId, k, numSimilarUsers)));
+    }
+    
+    private Result computeCollaborativeRecommendations(String userId, int k, int numSimilarUsers) {
+        // Read everything from one model snapshot so a concurrent ingest cannot mix states
+        UserModel model = vectorService.getModel();
+        
         // Step 1: Get user's normalized vector
-        float[] userVector = vectorService.getUserVector(userId);
+        SparseVector userVector = model.getUserVector(userId);
         if (userVector == null) {
-            return new ArrayList<>();
+            return Result.EMPTY;
         }
         
         // Step 2: Find top-N similar users
-        List<Map.Entry<String, Float>> similarUsers = vectorStore.topKSimilarUsers(
+        long start = System.nanoTime();
+        UserPostingsIndex.Candidates neighbors = vectorStore.topKNeighbors(
+                model,
                 userVector, 
-                DEFAULT_TOP_N_SIMILAR_USERS, 
+                numSimilarUsers, 
                 userId
         );
+        metrics.recordNeighborSearch(System.nanoTime() - start);
         
-        if (similarUsers.isEmpty()) {
-            return new ArrayList<>();
+        return scoreItems(model, userId, neighbors, k);
+    }
+    
+    /**
+     * Get collaborative filtering recommendations for many users at once.
+     * Cache misses are split into blocks whose neighbor searches share one pass over the postings,
+     * and the blocks are processed in parallel on the scoring executor.
+     */
+    public Map<String, Result> recommend(Collection<String> userIds, int k, int numSimilarUsers) {
+        return recommendationCache.getAll(RecommendationCache.Endpoint.COLLABORATIVE, userIds, k, numSimilarUsers,
+                missing -> scoringExecutor.execute(() -> computeCollaborativeRecommendations(missing, k, numSimilarUsers)));
+    }
+    
+    private Map<String, Result> computeCollaborativeRecommendations(List<String> userIds, int k, int numSimilarUsers) {
+        UserModel model = vectorService.getModel();
+        
+        // Users without a vector get an empty result; the rest are searched in blocks
+        Map<String, Result> results = new HashMap<>();
+        List<String> knownUsers = new ArrayList<>();
+        for (String userId : userIds) {
+            if (model.getUserVector(userId) != null) {
+                knownUsers.add(userId);
+            } else {
+                results.put(userId, Result.EMPTY);
+            }
         }
         
-        // Step 3: Get items the target user already has
-        Set<String> userItems = vectorService.getUserItems(userId);
+        // Users with the same heaviest item land in the same block and share most postings walks
+        knownUsers.sort(Comparator.comparingInt(userId -> heaviestItem(model.getUserVector(userId))));
+        
+        int blockSize = model.getQueryBlockSize();
+        int numBlocks = (knownUsers.size() + blockSize - 1) / blockSize;
+        Result[] computed = new Result[knownUsers.size()];
+        IntStream.range(0, numBlocks).parallel().forEach(block -> {
+            int from = block * blockSize;
+            int to = Math.min(from + blockSize, knownUsers.size());
+            String[] blockUsers = knownUsers.subList(from, to).toArray(new String[0]);
+            SparseVector[] queries = new SparseVector[blockUsers.length];
+            for (int i = 0; i < blockUsers.length; i++) {
+                queries[i] = model.getUserVector(blockUsers[i]);
+            }
+            
+            long start = System.nanoTime();
+            UserPostingsIndex.Candidates[] neighbors =
+                    vectorStore.topKNeighbors(model, queries, numSimilarUsers, blockUsers);
+            // The block shares one search, so each user is recorded with its share of the time
+            long perUser = (System.nanoTime() - start) / blockUsers.length;
+            for (int i = 0; i < blockUsers.length; i++) {
+                metrics.recordNeighborSearch(perUser);
+                computed[from + i] = scoreItems(model, blockUsers[i], neighbors[i], k);
+            }
+        });
+        
+        for (int i = 0; i < computed.length; i++) {
+            results.put(knownUsers.get(i), computed[i]);
+        }
+        return results;
+    }
+    
+    private static int heaviestItem(SparseVector vector) {
+        int best = 0;
+        for (int i = 1; i < vector.nnz(); i++) {
+            if (vector.valueAt(i) > vector.valueAt(best)) {
+                best = i;
+            }
+        }
+        return vector.nnz() > 0 ? vector.indexAt(best) : -1;
+    }
+    
+    /**
+     * Score the items of the neighbors (ordinals in the model, best first) that the target user does not have yet
+     */
+    private Result scoreItems(UserModel model, String userId, UserPostingsIndex.Candidates neighbors, int k) {
+        if (neighbors.size() == 0) {
+            return Result.EMPTY;
+        }
+        
+        // Step 3: Get items the target user already has (item weights are always positive)
+        long start = System.nanoTime();
+        SparseVector userWeights = model.getUser(userId).weights();
         
         // Step 4: Collect and score candidate items from similar users
-        Map<String, Float> itemScores = new HashMap<>();
+        ScoreAccumulator itemScores = new ScoreAccumulator();
         
-        for (Map.Entry<String, Float> similarUser : similarUsers) {
-            String neighborId = similarUser.getKey();
-            float similarity = similarUser.getValue();
+        for (int n = 0; n < neighbors.size(); n++) {
+            float similarity = neighbors.scores()[n];
             
-            // Get items from this similar user
-            Set<String> neighborItems = vectorService.getUserItems(neighborId);
+            // Get the item weights of this similar user
+            SparseVector neighborWeights = model.getUser(neighbors.userOrdinals()[n]).weights();
             
-            for (String itemId : neighborItems) {
+            for (int i = 0; i < neighborWeights.nnz(); i++) {
+                int item = neighborWeights.indexAt(i);
                 // Skip if target user already has this item
-                if (userItems.contains(itemId)) {
+                if (userWeights.get(item) != 0.0f) {
                     continue;
                 }
                 
-                // Get the weight of this item for the neighbor
-                float neighborItemWeight = vectorService.getUserItemWeight(neighborId, itemId);
-                
                 // Accumulate score: similarity * neighborItemWeight
-                float contribution = similarity * neighborItemWeight;
-                itemScores.merge(itemId, contribution, Float::sum);
+                itemScores.add(item, similarity * neighborWeights.valueAt(i));
             }
         }
         
-        // Step 5: Rank and return top-K
-        return itemScores.entrySet().stream()
-                .sorted(Map.Entry.<String, Float>comparingByValue().reversed())
-                .limit(k)
-                .map(entry -> new RecommendationItem(
-                        entry.getKey(),
-                        Math.round(entry.getValue() * 100.0) / 100.0
-                ))
-                .collect(Collectors.toList());
+        // Step 5: Rank and return top-K (ties broken by item index, i.e. item ID order)
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = 0; i < itemScores.size(); i++) {
+            selector.offer(itemScores.keyAt(i), itemScores.scoreAt(i));
+        }
+        
+        // Weights are relative to the model's decay epoch; decaying them to now does not change the ranking
+        double decayFactor = model.getDecay().factorAt(System.currentTimeMillis());
+        List<RecommendationItem> recommendations = new ArrayList<>(selector.size());
+        for (int i = 0, n = selector.sort(); i < n; i++) {
+            recommendations.add(new RecommendationItem(
+                    model.getItemId(selector.idAt(i)),
+                    Math.round(selector.scoreAt(i) * decayFactor * 100.0) / 100.0
+            ));
+        }
+        metrics.recordCandidateScoring(start, itemScores.size());
+        return new Result(recommendations, VectorStore.toSimilarUsers(model, neighbors));
+    }
+    
+    /**
+     * Score the items of neighbors gathered from the nodes of a cluster, as {@link #scoreItems} does
+     * for local neighbors. Items are matched by ID because every node interns them on its own;
+     * ties are broken by item ID.
+     *
+     * @param userItemIds items the target user already has
+     * @param neighbors   merged top neighbors, best first, with their item weights
+     */
+    public Result scoreNeighbors(Set<String> userItemIds, List<ClusterNeighbor> neighbors, int k) {
+        if (neighbors.isEmpty()) {
+            return Result.EMPTY;
+        }
+        
+        long start = System.nanoTime();
+        Map<String, Float> itemScores = new HashMap<>();
+        List<Map.Entry<String, Float>> similarUsers = new ArrayList<>(neighbors.size());
+        for (ClusterNeighbor neighbor : neighbors) {
+            float similarity = neighbor.getSimilarity();
+            similarUsers.add(new AbstractMap.SimpleEntry<>(neighbor.getUserId(), similarity));
+            
+            List<String> itemIds = neighbor.getItemIds();
+            float[] weights = neighbor.getWeights();
+            for (int i = 0; i < itemIds.size(); i++) {
+                if (userItemIds.contains(itemIds.get(i))) {
+                    continue;
+                }
+                itemScores.merge(itemIds.get(i), similarity * weights[i], Float::sum);
+            }
+        }
+        
+        // Keep the best k in a heap with the worst of them at the head, rather than sorting every candidate
+        PriorityQueue<Map.Entry<String, Float>> best = new PriorityQueue<>(Math.min(k, itemScores.size()) + 1,
+                RANKING.reversed());
+        for (Map.Entry<String, Float> itemScore : itemScores.entrySet()) {
+            best.offer(itemScore);
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+        
+        RecommendationItem[] recommendations = new RecommendationItem[best.size()];
+        for (int i = recommendations.length - 1; i >= 0; i--) {
+            Map.Entry<String, Float> entry = best.poll();
+            recommendations[i] = new RecommendationItem(entry.getKey(), Math.round(entry.getValue() * 100.0) / 100.0);
+        }
+        metrics.recordCandidateScoring(start, itemScores.size());
+        return new Result(List.of(recommendations), similarUsers);
     }
     
     /**
      * Get similar users for a given user (for debugging/transparency)
      */
     public List<Map.Entry<String, Float>> getSimilarUsers(String userId, int topN) {
-        float[] userVector = vectorService.getUserVector(userId);
+        return scoringExecutor.execute(() -> findSimilarUsers(userId, topN));
+    }
+    
+    private List<Map.Entry<String, Float>> findSimilarUsers(String userId, int topN) {
+        UserModel model = vectorService.getModel();
+        SparseVector userVector = model.getUserVector(userId);
         if (userVector == null) {
             return new ArrayList<>();
         }
         
-        return vectorStore.topKSimilarUsers(userVector, topN, userId);
+        long start = System.nanoTime();
+        List<Map.Entry<String, Float>> similarUsers = vectorStore.topKSimilarUsers(model, userVector, topN, userId);
+        metrics.recordNeighborSearch(System.nanoTime() - start);
+        return similarUsers;
+    }
+    
+    /**
+     * Get the similar users of many users of one model snapshot, bypassing the cache.
+     * The users are searched in blocks in parallel as batch recommendations are; a full scoring
+     * executor is waited for rather than rejecting the call, since this serves long-running exports.
+     *
+     * @param userIds users of the model, each with a vector
+     * @return similar users of each user, in the order of userIds
+     */
+    public List<List<Map.Entry<String, Float>>> getSimilarUsers(UserModel model, List<String> userIds, int topN) {
+        return scoringExecutor.executeWhenAdmitted(() -> {
+            int blockSize = model.getQueryBlockSize();
+            int numBlocks = (userIds.size() + blockSize - 1) / blockSize;
+            List<List<Map.Entry<String, Float>>> results = new ArrayList<>(Collections.nCopies(userIds.size(), null));
+            IntStream.range(0, numBlocks).parallel().forEach(block -> {
+                int from = block * blockSize;
+                int to = Math.min(from + blockSize, userIds.size());
+                String[] blockUsers = userIds.subList(from, to).toArray(new String[0]);
+                SparseVector[] queries = new SparseVector[blockUsers.length];
+                for (int i = 0; i < blockUsers.length; i++) {
+                    queries[i] = model.getUserVector(blockUsers[i]);
+                }
+                
+                long start = System.nanoTime();
+                List<List<Map.Entry<String, Float>>> similarUsers =
+                        vectorStore.topKSimilarUsers(model, queries, topN, blockUsers);
+                long perUser = (System.nanoTime() - start) / blockUsers.length;
+                for (int i = 0; i < blockUsers.length; i++) {
+                    metrics.recordNeighborSearch(perUser);
+                    results.set(from + i, similarUsers.get(i));
+                }
+            });
+            return results;
+        });
+    }
+    
+    /**
+     * Recommendations and the similar users (with similarity) they were computed from
+     */
+    public record Result(List<RecommendationItem> recommendations, List<Map.Entry<String, Float>> similarUsers) {
+        
+        static final Result EMPTY = new Result(List.of(), List.of());
+        
+        public Result {
+            recommendations = List.copyOf(recommendations);
+            similarUsers = List.copyOf(similarUsers);
+        }
     }
 }
@@ -0,0 +1,80 @@
+package com.microsoft.recommendation.service;
+
+/**
+ * Dense double-vector kernels for item similarity. The SIMD implementation uses the incubating
+ * JDK Vector API and is only available when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}; otherwise the scalar loop is used.
+ */
+public abstract class DenseVectorMath {
+
+    static final String SIMD_CLASS = "com.microsoft.recommendation.service.SimdVectorMath";
+
+    /**
+     * Dot product of two vectors of the same length
+     */
+    public abstract double dot(double[] a, double[] b);
+
+    /**
+     * Euclidean norm of a vector
+     */
+    public double norm(double[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+    /**
+     * Short description of the implementation, for logs
+     */
+    public abstract String describe();
+
+    /**
+     * Pick an implementation: "simd" requires the Vector API, "scalar" never uses it, and "auto"
+     * uses it when the module is present.
+     */
+    public static DenseVectorMath select(String mode) {
+        String normalized = mode.trim().toLowerCase();
+        if (!normalized.equals("auto") && !normalized.equals("simd") && !normalized.equals("scalar")) {
+            throw new IllegalArgumentException("Unsupported vector math mode '" + mode + "'. Use auto, simd or scalar.");
+        }
+        if (normalized.equals("scalar")) {
+            return Scalar.INSTANCE;
+        }
+
+        // Loaded reflectively so that this class links without the incubator module
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (DenseVectorMath) Class.forName(SIMD_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                if (normalized.equals("simd")) {
+                    throw new IllegalStateException("SIMD vector math could not be loaded", e);
+                }
+                return Scalar.INSTANCE;
+            }
+        }
+        if (normalized.equals("simd")) {
+            throw new IllegalStateException("SIMD vector math needs the JVM option --add-modules jdk.incubator.vector");
+        }
+        return Scalar.INSTANCE;
+    }
+
+    /**
+     * Plain loop; the JIT may still auto-vectorize parts of it
+     */
+    static final class Scalar extends DenseVectorMath {
+
+        static final Scalar INSTANCE = new Scalar();
+
+        @Override
+        public double dot(double[] a, double[] b) {
+            double sum = 0.0;
+            for (int i = 0; i < a.length; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        }
+
+        @Override
+        public String describe() {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.microsoft.recommendation.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket histogram for hot paths. Bucket bounds follow a 1-2-5 series and are fixed at
+ * construction, so recording a value is a binary search over a small array plus two striped
+ * counter increments: no allocation and no lock, even under heavy contention.
+ * Bucket counts and the sum are read without a common lock, so a scrape racing with writers may see
+ * a sum that is one observation ahead of or behind the counts.
+ */
+public final class Histogram {
+
+    // Inclusive upper bounds in recorded units; the last bucket (+Inf) has no bound
+    private final long[] bounds;
+    // Bounds and the sum are exposed in recorded units divided by 10^scale
+    private final int scale;
+    private final String[] boundLabels;
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    private Histogram(long[] bounds, int scale) {
+        this.bounds = bounds;
+        this.scale = scale;
+        this.boundLabels = new String[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            boundLabels[i] = BigDecimal.valueOf(bounds[i]).movePointLeft(scale).stripTrailingZeros().toPlainString();
+        }
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Durations recorded in nanoseconds and exposed in seconds, from 5 microseconds to 10 seconds
+     */
+    public static Histogram ofNanos() {
+        return new Histogram(oneTwoFive(5_000L, 10_000_000_000L), 9);
+    }
+
+    /**
+     * Counts from 1 to 100,000
+     */
+    public static Histogram ofCounts() {
+        return new Histogram(oneTwoFive(1L, 100_000L), 0);
+    }
+
+    private static long[] oneTwoFive(long min, long max) {
+        List<Long> bounds = new ArrayList<>();
+        for (long decade = 1; decade <= max; decade *= 10) {
+            for (long step : new long[] {1, 2, 5}) {
+                long bound = decade * step;
+                if (bound >= min && bound <= max) {
+                    bounds.add(bound);
+                }
+            }
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Record one observation
+     */
+    public void record(long value) {
+        int bucket = Arrays.binarySearch(bounds, value);
+        buckets[bucket >= 0 ? bucket : -bucket - 1].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Record the time elapsed since a {@link System#nanoTime()} reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Number of observations so far
+     */
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Append the cumulative buckets, sum and count in the Prometheus text format
+     *
+     * @param labels label pairs to put in front of {@code le}, e.g. {@code phase="index"}, or empty
+     */
+    void writeSamples(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(boundLabels[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += buckets[bounds.length].sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ')
+                .append(BigDecimal.valueOf(sum.sum()).movePointLeft(scale).toPlainString()).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,376 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World graph over normalized sparse user vectors.
+ * Similarity is the dot product (cosine for unit vectors). The graph is built once for a model
+ * base and is read-only afterwards, so concurrent searches need no locking.
+ * Sparse interaction data has large regions of zero similarity where greedy descent has no
+ * gradient to follow, so layer-0 searches are also seeded with users found through the
+ * postings of the query's own items.
+ */
+public final class HnswIndex {
+
+    // Fixed seed keeps level assignment, and therefore results, reproducible across rebuilds
+    private static final long LEVEL_SEED = 42L;
+
+    // Layer-0 entry points taken from the query's postings: items visited, users per item
+    private static final int SEED_ITEMS = 8;
+    private static final int SEEDS_PER_ITEM = 2;
+
+    // Per-thread visited marks indexed by node; a new stamp per search avoids clearing the array
+    private static final ThreadLocal<int[]> VISITED = ThreadLocal.withInitial(() -> new int[0]);
+    private static final ThreadLocal<int[]> VISIT_STAMP = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final int m;
+    private final int maxM0;
+    private final int efSearch;
+    private final double levelMultiplier;
+
+    private final UserPostingsIndex postings;
+    private final int[] ordinalToNode;
+    private final int[] nodeOrdinals;
+    private final SparseVector[] vectors;
+    // neighbors[node][layer] = neighbor nodes; neighborCounts[node][layer] = used length
+    private final int[][][] neighbors;
+    private final int[][] neighborCounts;
+
+    private int entryPoint = -1;
+    private int topLevel = -1;
+    private int inserted;
+
+    private HnswIndex(int size, int numOrdinals, UserPostingsIndex postings, UserSearchConfig config) {
+        this.m = config.m();
+        this.maxM0 = config.m() * 2;
+        this.efSearch = config.efSearch();
+        this.levelMultiplier = 1.0 / Math.log(config.m());
+        this.postings = postings;
+        this.ordinalToNode = new int[numOrdinals];
+        Arrays.fill(ordinalToNode, -1);
+        this.nodeOrdinals = new int[size];
+        this.vectors = new SparseVector[size];
+        this.neighbors = new int[size][][];
+        this.neighborCounts = new int[size][];
+    }
+
+    /**
+     * Build an index over the given users; node i holds ordinals[i] with vector vectors[i].
+     * The postings index must cover the same users and is used to seed searches.
+     */
+    public static HnswIndex build(int[] ordinals, SparseVector[] userVectors, int numOrdinals,
+                                  UserPostingsIndex postings, UserSearchConfig config) {
+        HnswIndex index = new HnswIndex(ordinals.length, numOrdinals, postings, config);
+        for (int node = 0; node < ordinals.length; node++) {
+            index.ordinalToNode[ordinals[node]] = node;
+        }
+        Random random = new Random(LEVEL_SEED);
+        for (int node = 0; node < ordinals.length; node++) {
+            index.insert(node, ordinals[node], userVectors[node], random, config.efConstruction());
+        }
+        return index;
+    }
+
+    /**
+     * Number of indexed users
+     */
+    public int size() {
+        return vectors.length;
+    }
+
+    /**
+     * Find approximately the most similar indexed users to the query.
+     * Returns up to max(k, efSearch) candidates as (user ordinal, similarity) pairs.
+     */
+    public UserPostingsIndex.Candidates search(SparseVector query, int k) {
+        return search(query, k, efSearch);
+    }
+
+    /**
+     * Search with an explicit candidate list size, e.g. to measure recall at several settings
+     */
+    public UserPostingsIndex.Candidates search(SparseVector query, int k, int ef) {
+        if (entryPoint < 0 || k <= 0) {
+            return new UserPostingsIndex.Candidates(new int[0], new float[0]);
+        }
+
+        int entry = greedyDescent(query, entryPoint, topLevel, 0);
+        NodeHeap results = searchLayer(query, entry, seeds(query, -1), Math.max(k, ef), 0);
+        int[] ordinals = new int[results.size];
+        float[] scores = new float[results.size];
+        for (int i = 0; i < results.size; i++) {
+            ordinals[i] = nodeOrdinals[results.nodes[i]];
+            scores[i] = results.scores[i];
+        }
+        return new UserPostingsIndex.Candidates(ordinals, scores);
+    }
+
+    private void insert(int node, int ordinal, SparseVector vector, Random random, int efConstruction) {
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        nodeOrdinals[node] = ordinal;
+        vectors[node] = vector;
+        neighbors[node] = new int[level + 1][];
+        neighborCounts[node] = new int[level + 1];
+        for (int layer = 0; layer <= level; layer++) {
+            neighbors[node][layer] = new int[maxNeighbors(layer) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLevel = level;
+            inserted = node + 1;
+            return;
+        }
+
+        // Greedy descent through the layers above the new node's level
+        int current = greedyDescent(vector, entryPoint, topLevel, level);
+
+        // Connect on every shared layer to the closest nodes found with efConstruction
+        for (int layer = Math.min(level, topLevel); layer >= 0; layer--) {
+            int[] layerSeeds = layer == 0 ? seeds(vector, node) : new int[0];
+            NodeHeap found = searchLayer(vector, current, layerSeeds, efConstruction, layer);
+            found.sortBestFirst();
+            int connections = Math.min(m, found.size);
+            for (int i = 0; i < connections; i++) {
+                connect(node, found.nodes[i], layer);
+                connect(found.nodes[i], node, layer);
+            }
+            current = found.nodes[0];
+        }
+        inserted = node + 1;
+
+        if (level > topLevel) {
+            entryPoint = node;
+            topLevel = level;
+        }
+    }
+
+    /**
+     * Walk down from the given layer to (but not including) the target layer, always moving to
+     * the most similar neighbor, and return the node reached
+     */
+    private int greedyDescent(SparseVector query, int start, int fromLayer, int toLayer) {
+        int current = start;
+        float currentScore = query.dot(vectors[current]);
+        for (int layer = fromLayer; layer > toLayer; layer--) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                int[] layerNeighbors = neighbors[current][layer];
+                for (int i = 0; i < neighborCounts[current][layer]; i++) {
+                    int candidate = layerNeighbors[i];
+                    float score = query.dot(vectors[candidate]);
+                    if (score > currentScore) {
+                        current = candidate;
+                        currentScore = score;
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Already inserted nodes that share an item with the query, taken from the postings
+     */
+    private int[] seeds(SparseVector query, int self) {
+        int[] seeds = new int[SEED_ITEMS * SEEDS_PER_ITEM];
+        int n = 0;
+        for (int q = 0; q < query.nnz() && q < SEED_ITEMS; q++) {
+            int itemIndex = query.indexAt(q);
+            int count = postings.getPostingCount(itemIndex);
+            int taken = 0;
+            for (int p = 0; p < count && taken < SEEDS_PER_ITEM; p++) {
+                int ordinal = postings.getPostingUser(itemIndex, p);
+                int node = ordinal < ordinalToNode.length ? ordinalToNode[ordinal] : -1;
+                if (node >= 0 && node < inserted && node != self) {
+                    seeds[n++] = node;
+                    taken++;
+                }
+            }
+        }
+        return Arrays.copyOf(seeds, n);
+    }
+
+    private int maxNeighbors(int layer) {
+        return layer == 0 ? maxM0 : m;
+    }
+
+    /**
+     * Add a directed edge, dropping the least similar neighbor when the node is full
+     */
+    private void connect(int from, int to, int layer) {
+        int[] list = neighbors[from][layer];
+        int count = neighborCounts[from][layer];
+        list[count++] = to;
+
+        if (count > maxNeighbors(layer)) {
+            int worst = 0;
+            float worstScore = Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                float score = vectors[from].dot(vectors[list[i]]);
+                if (score < worstScore) {
+                    worstScore = score;
+                    worst = i;
+                }
+            }
+            list[worst] = list[count - 1];
+            count--;
+        }
+        neighborCounts[from][layer] = count;
+    }
+
+    /**
+     * Best-first search on one layer from the start node and any extra seeds,
+     * returning up to ef nodes most similar to the query
+     */
+    private NodeHeap searchLayer(SparseVector query, int start, int[] seeds, int ef, int layer) {
+        int[] visited = VISITED.get();
+        if (visited.length < vectors.length) {
+            visited = new int[vectors.length];
+            VISITED.set(visited);
+            VISIT_STAMP.get()[0] = 0;
+        }
+        int[] stampHolder = VISIT_STAMP.get();
+        if (++stampHolder[0] == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            stampHolder[0] = 1;
+        }
+        int stamp = stampHolder[0];
+
+        NodeHeap candidates = new NodeHeap(ef * 2, true);
+        NodeHeap results = new NodeHeap(ef + 1, false);
+        float startScore = query.dot(vectors[start]);
+        candidates.push(start, startScore);
+        results.push(start, startScore);
+        visited[start] = stamp;
+        for (int seed : seeds) {
+            if (visited[seed] != stamp) {
+                visited[seed] = stamp;
+                float score = query.dot(vectors[seed]);
+                candidates.push(seed, score);
+                results.push(seed, score);
+                if (results.size > ef) {
+                    results.pop();
+                }
+            }
+        }
+
+        while (candidates.size > 0) {
+            float bestCandidate = candidates.peekScore();
+            if (results.size >= ef && bestCandidate < results.peekScore()) {
+                break;
+            }
+            int node = candidates.pop();
+            if (layer >= neighbors[node].length) {
+                continue;
+            }
+
+            int[] layerNeighbors = neighbors[node][layer];
+            for (int i = 0; i < neighborCounts[node][layer]; i++) {
+                int next = layerNeighbors[i];
+                if (visited[next] == stamp) {
+                    continue;
+                }
+                visited[next] = stamp;
+
+                float score = query.dot(vectors[next]);
+                if (results.size < ef || score > results.peekScore()) {
+                    candidates.push(next, score);
+                    results.push(next, score);
+                    if (results.size > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Binary heap of (node, score) pairs; a max-heap pops the most similar node, a min-heap the least
+     */
+    private static final class NodeHeap {
+
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+        private final boolean max;
+
+        NodeHeap(int capacity, boolean max) {
+            this.nodes = new int[Math.max(capacity, 2)];
+            this.scores = new float[Math.max(capacity, 2)];
+            this.max = max;
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            int node = nodes[size];
+            float score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!above(scores[child], score)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+            return top;
+        }
+
+        /**
+         * Reorder the held entries from most to least similar (the heap is unusable afterwards)
+         */
+        void sortBestFirst() {
+            TopKSelector selector = new TopKSelector(size);
+            for (int i = 0; i < size; i++) {
+                selector.offer(nodes[i], scores[i]);
+            }
+            selector.sort();
+            for (int i = 0; i < size; i++) {
+                nodes[i] = selector.idAt(i);
+                scores[i] = (float) selector.scoreAt(i);
+            }
+        }
+
+        private boolean above(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
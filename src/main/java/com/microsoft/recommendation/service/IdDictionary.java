@@ -0,0 +1,72 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only mapping between external string IDs and dense int ordinals.
+ * Writes must be serialized by the caller; lookups are lock-free and safe from any thread.
+ * An ordinal obtained from a published model snapshot can always be resolved back to its ID.
+ */
+public final class IdDictionary {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    private volatile int size;
+
+    /**
+     * Get the ordinal for an ID, assigning the next one if the ID is new (single writer only)
+     */
+    public int getOrAdd(String id) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal != null) {
+            return ordinal;
+        }
+
+        int next = size;
+        String[] current = names;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, next * 2);
+        }
+        current[next] = id;
+        // Publish the array before the size and the map entry so readers never see a missing name
+        names = current;
+        size = next + 1;
+        ordinals.put(id, next);
+        return next;
+    }
+
+    /**
+     * Get the ordinal for an ID, or -1 if it is unknown
+     */
+    public int get(String id) {
+        Integer ordinal = ordinals.get(id);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * Check whether an ID has an ordinal
+     */
+    public boolean contains(String id) {
+        return ordinals.containsKey(id);
+    }
+
+    /**
+     * Get the ID for an ordinal
+     */
+    public String nameOf(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Unknown ordinal " + ordinal);
+        }
+        return names[ordinal];
+    }
+
+    /**
+     * Number of IDs assigned so far
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,17 @@
+package com.microsoft.recommendation.service;
+
+/**
+ * Thrown when a request parameter or payload is invalid; the client must correct the request
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+
+    public InvalidRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,122 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.RecommendationItem;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Item-based collaborative filtering over a precomputed item-item similarity model.
+ * The model is rebuilt in the background from the latest user model snapshot after every
+ * ingest; requests keep using the previous model until the new one is published.
+ */
+@Service
+public class ItemBasedRecommendationService {
+
+    private final VectorService vectorService;
+    private final int neighborsPerItem;
+
+    private volatile ItemSimilarityModel model = ItemSimilarityModel.EMPTY;
+
+    // One rebuild at a time; ingests arriving during a rebuild coalesce into a single follow-up
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "item-similarity-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    public ItemBasedRecommendationService(VectorService vectorService,
+                                          @Value("${recommendation.item-similarity.neighbors:20}") int neighborsPerItem) {
+        this.vectorService = vectorService;
+        this.neighborsPerItem = neighborsPerItem;
+    }
+
+    /**
+     * Schedule a background rebuild from the current user model snapshot
+     */
+    public void scheduleRebuild() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                // Clear first so a snapshot published while building triggers another rebuild
+                rebuildPending.set(false);
+                rebuild();
+            });
+        }
+    }
+
+    /**
+     * Rebuild the item-item model from the current user model snapshot and publish it
+     */
+    public void rebuild() {
+        model = ItemSimilarityModel.build(vectorService.getModel(), neighborsPerItem);
+    }
+
+    /**
+     * Get item-based recommendations for a user: the neighbor lists of the user's items,
+     * each weighted by the user's interaction weight, summed over all of the user's items
+     */
+    public List<RecommendationItem> getItemBasedRecommendations(String userId, int k) {
+        ItemSimilarityModel similarityModel = model;
+        UserModel userModel = vectorService.getModel();
+
+        UserModel.UserState user = userModel.getUser(userId);
+        if (user == null) {
+            return new ArrayList<>();
+        }
+
+        // Accumulate weight * similarity over the user's items in item index order. The user model
+        // indexes items with the similarity model's dictionary unless a replace has not been rebuilt yet.
+        boolean sharedItems = similarityModel.sharesItemsWith(userModel);
+        ScoreAccumulator itemScores = new ScoreAccumulator();
+        SparseVector userWeights = user.weights();
+        int[] userItems = new int[userWeights.nnz()];
+        int numUserItems = 0;
+        for (int i = 0; i < userWeights.nnz(); i++) {
+            int itemIndex = sharedItems
+                    ? userWeights.indexAt(i)
+                    : similarityModel.getItemIndex(userModel.getItemId(userWeights.indexAt(i)));
+            if (itemIndex < 0 || itemIndex >= similarityModel.getNumItems()) {
+                continue;
+            }
+            userItems[numUserItems++] = itemIndex;
+
+            float weight = userWeights.valueAt(i);
+            int[] neighbors = similarityModel.getNeighbors(itemIndex);
+            float[] similarities = similarityModel.getSimilarities(itemIndex);
+            for (int n = 0; n < neighbors.length; n++) {
+                itemScores.add(neighbors[n], weight * similarities[n]);
+            }
+        }
+        Arrays.sort(userItems, 0, numUserItems);
+
+        // Rank items the user has not interacted with yet (ties broken by item index)
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = 0; i < itemScores.size(); i++) {
+            if (Arrays.binarySearch(userItems, 0, numUserItems, itemScores.keyAt(i)) < 0) {
+                selector.offer(itemScores.keyAt(i), itemScores.scoreAt(i));
+            }
+        }
+
+        // Decay the user's epoch-relative weights to now
+        double decayFactor = userModel.getDecay().factorAt(System.currentTimeMillis());
+        List<RecommendationItem> recommendations = new ArrayList<>(selector.size());
+        for (int i = 0, n = selector.sort(); i < n; i++) {
+            recommendations.add(new RecommendationItem(
+                    similarityModel.getItemId(selector.idAt(i)),
+                    Math.round(selector.scoreAt(i) * decayFactor * 100.0) / 100.0
+            ));
+        }
+        return recommendations;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,206 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable item-item similarity model for item-based collaborative filtering.
+ * Each item is a column of normalized user weights; similarity is the cosine between two
+ * columns and only the top-N neighbors of every item are kept.
+ * The model is built from a published {@link UserModel} snapshot and is read-only afterwards.
+ */
+public final class ItemSimilarityModel {
+
+    public static final ItemSimilarityModel EMPTY =
+            new ItemSimilarityModel(new IdDictionary(), 0, new int[0][], new float[0][]);
+
+    // Reusable per-thread co-occurrence buffer indexed by item; reset after every item
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[0]);
+
+    // Item dictionary of the source snapshot; bounded by numItems
+    private final IdDictionary items;
+    private final int numItems;
+    // neighbors[item] = neighbor item indexes, most similar first; similarities[item] = their cosines
+    private final int[][] neighbors;
+    private final float[][] similarities;
+
+    private ItemSimilarityModel(IdDictionary items, int numItems, int[][] neighbors, float[][] similarities) {
+        this.items = items;
+        this.numItems = numItems;
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+    }
+
+    /**
+     * Build the model from a user model snapshot, computing each item's neighbor list in parallel
+     */
+    public static ItemSimilarityModel build(UserModel userModel, int neighborsPerItem) {
+        int numItems = userModel.getNumItems();
+        ItemColumns columns = ItemColumns.of(userModel, numItems);
+
+        int[][] neighbors = new int[numItems][];
+        float[][] similarities = new float[numItems][];
+        IntStream.range(0, numItems).parallel().forEach(item -> {
+            TopKSelector selector = columns.topNeighbors(item, neighborsPerItem);
+            int n = selector.sort();
+            neighbors[item] = new int[n];
+            similarities[item] = new float[n];
+            for (int i = 0; i < n; i++) {
+                neighbors[item][i] = selector.idAt(i);
+                similarities[item][i] = (float) selector.scoreAt(i);
+            }
+        });
+        return new ItemSimilarityModel(userModel.getItemDictionary(), numItems, neighbors, similarities);
+    }
+
+    /**
+     * Get the index of an item, or -1 if it is not part of this model
+     */
+    public int getItemIndex(String itemId) {
+        int index = items.get(itemId);
+        return index < numItems ? index : -1;
+    }
+
+    /**
+     * Whether a user model indexes items with this model's dictionary, so its item indexes below
+     * {@link #getNumItems()} are valid here without a lookup by ID
+     */
+    public boolean sharesItemsWith(UserModel userModel) {
+        return userModel.getItemDictionary() == items;
+    }
+
+    /**
+     * Get the item ID at an index
+     */
+    public String getItemId(int index) {
+        return items.nameOf(index);
+    }
+
+    /**
+     * Number of items covered by this model
+     */
+    public int getNumItems() {
+        return numItems;
+    }
+
+    /**
+     * Neighbor item indexes of an item, most similar first
+     */
+    public int[] getNeighbors(int itemIndex) {
+        return neighbors[itemIndex];
+    }
+
+    /**
+     * Cosine similarities matching {@link #getNeighbors(int)}
+     */
+    public float[] getSimilarities(int itemIndex) {
+        return similarities[itemIndex];
+    }
+
+    /**
+     * Item-to-users columns of the user-item matrix with their norms
+     */
+    private static final class ItemColumns {
+
+        private final SparseVector[] userVectors;
+        private final int[][] columnUsers;
+        private final float[][] columnWeights;
+        private final float[] norms;
+
+        private ItemColumns(SparseVector[] userVectors, int[][] columnUsers, float[][] columnWeights, float[] norms) {
+            this.userVectors = userVectors;
+            this.columnUsers = columnUsers;
+            this.columnWeights = columnWeights;
+            this.norms = norms;
+        }
+
+        /**
+         * Transpose the snapshot's user vectors into item columns, visiting users in ordinal order
+         */
+        static ItemColumns of(UserModel userModel, int numItems) {
+            SparseVector[] userVectors = new SparseVector[userModel.getNumOrdinals()];
+            int[] sizes = new int[numItems];
+            for (int ordinal = 0; ordinal < userVectors.length; ordinal++) {
+                SparseVector vector = userModel.getUserVector(ordinal);
+                if (vector == null) {
+                    continue;
+                }
+                userVectors[ordinal] = vector;
+                for (int i = 0; i < vector.nnz(); i++) {
+                    sizes[vector.indexAt(i)]++;
+                }
+            }
+
+            int[][] columnUsers = new int[numItems][];
+            float[][] columnWeights = new float[numItems][];
+            for (int item = 0; item < numItems; item++) {
+                columnUsers[item] = new int[sizes[item]];
+                columnWeights[item] = new float[sizes[item]];
+            }
+            int[] filled = new int[numItems];
+            float[] squaredNorms = new float[numItems];
+            for (int ordinal = 0; ordinal < userVectors.length; ordinal++) {
+                SparseVector vector = userVectors[ordinal];
+                if (vector == null) {
+                    continue;
+                }
+                for (int i = 0; i < vector.nnz(); i++) {
+                    int item = vector.indexAt(i);
+                    float weight = vector.valueAt(i);
+                    columnUsers[item][filled[item]] = ordinal;
+                    columnWeights[item][filled[item]] = weight;
+                    filled[item]++;
+                    squaredNorms[item] += weight * weight;
+                }
+            }
+
+            float[] norms = new float[numItems];
+            for (int item = 0; item < numItems; item++) {
+                norms[item] = (float) Math.sqrt(squaredNorms[item]);
+            }
+            return new ItemColumns(userVectors, columnUsers, columnWeights, norms);
+        }
+
+        /**
+         * Select the most similar other items by walking the users of the item's column
+         */
+        TopKSelector topNeighbors(int item, int n) {
+            float[] dots = SCRATCH.get();
+            if (dots.length < norms.length) {
+                dots = new float[norms.length];
+                SCRATCH.set(dots);
+            }
+
+            int[] touched = new int[16];
+            int numTouched = 0;
+            for (int p = 0; p < columnUsers[item].length; p++) {
+                float weight = columnWeights[item][p];
+                SparseVector userVector = userVectors[columnUsers[item][p]];
+                for (int i = 0; i < userVector.nnz(); i++) {
+                    int other = userVector.indexAt(i);
+                    if (other == item) {
+                        continue;
+                    }
+                    if (dots[other] == 0.0f) {
+                        if (numTouched == touched.length) {
+                            touched = Arrays.copyOf(touched, numTouched * 2);
+                        }
+                        touched[numTouched++] = other;
+                    }
+                    dots[other] += weight * userVector.valueAt(i);
+                }
+            }
+
+            // Ties resolve to the lower item index, i.e. item ID order after a full build
+            TopKSelector selector = new TopKSelector(n);
+            for (int i = 0; i < numTouched; i++) {
+                int other = touched[i];
+                if (dots[other] > 0.0f) {
+                    selector.offer(other, dots[other] / (norms[item] * norms[other]));
+                }
+                dots[other] = 0.0f;
+            }
+            return selector;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.microsoft.recommendation.service;
+
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Renders the hot-path histograms of {@link ServiceMetrics} and gauges of the current model and
+ * memory use in the Prometheus text exposition format (version 0.0.4).
+ * Gauges are computed at scrape time from the published snapshots, so they cost nothing between scrapes.
+ */
+@Service
+public class MetricsService {
+
+    private final ServiceMetrics serviceMetrics;
+    private final VectorService vectorService;
+    private final VectorStore vectorStore;
+    private final RecommendationService recommendationService;
+    private final SnapshotService snapshotService;
+    private final ScoringExecutor scoringExecutor;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    public MetricsService(ServiceMetrics serviceMetrics,
+                          VectorService vectorService,
+                          VectorStore vectorStore,
+                          RecommendationService recommendationService,
+                          SnapshotService snapshotService,
+                          ScoringExecutor scoringExecutor) {
+        this.serviceMetrics = serviceMetrics;
+        this.vectorService = vectorService;
+        this.vectorStore = vectorStore;
+        this.recommendationService = recommendationService;
+        this.snapshotService = snapshotService;
+        this.scoringExecutor = scoringExecutor;
+    }
+
+    /**
+     * All metrics in the Prometheus text format
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        long now = System.currentTimeMillis();
+
+        // Read the model once so its gauges describe a single snapshot
+        UserModel model = vectorService.getModel();
+        gauge(out, "recommendation_model_users", "Users in the published model", model.getNumUsers());
+        gauge(out, "recommendation_model_items", "Items in the published model", model.getNumItems());
+        gauge(out, "recommendation_model_nonzeros", "Non-zero user-item weights in the published model",
+                model.getNumNonZeros());
+        gauge(out, "recommendation_model_age_seconds", "Seconds since the published model was built",
+                seconds(now - vectorStore.getUserModelPublishedAt()));
+
+        long lastSnapshotAt = snapshotService.getLastSnapshotAt();
+        if (lastSnapshotAt > 0) {
+            gauge(out, "recommendation_snapshot_age_seconds",
+                    "Seconds since the snapshot file was last written or restored", seconds(now - lastSnapshotAt));
+        }
+
+        ActivityLog activityLog = recommendationService.getActivityLog();
+        gauge(out, "recommendation_activities", "Activities in the activity log", activityLog.size());
+        gauge(out, "recommendation_activity_log_offheap_bytes", "Off-heap memory held by the activity log",
+                activityLog.getOffHeapBytes());
+
+        gauge(out, "recommendation_scoring_in_flight", "Scoring tasks running or queued on the scoring executor",
+                scoringExecutor.getInFlight());
+        header(out, "recommendation_scoring_rejected_total", "Scoring tasks rejected because the executor was full",
+                "counter");
+        out.append("recommendation_scoring_rejected_total ").append(scoringExecutor.getRejected()).append('\n');
+
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        header(out, "jvm_memory_used_bytes", "Used JVM memory", "gauge");
+        out.append("jvm_memory_used_bytes{area=\"heap\"} ").append(heap.getUsed()).append('\n');
+        out.append("jvm_memory_used_bytes{area=\"nonheap\"} ").append(nonHeap.getUsed()).append('\n');
+        header(out, "jvm_memory_committed_bytes", "Committed JVM memory", "gauge");
+        out.append("jvm_memory_committed_bytes{area=\"heap\"} ").append(heap.getCommitted()).append('\n');
+        out.append("jvm_memory_committed_bytes{area=\"nonheap\"} ").append(nonHeap.getCommitted()).append('\n');
+
+        serviceMetrics.writeTo(out);
+        return out.toString();
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static double seconds(long millis) {
+        return Math.max(0, millis) / 1000.0;
+    }
+}
@@ -0,0 +1,432 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.ActionType;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the serving state: the model's item and user dictionaries, every user's
+ * item weights and normalized vector, the per-user aggregates and the activity log, plus the
+ * write-ahead log position the state includes.
+ * Snapshots are written to a temporary sibling file and moved into place atomically. They are read
+ * back through read-only memory mappings, so restoring copies primitive arrays straight out of
+ * the page cache; only the search indexes over the vectors are rebuilt.
+ */
+public final class ModelSnapshot {
+
+    private static final int MAGIC = 0x52534E50; // "RSNP"
+    private static final int VERSION = 1;
+    // Activity log events are stored column-wise in blocks of this many events
+    private static final int LOG_BLOCK_EVENTS = 1 << 16;
+    private static final ActionType[] ACTIONS = ActionType.values();
+
+    private final UserModel userModel;
+    private final UserActivityIndex activityIndex;
+    private final ActivityLog activityLog;
+    private final long walPosition;
+
+    private ModelSnapshot(UserModel userModel, UserActivityIndex activityIndex, ActivityLog activityLog,
+                          long walPosition) {
+        this.userModel = userModel;
+        this.activityIndex = activityIndex;
+        this.activityLog = activityLog;
+        this.walPosition = walPosition;
+    }
+
+    /**
+     * Write a snapshot of the given state. The caller must keep writers out until this returns.
+     * The snapshot is durable when this returns, so the write-ahead log before it can be dropped.
+     *
+     * @param walPosition write-ahead log position just past the last ingest included in the state
+     * @return size of the snapshot file in bytes
+     */
+    public static long write(Path path, UserModel model, UserActivityIndex activityIndex, ActivityLog activityLog,
+                             long walPosition) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(walPosition);
+            writeModel(out, model);
+            writeActivityIndex(out, activityIndex);
+            writeActivityLog(out, activityLog);
+            out.flush();
+            // The contents must be on disk before the rename can make them the snapshot
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The rename itself is only durable once the directory is
+        syncDirectory(path.toAbsolutePath().getParent());
+        return Files.size(path);
+    }
+
+    private static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Map a snapshot file read-only and rebuild the serving state from it
+     */
+    public static ModelSnapshot read(Path path, UserSearchConfig searchConfig) throws IOException {
+        try (MappedInput in = new MappedInput(path)) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + path);
+            }
+            long walPosition = in.readLong();
+            TimeDecay decay = readDecay(in);
+            UserModel model = readModel(in, searchConfig, decay);
+            UserActivityIndex activityIndex = readActivityIndex(in);
+            ActivityLog activityLog = readActivityLog(in);
+            return new ModelSnapshot(model, activityIndex, activityLog, walPosition);
+        }
+    }
+
+    public UserModel getUserModel() {
+        return userModel;
+    }
+
+    public UserActivityIndex getActivityIndex() {
+        return activityIndex;
+    }
+
+    public ActivityLog getActivityLog() {
+        return activityLog;
+    }
+
+    /**
+     * Write-ahead log position just past the last ingest included in this snapshot
+     */
+    public long getWalPosition() {
+        return walPosition;
+    }
+
+    private static void writeModel(DataOutputStream out, UserModel model) throws IOException {
+        // Weights are relative to the decay epoch
+        out.writeLong(model.getDecay().getHalfLife().toMillis());
+        out.writeLong(model.getDecay().getEpochMillis());
+        writeDictionary(out, model.getItemDictionary(), model.getNumItems());
+        writeDictionary(out, model.getUserDictionary(), model.getNumOrdinals());
+        for (int ordinal = 0; ordinal < model.getNumOrdinals(); ordinal++) {
+            UserModel.UserState user = model.getUser(ordinal);
+            if (user == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            // Weights and the normalized vector share their indices
+            SparseVector weights = user.weights();
+            SparseVector vector = user.vector();
+            out.writeInt(weights.nnz());
+            for (int i = 0; i < weights.nnz(); i++) {
+                out.writeInt(weights.indexAt(i));
+            }
+            for (int i = 0; i < weights.nnz(); i++) {
+                out.writeFloat(weights.valueAt(i));
+            }
+            for (int i = 0; i < vector.nnz(); i++) {
+                out.writeFloat(vector.valueAt(i));
+            }
+        }
+    }
+
+    private static TimeDecay readDecay(MappedInput in) throws IOException {
+        long halfLifeMillis = in.readLong();
+        long epochMillis = in.readLong();
+        return halfLifeMillis > 0 ? new TimeDecay(Duration.ofMillis(halfLifeMillis), epochMillis) : TimeDecay.NONE;
+    }
+
+    private static UserModel readModel(MappedInput in, UserSearchConfig searchConfig, TimeDecay decay)
+            throws IOException {
+        IdDictionary items = readDictionary(in, new IdDictionary());
+        IdDictionary users = readDictionary(in, new IdDictionary());
+        UserModel.UserState[] byOrdinal = new UserModel.UserState[users.size()];
+        for (int ordinal = 0; ordinal < byOrdinal.length; ordinal++) {
+            int nnz = in.readInt();
+            if (nnz < 0) {
+                continue;
+            }
+            int[] indices = in.readInts(nnz);
+            float[] weights = in.readFloats(nnz);
+            float[] values = in.readFloats(nnz);
+            byOrdinal[ordinal] = new UserModel.UserState(ordinal,
+                    new SparseVector(indices, weights), new SparseVector(indices, values));
+        }
+        return UserModel.build(items, users, byOrdinal, searchConfig, decay);
+    }
+
+    private static void writeActivityIndex(DataOutputStream out, UserActivityIndex activityIndex) throws IOException {
+        IdDictionary items = activityIndex.getItemDictionary();
+        writeDictionary(out, items, items.size());
+        Map<String, UserActivityIndex.ItemCounts> userCounts = activityIndex.getUserCounts();
+        out.writeInt(userCounts.size());
+        for (Map.Entry<String, UserActivityIndex.ItemCounts> entry : userCounts.entrySet()) {
+            UserActivityIndex.ItemCounts counts = entry.getValue();
+            writeString(out, entry.getKey());
+            out.writeInt(counts.size());
+            for (int slot = 0; slot < counts.size(); slot++) {
+                out.writeInt(counts.itemAt(slot));
+            }
+            for (int slot = 0; slot < counts.size(); slot++) {
+                out.writeInt(counts.addToCartAt(slot));
+            }
+            for (int slot = 0; slot < counts.size(); slot++) {
+                out.writeInt(counts.viewsAt(slot));
+            }
+        }
+    }
+
+    private static UserActivityIndex readActivityIndex(MappedInput in) throws IOException {
+        UserActivityIndex activityIndex = new UserActivityIndex();
+        readDictionary(in, activityIndex.getItemDictionary());
+        int numUsers = in.readInt();
+        for (int u = 0; u < numUsers; u++) {
+            String userId = in.readString();
+            int size = in.readInt();
+            activityIndex.restore(userId, in.readInts(size), in.readInts(size), in.readInts(size));
+        }
+        return activityIndex;
+    }
+
+    private static void writeActivityLog(DataOutputStream out, ActivityLog activityLog) throws IOException {
+        writeDictionary(out, activityLog.getUserDictionary(), activityLog.getUserDictionary().size());
+        writeDictionary(out, activityLog.getItemDictionary(), activityLog.getItemDictionary().size());
+        long size = activityLog.size();
+        out.writeLong(size);
+
+        LogBlockWriter blocks = new LogBlockWriter(out, size);
+        try {
+            activityLog.forEach(blocks::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ActivityLog readActivityLog(MappedInput in) throws IOException {
+        ActivityLog activityLog = new ActivityLog();
+        readDictionary(in, activityLog.getUserDictionary());
+        readDictionary(in, activityLog.getItemDictionary());
+        long size = in.readLong();
+        for (long start = 0; start < size; start += LOG_BLOCK_EVENTS) {
+            int length = (int) Math.min(LOG_BLOCK_EVENTS, size - start);
+            int[] users = in.readInts(length);
+            int[] items = in.readInts(length);
+            byte[] actions = in.readBytes(length);
+            long[] timestamps = in.readLongs(length);
+            for (int i = 0; i < length; i++) {
+                activityLog.append(users[i], items[i], ACTIONS[actions[i]], timestamps[i]);
+            }
+        }
+        return activityLog;
+    }
+
+    private static void writeDictionary(DataOutputStream out, IdDictionary dictionary, int size) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            writeString(out, dictionary.nameOf(i));
+        }
+    }
+
+    /**
+     * Read IDs into the dictionary in ordinal order, so ordinals match the written ones
+     */
+    private static IdDictionary readDictionary(MappedInput in, IdDictionary dictionary) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            dictionary.getOrAdd(in.readString());
+        }
+        return dictionary;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Buffers activity log events and writes them as one block per column
+     */
+    private static final class LogBlockWriter {
+
+        private final DataOutputStream out;
+        private final int[] users;
+        private final int[] items;
+        private final byte[] actions;
+        private final long[] timestamps;
+        private long remaining;
+        private int length;
+
+        LogBlockWriter(DataOutputStream out, long size) {
+            int capacity = (int) Math.min(LOG_BLOCK_EVENTS, size);
+            this.out = out;
+            this.users = new int[capacity];
+            this.items = new int[capacity];
+            this.actions = new byte[capacity];
+            this.timestamps = new long[capacity];
+            this.remaining = size;
+        }
+
+        void add(int user, int item, ActionType action, long timestamp) {
+            // The log may have grown since its size was written; events past that size are not part of the snapshot
+            if (remaining == 0) {
+                return;
+            }
+            users[length] = user;
+            items[length] = item;
+            actions[length] = (byte) action.ordinal();
+            timestamps[length] = timestamp;
+            length++;
+            remaining--;
+            if (length == users.length || remaining == 0) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            try {
+                for (int i = 0; i < length; i++) {
+                    out.writeInt(users[i]);
+                }
+                for (int i = 0; i < length; i++) {
+                    out.writeInt(items[i]);
+                }
+                out.write(actions, 0, length);
+                for (int i = 0; i < length; i++) {
+                    out.writeLong(timestamps[i]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            length = 0;
+        }
+    }
+
+    /**
+     * Sequential reader over a read-only mapping of the file. A single mapping is limited to 2 GB,
+     * so larger files are mapped in windows that move forward as the reader advances.
+     */
+    private static final class MappedInput implements Closeable {
+
+        private static final long MAX_WINDOW = 1L << 30;
+
+        private final FileChannel channel;
+        private final long fileSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedInput(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.fileSize = channel.size();
+            map(0);
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW, fileSize - position));
+        }
+
+        /**
+         * Make sure at least the given number of bytes can be read from the current window
+         */
+        private void require(int bytes) throws IOException {
+            if (window.remaining() >= bytes) {
+                return;
+            }
+            long position = windowStart + window.position();
+            if (fileSize - position < bytes) {
+                throw new EOFException("Truncated snapshot at byte " + position);
+            }
+            map(position);
+        }
+
+        int readInt() throws IOException {
+            require(Integer.BYTES);
+            return window.getInt();
+        }
+
+        long readLong() throws IOException {
+            require(Long.BYTES);
+            return window.getLong();
+        }
+
+        String readString() throws IOException {
+            byte[] bytes = readBytes(readInt());
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] values = new byte[length];
+            for (int done = 0; done < length; ) {
+                require(Byte.BYTES);
+                int n = Math.min(length - done, window.remaining());
+                window.get(values, done, n);
+                done += n;
+            }
+            return values;
+        }
+
+        int[] readInts(int length) throws IOException {
+            int[] values = new int[length];
+            for (int done = 0; done < length; ) {
+                require(Integer.BYTES);
+                int n = Math.min(length - done, window.remaining() / Integer.BYTES);
+                window.asIntBuffer().get(values, done, n);
+                window.position(window.position() + n * Integer.BYTES);
+                done += n;
+            }
+            return values;
+        }
+
+        float[] readFloats(int length) throws IOException {
+            float[] values = new float[length];
+            for (int done = 0; done < length; ) {
+                require(Float.BYTES);
+                int n = Math.min(length - done, window.remaining() / Float.BYTES);
+                window.asFloatBuffer().get(values, done, n);
+                window.position(window.position() + n * Float.BYTES);
+                done += n;
+            }
+            return values;
+        }
+
+        long[] readLongs(int length) throws IOException {
+            long[] values = new long[length];
+            for (int done = 0; done < length; ) {
+                require(Long.BYTES);
+                int n = Math.min(length - done, window.remaining() / Long.BYTES);
+                window.asLongBuffer().get(values, done, n);
+                window.position(window.position() + n * Long.BYTES);
+                done += n;
+            }
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.microsoft.recommendation.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.microsoft.recommendation.model.CacheStatsResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of recommendation results keyed on (endpoint, userId, k, neighbors).
+ * Eviction is W-TinyLFU (Caffeine), so the few hot users stay cached while one-off lookups
+ * are admitted only if they turn out to be popular. Entries expire after a configurable TTL.
+ * Keys include a generation drawn from one monotonic counter: invalidating users stamps them with a
+ * new generation, and a full invalidation raises a floor under every user's. A result computed from a
+ * snapshot older than the invalidation is stored under a stale generation and never served.
+ * User generations are kept apart from the results and are not bounded by the result cache's size,
+ * so invalidating many users never evicts other users' results. Results expire one TTL after their
+ * computation started, so a user's generation is dropped one TTL after it was set: by then every
+ * result computed before it has expired, and the map holds only users invalidated within a TTL.
+ */
+@Component
+public class RecommendationCache {
+
+    // Values are immutable results; each endpoint always stores the same result type
+    private final Cache<CacheKey, Entry> cache;
+    private final Cache<String, Long> userGenerations;
+    private final AtomicLong generation = new AtomicLong();
+    // Lower bound of every key's generation
+    private final AtomicLong floor = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public RecommendationCache(@Value("${recommendation.cache.maximum-size:10000}") long maximumSize,
+                               @Value("${recommendation.cache.ttl:60s}") Duration ttl) {
+        long ttlNanos = ttl.toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<CacheKey, Entry>() {
+                    @Override
+                    public long expireAfterCreate(CacheKey key, Entry entry, long currentTime) {
+                        return Math.max(0, ttlNanos - (currentTime - entry.startedAt()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(CacheKey key, Entry entry, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, entry, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(CacheKey key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        this.userGenerations = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Return the cached result for the key, computing and caching it on a miss.
+     * The loader must return an immutable value.
+     */
+    public <T> T get(Endpoint endpoint, String userId, int k, Supplier<T> loader) {
+        return get(endpoint, userId, k, 0, loader);
+    }
+
+    /**
+     * Same as {@link #get(Endpoint, String, int, Supplier)} for results that also depend on a neighbor count
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Endpoint endpoint, String userId, int k, int neighbors, Supplier<T> loader) {
+        // Read the generation before computing so a concurrent invalidation makes this entry unreachable
+        long startedAt = System.nanoTime();
+        CacheKey key = new CacheKey(endpoint, userId, k, neighbors, generationOf(userId));
+        return (T) cache.get(key, ignored -> new Entry(loader.get(), startedAt)).value();
+    }
+
+    /**
+     * Bulk lookup for many users; the loader is called once with every user that missed
+     * and must return a result for each of them
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<String, T> getAll(Endpoint endpoint, Collection<String> userIds, int k, int neighbors,
+                                     Function<List<String>, Map<String, T>> loader) {
+        long startedAt = System.nanoTime();
+        Map<CacheKey, String> keys = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            keys.put(new CacheKey(endpoint, userId, k, neighbors, generationOf(userId)), userId);
+        }
+
+        Map<CacheKey, Entry> cached = cache.getAll(keys.keySet(), missing -> {
+            Map<String, T> loaded = loader.apply(missing.stream().map(CacheKey::userId).toList());
+            Map<CacheKey, Entry> byKey = new HashMap<>();
+            for (CacheKey key : missing) {
+                byKey.put(key, new Entry(loaded.get(key.userId()), startedAt));
+            }
+            return byKey;
+        });
+
+        Map<String, T> results = new HashMap<>();
+        cached.forEach((key, entry) -> results.put(key.userId(), (T) entry.value()));
+        return results;
+    }
+
+    private long generationOf(String userId) {
+        Long userGeneration = userGenerations.getIfPresent(userId);
+        long base = floor.get();
+        return userGeneration != null ? Math.max(base, userGeneration) : base;
+    }
+
+    /**
+     * Drop the cached results of the given users; call after their new data is published
+     */
+    public void invalidateUsers(Collection<String> userIds) {
+        long next = generation.incrementAndGet();
+        for (String userId : userIds) {
+            userGenerations.put(userId, next);
+        }
+        invalidations.addAndGet(userIds.size());
+    }
+
+    /**
+     * Drop every cached result; call after a full rebuild is published
+     */
+    public void invalidateAll() {
+        // Raise the floor past every user's generation before forgetting them
+        floor.accumulateAndGet(generation.incrementAndGet(), Math::max);
+        userGenerations.invalidateAll();
+        cache.invalidateAll();
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Hit, miss and eviction counters since startup
+     */
+    public CacheStatsResponse getStats() {
+        var stats = cache.stats();
+        return new CacheStatsResponse(
+                cache.estimatedSize(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount(),
+                invalidations.get()
+        );
+    }
+
+    /**
+     * Cached recommendation endpoints
+     */
+    public enum Endpoint {
+        RECOMMEND,
+        COLLABORATIVE
+    }
+
+    private record CacheKey(Endpoint endpoint, String userId, int k, int neighbors, long generation) {
+    }
+
+    /**
+     * A cached result and when its computation started (System.nanoTime), which its expiry counts from
+     */
+    private record Entry(Object value, long startedAt) {
+    }
+}
@@ -4,7 +4,12 @@ import com.microsoft.recommendation.model.Activity;
 import com.microsoft.recommendation.model.RecommendationItem;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -12,44 +17,293 @@ public class RecommendationService {
     
     private final VectorStore vectorStore;
     private final VectorService vectorService;
-    private final List<Activity> allActivities = new ArrayList<>();
+    private final ItemBasedRecommendationService itemBasedRecommendationService;
+    private final RecommendationCache recommendationCache;
+    private final ActivityStreamReader activityStreamReader;
+    private final WriteAheadLog writeAheadLog;
+    private final ServiceMetrics metrics;
+    private final ScoringExecutor scoringExecutor;
+    private volatile UserActivityIndex userActivityIndex = new UserActivityIndex();
+    private volatile ActivityLog activityLog = new ActivityLog();
     private static final int VECTOR_DIMENSION = 10;
     
-    public RecommendationService(VectorStore vectorStore, VectorService vectorService) {
+    public RecommendationService(VectorStore vectorStore, VectorService vectorService,
+                                 ItemBasedRecommendationService itemBasedRecommendationService,
+                                 RecommendationCache recommendationCache,
+                                 ActivityStreamReader activityStreamReader,
+                                 WriteAheadLog writeAheadLog,
+                                 ServiceMetrics metrics,
+                                 ScoringExecutor scoringExecutor) {
         this.vectorStore = vectorStore;
         this.vectorService = vectorService;
+        this.itemBasedRecommendationService = itemBasedRecommendationService;
+        this.recommendationCache = recommendationCache;
+        this.activityStreamReader = activityStreamReader;
+        this.writeAheadLog = writeAheadLog;
+        this.metrics = metrics;
+        this.scoringExecutor = scoringExecutor;
     }
     
     /**
-     * Ingest user activities
+     * Ingest user activities.
+     * New state is built off to the side and swapped in, so concurrent reads keep using the
+     * previous data until the new data is complete. Returns once the ingest is durable in the
+     * write-ahead log; the wait happens outside the ingest lock so concurrent ingests share fsyncs.
      */
     public void ingestActivities(List<Activity> activities) {
-        // Clear existing data
-        allActivities.clear();
-        vectorStore.clear();
+        long walPosition;
+        synchronized (this) {
+            FullIngest ingest = new FullIngest(true);
+            ingest.add(activities);
+            walPosition = ingest.commit();
+        }
+        writeAheadLog.awaitDurable(walPosition);
+    }
+    
+    /**
+     * Ingest activities streamed as NDJSON or a JSON array, in fixed-size batches.
+     * In replace mode the batches are staged and swapped in at the end, so a failed stream leaves
+     * the current data untouched; in append mode every batch is applied as soon as it is read.
+     *
+     * @return number of activities ingested
+     */
+    public long ingestActivities(InputStream body, boolean append) throws IOException {
+        return ingestActivities(body, append, userId -> true);
+    }
+    
+    /**
+     * Streamed ingest that keeps only the activities of users accepted by the filter
+     * (a cluster node keeps the users it owns and skips the rest)
+     *
+     * @return number of activities ingested
+     */
+    public long ingestActivities(InputStream body, boolean append, Predicate<String> userFilter) throws IOException {
+        long[] count = new long[1];
+        long walPosition;
+        synchronized (this) {
+            FullIngest ingest = append ? null : new FullIngest(true);
+            Consumer<List<Activity>> sink = append ? this::logAndAppend : ingest::add;
+            activityStreamReader.read(body, batch -> {
+                List<Activity> kept = batch.stream().filter(activity -> userFilter.test(activity.getUserId())).toList();
+                if (!kept.isEmpty()) {
+                    sink.accept(kept);
+                    count[0] += kept.size();
+                }
+            });
+            if (ingest != null) {
+                ingest.commit();
+            }
+            walPosition = writeAheadLog.getPosition();
+        }
+        writeAheadLog.awaitDurable(walPosition);
+        return count[0];
+    }
+    
+    /**
+     * Staged replacement of all data. Batches go into a fresh off-heap activity log and per-user
+     * aggregates; Activity objects are dropped as soon as their batch is recorded.
+     * A logged replace writes a begin record, every batch and a commit record to the write-ahead log.
+     */
+    private final class FullIngest {
+        
+        private final UserActivityIndex newActivityIndex = new UserActivityIndex();
+        private final ActivityLog newActivityLog = new ActivityLog();
+        private final boolean logged;
+        
+        FullIngest(boolean logged) {
+            this.logged = logged;
+            if (logged) {
+                writeAheadLog.append(WriteAheadLog.RecordType.REPLACE_BEGIN, List.of(), System.currentTimeMillis());
+            }
+        }
+        
+        void add(List<Activity> activities) {
+            long start = System.nanoTime();
+            long timestamp = System.currentTimeMillis();
+            if (logged) {
+                writeAheadLog.append(WriteAheadLog.RecordType.REPLACE_BATCH, activities, timestamp);
+            }
+            add(activities, timestamp);
+            metrics.recordIngestBatch(false, start);
+        }
+        
+        void add(List<Activity> activities, long timestamp) {
+            // Aggregate activities per user into a fresh index
+            newActivityIndex.recordAll(activities);
+            newActivityLog.append(activities, timestamp);
+        }
+        
+        /**
+         * Swap in the new data
+         *
+         * @return write-ahead log position of the commit record
+         */
+        long commit() {
+            long walPosition = logged
+                    ? writeAheadLog.append(WriteAheadLog.RecordType.REPLACE_COMMIT, List.of(), System.currentTimeMillis())
+                    : 0;
+            
+            
+            // Replace item vectors (keeping for vector store compatibility), sorted so ties resolve by item ID
+            IdDictionary items = newActivityLog.getItemDictionary();
+            List<String> itemIds = new ArrayList<>(items.size());
+            for (int item = 0; item < items.size(); item++) {
+                itemIds.add(items.nameOf(item));
+            }
+            Collections.sort(itemIds);
+            Map<String, double[]> itemVectors = new LinkedHashMap<>();
+            for (String itemId : itemIds) {
+                itemVectors.put(itemId, generateDeterministicVector(itemId));
+            }
+            vectorStore.replaceAll(itemVectors);
+            
+            // Build and publish user vectors for collaborative filtering from the log
+            vectorService.buildUserVectors(newActivityLog);
+            
+            userActivityIndex = newActivityIndex;
+            activityLog = newActivityLog;
+            recommendationCache.invalidateAll();
+            
+            // Item-item similarities are recomputed off the request path
+            itemBasedRecommendationService.scheduleRebuild();
+            return walPosition;
+        }
+    }
+    
+    /**
+     * Write the current model, aggregates and activity log to a snapshot file.
+     * Ingests wait until the snapshot is written; reads are not blocked.
+     *
+     * @return size of the snapshot file in bytes
+     */
+    public synchronized long writeSnapshot(Path path) throws IOException {
+        long walPosition = writeAheadLog.getPosition();
+        long size = ModelSnapshot.write(path, vectorService.getModel(), userActivityIndex, activityLog, walPosition);
+        // The snapshot is durable now, so records before it are no longer needed for recovery
+        writeAheadLog.deleteSegmentsBefore(walPosition);
+        return size;
+    }
+    
+    /**
+     * Replace all data with the contents of a snapshot file
+     *
+     * @return write-ahead log position to replay from
+     */
+    public synchronized long restoreSnapshot(Path path) throws IOException {
+        ModelSnapshot snapshot = ModelSnapshot.read(path, vectorStore.getSearchConfig());
+        UserModel model = snapshot.getUserModel();
+        
+        // Item vectors are derived from the item IDs, so they are regenerated rather than stored
+        Map<String, double[]> itemVectors = new LinkedHashMap<>();
+        for (int item = 0; item < model.getNumItems(); item++) {
+            String itemId = model.getItemId(item);
+            itemVectors.put(itemId, generateDeterministicVector(itemId));
+        }
+        vectorStore.replaceAll(itemVectors);
         
-        // Store all activities
-        allActivities.addAll(activities);
+        userActivityIndex = snapshot.getActivityIndex();
+        activityLog = snapshot.getActivityLog();
+        if (vectorService.matchesDecay(model)) {
+            vectorService.publishModel(model);
+        } else {
+            // The snapshot's weights were decayed with another half-life
+            vectorService.buildUserVectors(activityLog);
+        }
+        recommendationCache.invalidateAll();
+        itemBasedRecommendationService.scheduleRebuild();
+        return snapshot.getWalPosition();
+    }
+    
+    /**
+     * Re-apply the ingests recorded in the write-ahead log from the given position
+     *
+     * @return number of records replayed
+     */
+    public synchronized long replayWriteAheadLog(long fromPosition) throws IOException {
+        return writeAheadLog.replay(fromPosition, new WalReplay());
+    }
+    
+    /**
+     * Applies replayed records without logging them again. Replace records are contiguous because
+     * ingests are serialized, so a replace interrupted by any other record was abandoned.
+     */
+    private final class WalReplay implements WriteAheadLog.RecordHandler {
         
-        // Collect all unique items and generate vectors
-        Set<String> allItems = activities.stream()
-                .map(Activity::getItemId)
-                .collect(Collectors.toSet());
+        private FullIngest pendingReplace;
         
-        // Generate and store vectors for all items (keeping for vector store compatibility)
-        for (String itemId : allItems) {
-            double[] vector = generateDeterministicVector(itemId);
-            vectorStore.add(itemId, vector);
+        @Override
+        public void handle(WriteAheadLog.RecordType type, List<Activity> activities, long timestamp) {
+            switch (type) {
+                case APPEND -> {
+                    pendingReplace = null;
+                    applyAppend(activities, timestamp);
+                }
+                case REPLACE_BEGIN -> pendingReplace = new FullIngest(false);
+                case REPLACE_BATCH -> {
+                    if (pendingReplace != null) {
+                        pendingReplace.add(activities, timestamp);
+                    }
+                }
+                case REPLACE_COMMIT -> {
+                    if (pendingReplace != null) {
+                        pendingReplace.commit();
+                        pendingReplace = null;
+                    }
+                }
+            }
         }
+    }
+    
+    /**
+     * Append user activities to the existing data without rebuilding every index.
+     * Only the users and items touched by the batch are updated. Returns once the batch is durable
+     * in the write-ahead log.
+     */
+    public void appendActivities(List<Activity> activities) {
+        long walPosition;
+        synchronized (this) {
+            walPosition = logAndAppend(activities);
+        }
+        writeAheadLog.awaitDurable(walPosition);
+    }
+    
+    private long logAndAppend(List<Activity> activities) {
+        long start = System.nanoTime();
+        long timestamp = System.currentTimeMillis();
+        long walPosition = writeAheadLog.append(WriteAheadLog.RecordType.APPEND, activities, timestamp);
+        applyAppend(activities, timestamp);
+        metrics.recordIngestBatch(true, start);
+        return walPosition;
+    }
+    
+    private void applyAppend(List<Activity> activities, long timestamp) {
+        userActivityIndex.recordAll(activities);
+        activityLog.append(activities, timestamp);
         
-        // Build user vectors for collaborative filtering
-        vectorService.buildUserVectors(activities);
+        // Generate vectors for items seen for the first time
+        Map<String, double[]> newItemVectors = new LinkedHashMap<>();
+        for (Activity activity : activities) {
+            String itemId = activity.getItemId();
+            if (!vectorStore.contains(itemId) && !newItemVectors.containsKey(itemId)) {
+                newItemVectors.put(itemId, generateDeterministicVector(itemId));
+            }
+        }
+        if (!newItemVectors.isEmpty()) {
+            vectorStore.addAll(newItemVectors);
+        }
         
-        // Store user vectors in VectorStore
-        Map<String, float[]> userVectors = vectorService.getAllUserVectors();
-        for (Map.Entry<String, float[]> entry : userVectors.entrySet()) {
-            vectorStore.upsertUserVector(entry.getKey(), entry.getValue());
+        if (vectorService.requiresRebuild(timestamp)) {
+            // The model's decay epoch is too old to store this batch's weights: rebuild with a new one
+            vectorService.buildUserVectors(activityLog);
+            recommendationCache.invalidateAll();
+        } else {
+            // Update the touched users' vectors and publish a new model snapshot
+            Set<String> touchedUsers = vectorService.appendActivities(activities, timestamp);
+            
+            // Cached results of other users may still reflect the old neighbors until they expire
+            recommendationCache.invalidateUsers(touchedUsers);
         }
+        itemBasedRecommendationService.scheduleRebuild();
     }
     
     /**
@@ -57,35 +311,42 @@ public class RecommendationService {
      * 1. User's own interaction history (items they've interacted with)
      * 2. Action priority: add_to_cart > view
      * 3. Frequency: number of times the user interacted with each item
+     * Results are served from the recommendation cache when possible.
      */
     public List<RecommendationItem> getRecommendations(String userId, int k) {
-        // Get the user's own activities
-        List<Activity> userActivities = allActivities.stream()
-                .filter(activity -> activity.getUserId().equals(userId))
-                .collect(Collectors.toList());
-        
-        if (userActivities.isEmpty()) {
+        return recommendationCache.get(RecommendationCache.Endpoint.RECOMMEND, userId, k,
+                () -> List.copyOf(computeRecommendations(userId, k)));
+    }
+    
+    /**
+     * Get recommendations for many users at once, fanning the cache misses out across the scoring executor
+     */
+    public Map<String, List<RecommendationItem>> getRecommendations(Collection<String> userIds, int k) {
+        return recommendationCache.getAll(RecommendationCache.Endpoint.RECOMMEND, userIds, k, 0,
+                missing -> scoringExecutor.execute(() -> missing.parallelStream().collect(Collectors.toMap(
+                        userId -> userId,
+                        userId -> List.copyOf(computeRecommendations(userId, k))))));
+    }
+    
+    private List<RecommendationItem> computeRecommendations(String userId, int k) {
+        // Look up the user's aggregated interactions (one index snapshot for the whole request)
+        UserActivityIndex activityIndex = userActivityIndex;
+        UserActivityIndex.ItemCounts counts = activityIndex.get(userId);
+        if (counts == null) {
             return new ArrayList<>();
         }
         
         // Calculate scores for each item based on the user's interactions
-        Map<String, ItemScore> itemScores = new HashMap<>();
-        
-        for (Activity activity : userActivities) {
-            String itemId = activity.getItemId();
-            
-            itemScores.putIfAbsent(itemId, new ItemScore(itemId));
-            ItemScore score = itemScores.get(itemId);
-            
-            if ("add_to_cart".equalsIgnoreCase(activity.getAction())) {
-                score.addToCartCount++;
-            } else if ("view".equalsIgnoreCase(activity.getAction())) {
-                score.viewCount++;
-            }
+        List<ItemScore> itemScores = new ArrayList<>(counts.size());
+        for (int slot = 0; slot < counts.size(); slot++) {
+            ItemScore score = new ItemScore(activityIndex.itemAt(counts.itemAt(slot)));
+            score.addToCartCount = counts.addToCartAt(slot);
+            score.viewCount = counts.viewsAt(slot);
+            itemScores.add(score);
         }
         
         // Sort by priority: add_to_cart count DESC, then view count DESC
-        List<RecommendationItem> recommendations = itemScores.values().stream()
+        List<RecommendationItem> recommendations = itemScores.stream()
                 .sorted(Comparator
                         .comparingInt((ItemScore s) -> s.addToCartCount).reversed()
                         .thenComparingInt((ItemScore s) -> s.viewCount).reversed()
@@ -141,7 +402,14 @@ public class RecommendationService {
     /**
      * Get all stored activities count
      */
-    public int getActivityCount() {
-        return allActivities.size();
+    public long getActivityCount() {
+        return activityLog.size();
+    }
+    
+    /**
+     * Get the columnar log of every ingested activity
+     */
+    public ActivityLog getActivityLog() {
+        return activityLog;
     }
 }
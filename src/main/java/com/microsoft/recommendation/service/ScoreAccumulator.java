@@ -0,0 +1,146 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+
+/**
+ * Sums of float scores keyed by non-negative int (an item index or user ordinal), without boxing.
+ * An open-addressed table sized to the keys actually added, so its cost follows the candidates
+ * touched rather than the size of the key space. Keys are read back in the order they were first added.
+ * Not thread-safe; {@link #clear()} resets it for reuse in time proportional to the keys added.
+ */
+public final class ScoreAccumulator {
+
+    private static final int FREE = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    // Table slots: key (FREE if unused) and position of its score in the insertion-ordered arrays
+    private int[] slotKeys;
+    private int[] slotPositions;
+    private int mask;
+
+    // Keys and their scores in insertion order
+    private int[] keys;
+    private float[] scores;
+    private int size;
+
+    public ScoreAccumulator() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedKeys number of distinct keys expected; the table grows past it as needed
+     */
+    public ScoreAccumulator(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedKeys) * 2 - 1) * 2;
+        allocateTable(capacity);
+        keys = new int[capacity / 2];
+        scores = new float[capacity / 2];
+    }
+
+    /**
+     * Add a value to a key's score, adding the key at score 0 first if it is new
+     */
+    public void add(int key, float value) {
+        // Look the position up first: adding a key may replace the scores array
+        int position = positionOf(key);
+        scores[position] += value;
+    }
+
+    /**
+     * Replace a key's score, adding the key if it is new
+     */
+    public void set(int key, float value) {
+        int position = positionOf(key);
+        scores[position] = value;
+    }
+
+    // Position of a key in insertion order, appending it with score 0 if it is new
+    private int positionOf(int key) {
+        int slot = mix(key) & mask;
+        while (true) {
+            int slotKey = slotKeys[slot];
+            if (slotKey == key) {
+                return slotPositions[slot];
+            }
+            if (slotKey == FREE) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int position = size++;
+        keys[position] = key;
+        scores[position] = 0.0f;
+        slotKeys[slot] = key;
+        slotPositions[slot] = position;
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > slotKeys.length) {
+            rehash(slotKeys.length * 2);
+        }
+        return position;
+    }
+
+    /**
+     * Number of distinct keys added since the last clear
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Key at a position in insertion order
+     */
+    public int keyAt(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Accumulated score of the key at a position in insertion order
+     */
+    public float scoreAt(int i) {
+        return scores[i];
+    }
+
+    /**
+     * Forget every key, touching only the slots in use
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            int slot = mix(keys[i]) & mask;
+            while (slotKeys[slot] != FREE) {
+                slotKeys[slot] = FREE;
+                slot = (slot + 1) & mask;
+            }
+        }
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        allocateTable(capacity);
+        for (int i = 0; i < size; i++) {
+            int slot = mix(keys[i]) & mask;
+            while (slotKeys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            slotKeys[slot] = keys[i];
+            slotPositions[slot] = i;
+        }
+    }
+
+    private void allocateTable(int capacity) {
+        slotKeys = new int[capacity];
+        Arrays.fill(slotKeys, FREE);
+        slotPositions = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    // Dense keys (consecutive ordinals) would otherwise fill runs of adjacent slots
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,42 @@
+package com.microsoft.recommendation.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of dense score buffers for neighbor search, owned by the {@link ScoringExecutor} and
+ * sized to its parallelism. At most {@code capacity} buffers are kept between searches; a search that
+ * finds the pool empty allocates its own buffer, which is kept only if there is room when it returns.
+ * Every pooled buffer is all zeros: callers reset the slots they touched before releasing it, and a
+ * buffer left dirty by a failed search is simply not released.
+ */
+public final class ScoreBuffers {
+
+    private final ArrayBlockingQueue<float[]> free;
+
+    public ScoreBuffers(int capacity) {
+        free = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Take a zeroed buffer of at least the given length
+     */
+    public float[] acquire(int length) {
+        float[] buffer = free.poll();
+        // A buffer that is too short is dropped; the larger one replaces it on release
+        return buffer != null && buffer.length >= length ? buffer : new float[length];
+    }
+
+    /**
+     * Return a buffer whose slots have all been reset to zero
+     */
+    public void release(float[] buffer) {
+        free.offer(buffer);
+    }
+
+    /**
+     * Number of buffers currently kept for reuse
+     */
+    public int getPooled() {
+        return free.size();
+    }
+}
@@ -0,0 +1,166 @@
+package com.microsoft.recommendation.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs CPU-bound scoring on a core-sized pool, apart from the request threads.
+ * Request threads only wait for the result, so slow clients and blocked I/O cannot take cores
+ * from scoring, and request threads can be cheap virtual threads (Java 21+,
+ * {@code spring.threads.virtual.enabled=true}) without running an unbounded number of CPU-heavy tasks.
+ * Admission is bounded: at most threads + queue-capacity tasks are running or queued, and further
+ * tasks are rejected at once with a {@link ScoringRejectedException} instead of piling up.
+ * The pool is a ForkJoinPool, so parallel streams inside a task (e.g. batch blocks) run on it too.
+ * When disabled, tasks run on the calling thread as before.
+ * The executor also owns the dense score buffers neighbor search borrows, one per scoring thread
+ * (one per core when disabled), so buffer memory follows the scoring parallelism.
+ */
+@Component
+public class ScoringExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoringExecutor.class);
+
+    private final ForkJoinPool pool;
+    private final Semaphore admissions;
+    private final int threads;
+    private final int queueCapacity;
+    private final ServiceMetrics metrics;
+    private final LongAdder rejected = new LongAdder();
+    private final ScoreBuffers scoreBuffers;
+
+    public ScoringExecutor(@Value("${recommendation.scoring.enabled:true}") boolean enabled,
+                           @Value("${recommendation.scoring.threads:0}") int threads,
+                           @Value("${recommendation.scoring.queue-capacity:256}") int queueCapacity,
+                           ServiceMetrics metrics) {
+        if (threads < 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("recommendation.scoring.threads and queue-capacity must not be negative");
+        }
+        this.metrics = metrics;
+        if (enabled) {
+            // 0 means one thread per available core
+            this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            this.queueCapacity = queueCapacity;
+            this.admissions = new Semaphore(this.threads + queueCapacity);
+            this.pool = new ForkJoinPool(this.threads, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName("scoring-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+            log.info("Scoring executor: {} threads, queue capacity {}", this.threads, queueCapacity);
+        } else {
+            this.threads = 0;
+            this.queueCapacity = 0;
+            this.admissions = null;
+            this.pool = null;
+            log.info("Scoring executor disabled; scoring runs on request threads");
+        }
+        this.scoreBuffers = new ScoreBuffers(pool != null ? this.threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Run a scoring task on the pool and wait for its result.
+     * Tasks started from a scoring thread run inline so nested calls cannot deadlock the pool.
+     *
+     * @throws ScoringRejectedException if the pool and its queue are full
+     */
+    public <T> T execute(Supplier<T> task) {
+        if (pool == null || Thread.currentThread() instanceof ForkJoinWorkerThread worker && worker.getPool() == pool) {
+            return task.get();
+        }
+        if (!admissions.tryAcquire()) {
+            rejected.increment();
+            throw new ScoringRejectedException("Scoring capacity exhausted (" + threads + " threads, "
+                    + queueCapacity + " queued); retry later");
+        }
+        return runAdmitted(task);
+    }
+
+    /**
+     * Run a scoring task on the pool, waiting for room instead of being rejected when it is full.
+     * Meant for long-running streams, which must not fail halfway through; scoring calls made by the
+     * task run inline on its scoring thread without being admitted again.
+     */
+    public <T> T executeWhenAdmitted(Supplier<T> task) {
+        if (pool == null || Thread.currentThread() instanceof ForkJoinWorkerThread worker && worker.getPool() == pool) {
+            return task.get();
+        }
+        try {
+            admissions.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for scoring", e);
+        }
+        return runAdmitted(task);
+    }
+
+    private <T> T runAdmitted(Supplier<T> task) {
+        try {
+            long submitted = System.nanoTime();
+            Future<T> future = pool.submit(() -> {
+                metrics.recordScoringQueueWait(submitted);
+                return task.get();
+            });
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for scoring", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Scoring failed", e.getCause());
+        } finally {
+            admissions.release();
+        }
+    }
+
+    /**
+     * Whether scoring runs on the dedicated pool
+     */
+    public boolean isEnabled() {
+        return pool != null;
+    }
+
+    /**
+     * Dense score buffers shared by the searches this executor runs
+     */
+    public ScoreBuffers getScoreBuffers() {
+        return scoreBuffers;
+    }
+
+    /**
+     * Tasks running or queued on the pool
+     */
+    public int getInFlight() {
+        return pool != null ? threads + queueCapacity - admissions.availablePermits() : 0;
+    }
+
+    /**
+     * Tasks rejected because the pool and its queue were full
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
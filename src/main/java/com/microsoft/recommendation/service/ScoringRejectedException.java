@@ -0,0 +1,13 @@
+package com.microsoft.recommendation.service;
+
+/**
+ * Thrown when the {@link ScoringExecutor} has no room for another task; the request may be retried later
+ */
+public class ScoringRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ScoringRejectedException(String message) {
+        super(message);
+    }
+}
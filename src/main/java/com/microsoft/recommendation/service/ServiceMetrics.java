@@ -0,0 +1,120 @@
+package com.microsoft.recommendation.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency and size histograms of the service's hot paths. The services record into it directly;
+ * {@link MetricsService} adds the model gauges and renders everything for scraping.
+ * Only computed results are recorded: requests answered from the recommendation cache do not
+ * search or score and leave the histograms untouched.
+ */
+@Component
+public class ServiceMetrics {
+
+    /**
+     * Phases of building and publishing user vectors
+     */
+    public enum BuildPhase {
+        /** Summing the weighted interactions of every user in a full rebuild */
+        ACCUMULATE,
+        /** Assigning item indices in ID order */
+        ITEMS,
+        /** Assigning user ordinals and normalizing the user vectors */
+        USER_VECTORS,
+        /** Indexing postings, shards or the ANN graph and publishing the model */
+        INDEX,
+        /** Updating the touched users of an appended batch and publishing the model */
+        APPEND,
+        /** Folding the delta of appended users into a new base in the background */
+        COMPACT;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Histogram replaceBatches = Histogram.ofNanos();
+    private final Histogram appendBatches = Histogram.ofNanos();
+    private final Map<BuildPhase, Histogram> buildPhases = new EnumMap<>(BuildPhase.class);
+    private final Histogram neighborSearches = Histogram.ofNanos();
+    private final Histogram candidateScoring = Histogram.ofNanos();
+    private final Histogram candidateItems = Histogram.ofCounts();
+    private final Histogram scoringQueueWaits = Histogram.ofNanos();
+
+    public ServiceMetrics() {
+        for (BuildPhase phase : BuildPhase.values()) {
+            buildPhases.put(phase, Histogram.ofNanos());
+        }
+    }
+
+    /**
+     * Record the time taken to apply one ingested batch
+     */
+    public void recordIngestBatch(boolean append, long startNanos) {
+        (append ? appendBatches : replaceBatches).recordSince(startNanos);
+    }
+
+    /**
+     * Record the time taken by one phase of a user vector build
+     */
+    public void recordBuildPhase(BuildPhase phase, long startNanos) {
+        buildPhases.get(phase).recordSince(startNanos);
+    }
+
+    /**
+     * Record the time taken to find one user's neighbors
+     */
+    public void recordNeighborSearch(long nanos) {
+        neighborSearches.record(nanos);
+    }
+
+    /**
+     * Record the time taken to score one user's candidate items and how many candidates there were
+     */
+    public void recordCandidateScoring(long startNanos, int candidates) {
+        candidateScoring.recordSince(startNanos);
+        candidateItems.record(candidates);
+    }
+
+    /**
+     * Record how long a scoring task waited for a {@link ScoringExecutor} thread
+     */
+    public void recordScoringQueueWait(long submittedNanos) {
+        scoringQueueWaits.recordSince(submittedNanos);
+    }
+
+    /**
+     * Append all histograms in the Prometheus text format
+     */
+    void writeTo(StringBuilder out) {
+        header(out, "recommendation_ingest_batch_seconds", "Time to apply one ingested batch of activities");
+        replaceBatches.writeSamples(out, "recommendation_ingest_batch_seconds", "mode=\"replace\"");
+        appendBatches.writeSamples(out, "recommendation_ingest_batch_seconds", "mode=\"append\"");
+
+        header(out, "recommendation_vector_build_phase_seconds", "Time spent in each phase of a user vector build");
+        for (Map.Entry<BuildPhase, Histogram> phase : buildPhases.entrySet()) {
+            phase.getValue().writeSamples(out, "recommendation_vector_build_phase_seconds",
+                    "phase=\"" + phase.getKey().label() + "\"");
+        }
+
+        header(out, "recommendation_neighbor_search_seconds", "Time to find the similar users of one user");
+        neighborSearches.writeSamples(out, "recommendation_neighbor_search_seconds", "");
+
+        header(out, "recommendation_candidate_scoring_seconds", "Time to score the candidate items of one user");
+        candidateScoring.writeSamples(out, "recommendation_candidate_scoring_seconds", "");
+
+        header(out, "recommendation_candidate_items", "Candidate items scored for one user");
+        candidateItems.writeSamples(out, "recommendation_candidate_items", "");
+
+        header(out, "recommendation_scoring_queue_wait_seconds", "Time a scoring task waited for a scoring thread");
+        scoringQueueWaits.writeSamples(out, "recommendation_scoring_queue_wait_seconds", "");
+    }
+
+    private static void header(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+    }
+}
@@ -0,0 +1,41 @@
+package com.microsoft.recommendation.service;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels using the widest double species the CPU supports. Lanes are accumulated with
+ * fused multiply-adds and reduced once at the end; the tail shorter than a vector is done scalar.
+ * Vectors shorter than two full vectors use the scalar loop, since the lane reduction costs more
+ * than it saves there (item vectors are 10-dimensional today).
+ * Only instantiated through {@link DenseVectorMath#select(String)}.
+ */
+final class SimdVectorMath extends DenseVectorMath {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int MIN_SIMD_LENGTH = 2 * SPECIES.length();
+
+    @Override
+    public double dot(double[] a, double[] b) {
+        if (a.length < MIN_SIMD_LENGTH) {
+            return Scalar.INSTANCE.dot(a, b);
+        }
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(a.length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            sums = DoubleVector.fromArray(SPECIES, a, i).fma(DoubleVector.fromArray(SPECIES, b, i), sums);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String describe() {
+        return "simd (" + SPECIES.length() + " double lanes)";
+    }
+}
@@ -0,0 +1,115 @@
+package com.microsoft.recommendation.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the serving state to a snapshot file and recovers it on startup from the last
+ * snapshot plus the write-ahead log records after it.
+ * Snapshots are written on demand and, if an interval is configured, periodically in the background.
+ * Snapshots are disabled when no snapshot path is configured; the write-ahead log is still replayed.
+ */
+@Service
+public class SnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+
+    private final RecommendationService recommendationService;
+    private final Path path;
+    private final Duration interval;
+    // Epoch milliseconds of the snapshot file the current state was restored from or last written to; 0 if none
+    private volatile long lastSnapshotAt;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SnapshotService(RecommendationService recommendationService,
+                           @Value("${recommendation.snapshot.path:}") String path,
+                           @Value("${recommendation.snapshot.interval:0s}") Duration interval) {
+        this.recommendationService = recommendationService;
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.interval = interval;
+    }
+
+    /**
+     * Recover the state before the application starts serving, then start periodic snapshots
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        long start = System.nanoTime();
+        long walPosition = 0;
+        if (path != null && Files.exists(path)) {
+            walPosition = recommendationService.restoreSnapshot(path);
+            lastSnapshotAt = Files.getLastModifiedTime(path).toMillis();
+            log.info("Restored snapshot {} ({} activities) in {} ms", path,
+                    recommendationService.getActivityCount(), (System.nanoTime() - start) / 1_000_000);
+        }
+        long replayed = recommendationService.replayWriteAheadLog(walPosition);
+        if (replayed > 0) {
+            log.info("Replayed {} write-ahead log records ({} activities) in {} ms", replayed,
+                    recommendationService.getActivityCount(), (System.nanoTime() - start) / 1_000_000);
+        }
+
+        if (path != null && !interval.isZero()) {
+            long millis = interval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::writeScheduledSnapshot, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write a snapshot now
+     *
+     * @return size of the snapshot file in bytes
+     */
+    public long writeSnapshot() throws IOException {
+        if (path == null) {
+            throw new SnapshotsDisabledException("Snapshots are disabled; set recommendation.snapshot.path");
+        }
+        long size = recommendationService.writeSnapshot(path);
+        lastSnapshotAt = System.currentTimeMillis();
+        return size;
+    }
+
+    /**
+     * Snapshot file location, or null if persistence is disabled
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Time of the last snapshot written or restored, in epoch milliseconds, or 0 if there is none
+     */
+    public long getLastSnapshotAt() {
+        return lastSnapshotAt;
+    }
+
+    private void writeScheduledSnapshot() {
+        try {
+            writeSnapshot();
+        } catch (IOException | RuntimeException e) {
+            // Keep the schedule running; the previous snapshot file is still intact
+            log.warn("Scheduled snapshot to {} failed", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
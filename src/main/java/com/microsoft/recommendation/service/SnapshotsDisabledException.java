@@ -0,0 +1,13 @@
+package com.microsoft.recommendation.service;
+
+/**
+ * Thrown when a snapshot is requested but no snapshot path is configured
+ */
+public class SnapshotsDisabledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SnapshotsDisabledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,205 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+
+/**
+ * Immutable sparse float vector stored as parallel arrays of sorted item indices and values.
+ * Memory and dot-product cost are proportional to the number of non-zeros, not to catalog size.
+ */
+public final class SparseVector {
+
+    public static final SparseVector EMPTY = new SparseVector(new int[0], new float[0]);
+
+    private final int[] indices;
+    private final float[] values;
+
+    /**
+     * Create a vector from strictly increasing indices and their values (arrays are not copied)
+     */
+    public SparseVector(int[] indices, float[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("Indices and values must have the same length");
+        }
+        this.indices = indices;
+        this.values = values;
+    }
+
+    /**
+     * Build a vector from unsorted index/value pairs; duplicate indices are summed
+     */
+    public static SparseVector fromUnsorted(int[] indices, float[] values, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        // Sort positions by index without boxing: high 32 bits index, low 32 bits position
+        long[] order = new long[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = ((long) indices[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int[] sortedIndices = new int[length];
+        float[] sortedValues = new float[length];
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            int index = (int) (order[i] >>> 32);
+            float value = values[(int) order[i]];
+            if (size > 0 && sortedIndices[size - 1] == index) {
+                sortedValues[size - 1] += value;
+            } else {
+                sortedIndices[size] = index;
+                sortedValues[size] = value;
+                size++;
+            }
+        }
+
+        return new SparseVector(Arrays.copyOf(sortedIndices, size), Arrays.copyOf(sortedValues, size));
+    }
+
+    /**
+     * Number of stored (non-zero) entries
+     */
+    public int nnz() {
+        return indices.length;
+    }
+
+    /**
+     * Index of the i-th stored entry
+     */
+    public int indexAt(int i) {
+        return indices[i];
+    }
+
+    /**
+     * Value of the i-th stored entry
+     */
+    public float valueAt(int i) {
+        return values[i];
+    }
+
+    /**
+     * Value at a dimension, or 0 when it is not stored
+     */
+    public float get(int index) {
+        int pos = Arrays.binarySearch(indices, index);
+        return pos >= 0 ? values[pos] : 0.0f;
+    }
+
+    /**
+     * Euclidean norm of the vector
+     */
+    public float norm() {
+        float sumSquares = 0.0f;
+        for (float v : values) {
+            sumSquares += v * v;
+        }
+        return (float) Math.sqrt(sumSquares);
+    }
+
+    /**
+     * Return a unit-length copy of this vector (or this vector if its norm is zero)
+     */
+    public SparseVector normalize() {
+        float norm = norm();
+        if (norm == 0.0f) {
+            return this;
+        }
+
+        float[] normalized = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            normalized[i] = values[i] / norm;
+        }
+        return new SparseVector(indices, normalized);
+    }
+
+    /**
+     * Dot product with another sparse vector using a merge over the sorted indices
+     */
+    public float dot(SparseVector other) {
+        int[] a = indices;
+        int[] b = other.indices;
+        int i = 0;
+        int j = 0;
+        float result = 0.0f;
+
+        while (i < a.length && j < b.length) {
+            int ia = a[i];
+            int ib = b[j];
+            if (ia == ib) {
+                result += values[i] * other.values[j];
+                i++;
+                j++;
+            } else if (ia < ib) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Growable buffer of (index, value) pairs that sums duplicates into a sparse vector.
+     * The buffer is compacted whenever it fills up, so it stays proportional to the number
+     * of distinct indices rather than the number of values added.
+     */
+    public static final class Accumulator {
+
+        private static final int INITIAL_CAPACITY = 4;
+
+        private int[] indices = new int[INITIAL_CAPACITY];
+        private float[] values = new float[INITIAL_CAPACITY];
+        private int size;
+
+        public Accumulator() {}
+
+        /**
+         * Start from the entries of an existing vector
+         */
+        public Accumulator(SparseVector initial) {
+            for (int i = 0; i < initial.nnz(); i++) {
+                add(initial.indexAt(i), initial.valueAt(i));
+            }
+        }
+
+        public void add(int index, float value) {
+            if (size == indices.length) {
+                compact();
+                // Grow when compaction freed less than half of the buffer
+                if (size > indices.length / 2) {
+                    indices = Arrays.copyOf(indices, indices.length * 2);
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+            }
+            indices[size] = index;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * Sum of everything added so far
+         */
+        public SparseVector build() {
+            return fromUnsorted(indices, values, size);
+        }
+
+        /**
+         * Sum of everything added so far with every index i replaced by remap[i]
+         */
+        public SparseVector build(int[] remap) {
+            int[] remapped = new int[size];
+            for (int i = 0; i < size; i++) {
+                remapped[i] = remap[indices[i]];
+            }
+            return fromUnsorted(remapped, values, size);
+        }
+
+        private void compact() {
+            SparseVector compacted = build();
+            size = compacted.nnz();
+            System.arraycopy(compacted.indices, 0, indices, 0, size);
+            System.arraycopy(compacted.values, 0, values, 0, size);
+        }
+    }
+}
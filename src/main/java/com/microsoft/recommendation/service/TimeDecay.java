@@ -0,0 +1,93 @@
+package com.microsoft.recommendation.service;
+
+import java.time.Duration;
+
+/**
+ * Exponential time decay of interaction weights, anchored at a per-model epoch.
+ * An event at time t contributes weight * 2^(-(now - t) / halfLife). That factor splits into
+ * 2^((t - epoch) / halfLife), which is fixed when the event is added, and 2^(-(now - epoch) / halfLife),
+ * which is the same for every weight of the model. Models therefore store epoch-relative weights,
+ * and aging a model only changes one global factor. Normalized user vectors, neighbor similarities
+ * and score rankings do not depend on it, so nothing is rebuilt as time passes; the factor is applied
+ * to displayed scores and to weights sent to other nodes.
+ * Epoch-relative weights grow for events after the epoch, so a model must be rebuilt with a new epoch
+ * before {@link #canScale} fails (after {@value #MAX_HALF_LIVES} half-lives). Events older than
+ * {@value #MIN_HALF_LIVES} half-lives before the epoch keep that floor, so every weight stays positive.
+ */
+public final class TimeDecay {
+
+    /** Weights are not decayed */
+    public static final TimeDecay NONE = new TimeDecay(Duration.ZERO, 0);
+
+    // Epoch-relative scales stay within [2^-MIN_HALF_LIVES, 2^MAX_HALF_LIVES], so the float squares summed
+    // when normalizing user vectors neither overflow nor underflow
+    static final int MAX_HALF_LIVES = 32;
+    static final int MIN_HALF_LIVES = 60;
+
+    private final Duration halfLife;
+    private final long epochMillis;
+    // Half-lives per millisecond; 0 disables decay
+    private final double rate;
+
+    public TimeDecay(Duration halfLife, long epochMillis) {
+        if (halfLife.isNegative()) {
+            throw new IllegalArgumentException("Decay half-life must not be negative");
+        }
+        // The rate is per millisecond and snapshots store the half-life in milliseconds
+        if (halfLife.getNano() % 1_000_000 != 0) {
+            throw new IllegalArgumentException("Decay half-life must be a whole number of milliseconds");
+        }
+        this.halfLife = halfLife;
+        this.epochMillis = epochMillis;
+        this.rate = halfLife.isZero() ? 0.0 : 1.0 / halfLife.toMillis();
+    }
+
+    /**
+     * The same decay anchored at another epoch
+     */
+    public TimeDecay withEpoch(long epochMillis) {
+        return isEnabled() ? new TimeDecay(halfLife, epochMillis) : this;
+    }
+
+    public boolean isEnabled() {
+        return rate > 0.0;
+    }
+
+    public Duration getHalfLife() {
+        return halfLife;
+    }
+
+    /**
+     * Time the stored weights are relative to, in epoch milliseconds
+     */
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    /**
+     * Multiplier turning the weight of an event at the given time into an epoch-relative weight
+     * (exactly 1 when decay is disabled)
+     */
+    public float scale(long eventMillis) {
+        if (!isEnabled()) {
+            return 1.0f;
+        }
+        double halfLives = Math.max(-MIN_HALF_LIVES, Math.min(MAX_HALF_LIVES, (eventMillis - epochMillis) * rate));
+        return (float) Math.pow(2.0, halfLives);
+    }
+
+    /**
+     * Whether an event at the given time can still be stored relative to this epoch
+     */
+    public boolean canScale(long eventMillis) {
+        return !isEnabled() || (eventMillis - epochMillis) * rate <= MAX_HALF_LIVES;
+    }
+
+    /**
+     * Multiplier turning epoch-relative weights into weights decayed to the given time
+     * (exactly 1 when decay is disabled)
+     */
+    public double factorAt(long nowMillis) {
+        return isEnabled() ? Math.pow(2.0, -(nowMillis - epochMillis) * rate) : 1.0;
+    }
+}
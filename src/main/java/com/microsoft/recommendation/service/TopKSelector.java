@@ -0,0 +1,126 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+
+/**
+ * Bounded top-K selector backed by a min-heap over parallel primitive arrays.
+ * Keeps the K best (id, score) pairs in O(n log k) time without boxing.
+ * Higher scores win; equal scores are ordered by ascending id so results are deterministic.
+ */
+public final class TopKSelector {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int k;
+    private int[] ids;
+    private double[] scores;
+    private int size;
+
+    public TopKSelector(int k) {
+        this.k = Math.max(k, 0);
+        int capacity = Math.min(this.k, INITIAL_CAPACITY);
+        this.ids = new int[capacity];
+        this.scores = new double[capacity];
+    }
+
+    /**
+     * Offer a candidate; it is kept only if it ranks among the best K seen so far
+     */
+    public void offer(int id, double score) {
+        if (size < k) {
+            if (size == ids.length) {
+                int capacity = (int) Math.min((long) k, Math.max(1L, (long) size * 2));
+                ids = Arrays.copyOf(ids, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && ranksBefore(id, score, ids[0], scores[0])) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Number of candidates currently held
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sort the held candidates best-first in place and return how many there are.
+     * Read them afterwards with {@link #idAt(int)} and {@link #scoreAt(int)}.
+     */
+    public int sort() {
+        // Heap sort: repeatedly move the worst element to the end
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        return size;
+    }
+
+    /**
+     * Id at a position (best-first after {@link #sort()})
+     */
+    public int idAt(int i) {
+        return ids[i];
+    }
+
+    /**
+     * Score at a position (best-first after {@link #sort()})
+     */
+    public double scoreAt(int i) {
+        return scores[i];
+    }
+
+    /**
+     * True if candidate (id1, score1) should be ranked ahead of (id2, score2)
+     */
+    private static boolean ranksBefore(int id1, double score1, int id2, double score2) {
+        return score1 > score2 || (score1 == score2 && id1 < id2);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            // Min-heap on rank: the worst candidate sits at the root
+            if (!ranksBefore(ids[parent], scores[parent], ids[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= end) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < end && ranksBefore(ids[worst], scores[worst], ids[right], scores[right])) {
+                worst = right;
+            }
+            if (!ranksBefore(ids[i], scores[i], ids[worst], scores[worst])) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
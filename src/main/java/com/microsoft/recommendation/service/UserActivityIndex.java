@@ -0,0 +1,175 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.ActionType;
+import com.microsoft.recommendation.model.Activity;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user aggregate of interactions maintained at ingest time:
+ * userId -> item -> (addToCartCount, viewCount).
+ * Items are interned to ints and each user's counts live in sorted primitive arrays,
+ * so reading a user's history is one hash lookup instead of a scan over all activities.
+ * Writers must be serialized; a user's counts are copied, updated and then republished,
+ * so concurrent readers always see a complete per-user state without locking.
+ */
+public final class UserActivityIndex {
+
+    private final IdDictionary items = new IdDictionary();
+    private final Map<String, ItemCounts> userCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Record a batch of interactions. Actions other than add_to_cart and view still register
+     * the item with zero counts, matching how the recommendation scoring treats them.
+     */
+    public void recordAll(List<Activity> activities) {
+        // Update private copies of the touched users, then publish each one
+        Map<String, ItemCounts> updated = new HashMap<>();
+        for (Activity activity : activities) {
+            int item = items.getOrAdd(activity.getItemId());
+            ItemCounts counts = updated.computeIfAbsent(activity.getUserId(), userId -> {
+                ItemCounts current = userCounts.get(userId);
+                return current != null ? current.copy() : new ItemCounts();
+            });
+
+            int slot = counts.slotFor(item);
+            switch (ActionType.parse(activity.getAction())) {
+                case ADD_TO_CART -> counts.addToCart[slot]++;
+                case VIEW -> counts.views[slot]++;
+                default -> { }
+            }
+        }
+        userCounts.putAll(updated);
+    }
+
+    /**
+     * Get the aggregated counts for a user, or null if the user has no activity
+     */
+    public ItemCounts get(String userId) {
+        return userCounts.get(userId);
+    }
+
+    /**
+     * Get the item ID for an interned item index
+     */
+    public String itemAt(int index) {
+        return items.nameOf(index);
+    }
+
+    /**
+     * Number of users with at least one activity
+     */
+    public int getNumUsers() {
+        return userCounts.size();
+    }
+
+    /**
+     * Interned item IDs, indexed by the item indexes stored in the counts
+     */
+    IdDictionary getItemDictionary() {
+        return items;
+    }
+
+    /**
+     * Read-only view of every user's counts
+     */
+    Map<String, ItemCounts> getUserCounts() {
+        return Collections.unmodifiableMap(userCounts);
+    }
+
+    /**
+     * Install a user's counts read back from a snapshot (item indexes must be sorted)
+     */
+    void restore(String userId, int[] itemIndexes, int[] addToCartCounts, int[] viewCounts) {
+        ItemCounts counts = new ItemCounts();
+        int capacity = Math.max(itemIndexes.length, ItemCounts.INITIAL_CAPACITY);
+        counts.items = Arrays.copyOf(itemIndexes, capacity);
+        counts.addToCart = Arrays.copyOf(addToCartCounts, capacity);
+        counts.views = Arrays.copyOf(viewCounts, capacity);
+        counts.size = itemIndexes.length;
+        userCounts.put(userId, counts);
+    }
+
+    /**
+     * One user's per-item counts, kept sorted by item index in parallel arrays; not modified once published
+     */
+    public static final class ItemCounts {
+
+        private static final int INITIAL_CAPACITY = 4;
+
+        private int[] items = new int[INITIAL_CAPACITY];
+        private int[] addToCart = new int[INITIAL_CAPACITY];
+        private int[] views = new int[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Copy of these counts that can be modified without affecting readers
+         */
+        private ItemCounts copy() {
+            ItemCounts copy = new ItemCounts();
+            copy.items = Arrays.copyOf(items, items.length);
+            copy.addToCart = Arrays.copyOf(addToCart, addToCart.length);
+            copy.views = Arrays.copyOf(views, views.length);
+            copy.size = size;
+            return copy;
+        }
+
+        /**
+         * Find the slot for an item, inserting a zeroed entry if it is not present yet
+         */
+        private int slotFor(int item) {
+            int pos = Arrays.binarySearch(items, 0, size, item);
+            if (pos >= 0) {
+                return pos;
+            }
+
+            int insertAt = -pos - 1;
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                addToCart = Arrays.copyOf(addToCart, size * 2);
+                views = Arrays.copyOf(views, size * 2);
+            }
+            System.arraycopy(items, insertAt, items, insertAt + 1, size - insertAt);
+            System.arraycopy(addToCart, insertAt, addToCart, insertAt + 1, size - insertAt);
+            System.arraycopy(views, insertAt, views, insertAt + 1, size - insertAt);
+            items[insertAt] = item;
+            addToCart[insertAt] = 0;
+            views[insertAt] = 0;
+            size++;
+            return insertAt;
+        }
+
+        /**
+         * Number of distinct items
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Interned item index at a slot
+         */
+        public int itemAt(int slot) {
+            return items[slot];
+        }
+
+        /**
+         * add_to_cart count at a slot
+         */
+        public int addToCartAt(int slot) {
+            return addToCart[slot];
+        }
+
+        /**
+         * view count at a slot
+         */
+        public int viewsAt(int slot) {
+            return views[slot];
+        }
+    }
+}
@@ -0,0 +1,598 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable snapshot of the collaborative-filtering model: item index, normalized user vectors,
+ * per-user item weights and the item-to-users postings index.
+ * Snapshots are built off to the side and published with a single volatile write in
+ * {@link VectorStore}, so readers never block and never observe a half-built model.
+ * Users changed by append ingest since the last full build live in a small delta layered over
+ * the base. Appends copy the delta and queries score every delta user, so the delta is kept to a
+ * fixed fraction of the base (at least {@value #MIN_COMPACTION_DELTA} users): past that,
+ * {@link VectorService} compacts it into a new base in the background and rebases the latest snapshot
+ * onto it. A compaction rebuilds the whole base, so tying it to base size keeps its cost per appended
+ * user independent of how many users there are.
+ * In HNSW search mode every base also carries an approximate neighbor graph; in sharded exact
+ * mode the base postings are split into {@link UserShard}s over contiguous ordinal ranges.
+ * Users and items are dense ints throughout; string IDs are only resolved through the dictionaries.
+ */
+public final class UserModel {
+
+    // A background compaction is due once the delta holds 1/COMPACTION_DIVISOR of the base users,
+    // or MIN_COMPACTION_DELTA users for small bases
+    static final int COMPACTION_DIVISOR = 64;
+    static final int MIN_COMPACTION_DELTA = 1024;
+
+    private static final Comparator<UserState> BY_ORDINAL = Comparator.comparingInt(UserState::ordinal);
+
+    // Append-only dictionaries, shared with later snapshots; bounded by numItems / numOrdinals
+    private final IdDictionary items;
+    private final int numItems;
+    private final IdDictionary users;
+    private final int numOrdinals;
+
+    private final UserSearchConfig searchConfig;
+    // Weights are relative to this decay's epoch
+    private final TimeDecay decay;
+    // Base users indexed by ordinal (null for ordinals not in the base)
+    private final UserState[] baseUsers;
+    private final int numBaseUsers;
+    private final UserPostingsIndex basePostings;
+    private final UserShard[] baseShards;
+    private final HnswIndex baseAnnIndex;
+    // Users changed since the base was built, sorted by ordinal
+    private final UserState[] deltaUsers;
+    private final int[] deltaOrdinals;
+    private final SparseVector[] deltaVectors;
+    private final int numUsers;
+
+    private UserModel(IdDictionary items, IdDictionary users, UserSearchConfig searchConfig, TimeDecay decay,
+                      UserState[] baseUsers, int numBaseUsers, UserPostingsIndex basePostings,
+                      UserShard[] baseShards, HnswIndex baseAnnIndex, UserState[] deltaUsers) {
+        this.items = items;
+        this.numItems = items.size();
+        this.users = users;
+        this.numOrdinals = users.size();
+        this.searchConfig = searchConfig;
+        this.decay = decay;
+        this.baseUsers = baseUsers;
+        this.numBaseUsers = numBaseUsers;
+        this.basePostings = basePostings;
+        this.baseShards = baseShards;
+        this.baseAnnIndex = baseAnnIndex;
+        this.deltaUsers = deltaUsers;
+
+        this.deltaOrdinals = new int[deltaUsers.length];
+        this.deltaVectors = new SparseVector[deltaUsers.length];
+        int newUsers = 0;
+        for (int i = 0; i < deltaUsers.length; i++) {
+            deltaOrdinals[i] = deltaUsers[i].ordinal();
+            deltaVectors[i] = deltaUsers[i].vector();
+            if (getBaseUser(deltaOrdinals[i]) == null) {
+                newUsers++;
+            }
+        }
+        this.numUsers = numBaseUsers + newUsers;
+    }
+
+    /**
+     * Create an empty snapshot with fresh dictionaries
+     */
+    public static UserModel empty(UserSearchConfig searchConfig) {
+        return build(new IdDictionary(), new IdDictionary(), new UserState[0], searchConfig);
+    }
+
+    /**
+     * Build a snapshot whose base contains all given users, indexing postings in ordinal order.
+     * Sharded configurations index one {@link UserShard} per ordinal range instead of a single
+     * postings index, building the shards in parallel.
+     *
+     * @param byOrdinal user states indexed by ordinal; null entries are ordinals without a user
+     */
+    public static UserModel build(IdDictionary items, IdDictionary users, UserState[] byOrdinal,
+                                  UserSearchConfig searchConfig) {
+        return build(items, users, byOrdinal, searchConfig, TimeDecay.NONE);
+    }
+
+    /**
+     * Build a snapshot as {@link #build(IdDictionary, IdDictionary, UserState[], UserSearchConfig)}
+     * does, from weights relative to the given decay's epoch
+     */
+    public static UserModel build(IdDictionary items, IdDictionary users, UserState[] byOrdinal,
+                                  UserSearchConfig searchConfig, TimeDecay decay) {
+        int numBaseUsers = 0;
+        for (UserState state : byOrdinal) {
+            if (state != null) {
+                numBaseUsers++;
+            }
+        }
+
+        if (searchConfig.isSharded()) {
+            int numShards = searchConfig.shards();
+            UserShard[] shards = new UserShard[numShards];
+            IntStream.range(0, numShards).parallel().forEach(shard -> shards[shard] = UserShard.build(byOrdinal,
+                    shardStart(shard, numShards, byOrdinal.length), shardStart(shard + 1, numShards, byOrdinal.length)));
+            return new UserModel(items, users, searchConfig, decay, byOrdinal, numBaseUsers, UserPostingsIndex.EMPTY,
+                    shards, null, new UserState[0]);
+        }
+
+        UserPostingsIndex postings = indexPostings(byOrdinal);
+        HnswIndex annIndex = searchConfig.mode() == UserSearchConfig.Mode.HNSW
+                ? buildAnnIndex(byOrdinal, numBaseUsers, postings, searchConfig)
+                : null;
+        return new UserModel(items, users, searchConfig, decay, byOrdinal, numBaseUsers, postings,
+                new UserShard[0], annIndex, new UserState[0]);
+    }
+
+    private static UserPostingsIndex indexPostings(UserState[] byOrdinal) {
+        UserPostingsIndex postings = new UserPostingsIndex();
+        for (UserState state : byOrdinal) {
+            if (state != null) {
+                postings.addUser(state.ordinal(), state.vector());
+            }
+        }
+        return postings;
+    }
+
+    // Shards split the ordinal space into ranges of (nearly) equal width
+    private static int shardStart(int shard, int numShards, int numOrdinals) {
+        return (int) ((long) numOrdinals * shard / numShards);
+    }
+
+    /**
+     * Build an HNSW graph over the base users of this snapshot (used for recall evaluation)
+     */
+    public HnswIndex buildBaseAnnIndex(UserSearchConfig config) {
+        UserPostingsIndex postings = baseShards.length > 0 ? indexPostings(baseUsers) : basePostings;
+        return buildAnnIndex(baseUsers, numBaseUsers, postings, config);
+    }
+
+    private static HnswIndex buildAnnIndex(UserState[] byOrdinal, int numUsers, UserPostingsIndex postings,
+                                           UserSearchConfig config) {
+        int[] ordinals = new int[numUsers];
+        SparseVector[] vectors = new SparseVector[numUsers];
+        int n = 0;
+        for (UserState state : byOrdinal) {
+            if (state != null) {
+                ordinals[n] = state.ordinal();
+                vectors[n] = state.vector();
+                n++;
+            }
+        }
+        return HnswIndex.build(ordinals, vectors, byOrdinal.length, postings, config);
+    }
+
+    /**
+     * Return a new snapshot with the given users replaced. Updates go into the delta layer;
+     * the cost is proportional to the delta and the updates, never to the base.
+     */
+    public UserModel withUpdates(UserState[] updatedUsers) {
+        UserState[] updates = updatedUsers.clone();
+        Arrays.sort(updates, BY_ORDINAL);
+
+        // Merge the sorted updates into the sorted delta; an update replaces the delta entry
+        UserState[] merged = new UserState[deltaUsers.length + updates.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < deltaUsers.length || j < updates.length) {
+            if (j == updates.length
+                    || (i < deltaUsers.length && deltaUsers[i].ordinal() < updates[j].ordinal())) {
+                merged[n++] = deltaUsers[i++];
+            } else {
+                if (i < deltaUsers.length && deltaUsers[i].ordinal() == updates[j].ordinal()) {
+                    i++;
+                }
+                merged[n++] = updates[j++];
+            }
+        }
+        merged = Arrays.copyOf(merged, n);
+        return new UserModel(items, users, searchConfig, decay, baseUsers, numBaseUsers, basePostings, baseShards,
+                baseAnnIndex, merged);
+    }
+
+    /**
+     * Whether the delta has grown large enough to be compacted
+     */
+    public boolean needsCompaction() {
+        return deltaUsers.length >= compactionThreshold();
+    }
+
+    /**
+     * Delta size at which this snapshot needs compaction
+     */
+    int compactionThreshold() {
+        return Math.max(MIN_COMPACTION_DELTA, numBaseUsers / COMPACTION_DIVISOR);
+    }
+
+    /**
+     * Build a new snapshot whose base holds every user of this one and whose delta is empty.
+     * Costs a full index build, so it is meant to run off the append path.
+     */
+    public UserModel compact() {
+        UserState[] byOrdinal = Arrays.copyOf(baseUsers, numOrdinals);
+        for (UserState state : deltaUsers) {
+            byOrdinal[state.ordinal()] = state;
+        }
+        return build(items, users, byOrdinal, searchConfig, decay);
+    }
+
+    /**
+     * Return this snapshot on the base of {@code compacted}, the compaction of an earlier snapshot
+     * {@code source}. Users updated since {@code source} stay in the delta.
+     *
+     * @return the rebased snapshot, or null if this snapshot no longer shares its base with {@code source}
+     *         (e.g. a full rebuild was published in the meantime)
+     */
+    public UserModel withCompactedBase(UserModel source, UserModel compacted) {
+        if (source.baseUsers != baseUsers || source.decay != decay) {
+            return null;
+        }
+        // Delta entries are replaced, never modified, so an unchanged user is the same instance
+        UserState[] newer = new UserState[deltaUsers.length];
+        int n = 0;
+        for (UserState state : deltaUsers) {
+            if (source.getUser(state.ordinal()) != state) {
+                newer[n++] = state;
+            }
+        }
+        return new UserModel(items, users, searchConfig, decay, compacted.baseUsers, compacted.numBaseUsers,
+                compacted.basePostings, compacted.baseShards, compacted.baseAnnIndex, Arrays.copyOf(newer, n));
+    }
+
+    /**
+     * Number of users in the delta layer
+     */
+    public int getNumDeltaUsers() {
+        return deltaUsers.length;
+    }
+
+    /**
+     * Return this snapshot with its weights declared relative to another decay.
+     * Only meaningful for a snapshot without users, whose weights cannot disagree with it.
+     */
+    public UserModel withDecay(TimeDecay decay) {
+        return new UserModel(items, users, searchConfig, decay, baseUsers, numBaseUsers, basePostings, baseShards,
+                baseAnnIndex, deltaUsers);
+    }
+
+    /**
+     * Get a user's state, or null if the user is unknown
+     */
+    public UserState getUser(String userId) {
+        return getUser(getUserOrdinal(userId));
+    }
+
+    /**
+     * Get a user's state by ordinal, or null if the ordinal has no user in this snapshot
+     */
+    public UserState getUser(int ordinal) {
+        if (ordinal < 0) {
+            return null;
+        }
+        int pos = Arrays.binarySearch(deltaOrdinals, ordinal);
+        return pos >= 0 ? deltaUsers[pos] : getBaseUser(ordinal);
+    }
+
+    private UserState getBaseUser(int ordinal) {
+        return ordinal < baseUsers.length ? baseUsers[ordinal] : null;
+    }
+
+    /**
+     * Get the normalized vector for a user, or null if the user is unknown
+     */
+    public SparseVector getUserVector(String userId) {
+        UserState state = getUser(userId);
+        return state != null ? state.vector() : null;
+    }
+
+    /**
+     * Get the normalized vector for a user ordinal, or null if the ordinal has no user
+     */
+    public SparseVector getUserVector(int ordinal) {
+        UserState state = getUser(ordinal);
+        return state != null ? state.vector() : null;
+    }
+
+    /**
+     * Get the items a user interacted with
+     */
+    public Set<String> getUserItems(String userId) {
+        UserState state = getUser(userId);
+        if (state == null) {
+            return Set.of();
+        }
+        Set<String> itemIds = new HashSet<>();
+        for (int i = 0; i < state.weights().nnz(); i++) {
+            itemIds.add(items.nameOf(state.weights().indexAt(i)));
+        }
+        return itemIds;
+    }
+
+    /**
+     * Get the accumulated weight of a user-item interaction, relative to the model's decay epoch
+     */
+    public float getUserItemWeight(String userId, String itemId) {
+        UserState state = getUser(userId);
+        int itemIndex = getItemIndex(itemId);
+        return state != null && itemIndex >= 0 ? state.weights().get(itemIndex) : 0.0f;
+    }
+
+    /**
+     * Get all user IDs in this snapshot
+     */
+    public Set<String> getAllUserIds() {
+        Set<String> userIds = new HashSet<>();
+        for (int ordinal = 0; ordinal < numOrdinals; ordinal++) {
+            if (getUser(ordinal) != null) {
+                userIds.add(users.nameOf(ordinal));
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Number of users in this snapshot
+     */
+    public int getNumUsers() {
+        return numUsers;
+    }
+
+    /**
+     * Number of non-zero user-item weights over all users in this snapshot
+     */
+    public long getNumNonZeros() {
+        long nonZeros = 0;
+        for (int ordinal = 0; ordinal < numOrdinals; ordinal++) {
+            UserState state = getUser(ordinal);
+            if (state != null) {
+                nonZeros += state.weights().nnz();
+            }
+        }
+        return nonZeros;
+    }
+
+    /**
+     * Upper bound (exclusive) of the user ordinals in this snapshot
+     */
+    public int getNumOrdinals() {
+        return numOrdinals;
+    }
+
+    /**
+     * Number of items in this snapshot's item index
+     */
+    public int getNumItems() {
+        return numItems;
+    }
+
+    /**
+     * Get the index of an item, or -1 if it is not part of this snapshot
+     */
+    public int getItemIndex(String itemId) {
+        int index = items.get(itemId);
+        return index < numItems ? index : -1;
+    }
+
+    /**
+     * Get the item ID at an index
+     */
+    public String getItemId(int index) {
+        return items.nameOf(index);
+    }
+
+    /**
+     * Get the ordinal of a user, or -1 if it is not part of this snapshot
+     */
+    public int getUserOrdinal(String userId) {
+        int ordinal = userId != null ? users.get(userId) : -1;
+        return ordinal < numOrdinals ? ordinal : -1;
+    }
+
+    /**
+     * Get the user ID for an ordinal
+     */
+    public String getUserId(int ordinal) {
+        return users.nameOf(ordinal);
+    }
+
+    /**
+     * Item dictionary shared by this snapshot and those derived from it
+     */
+    public IdDictionary getItemDictionary() {
+        return items;
+    }
+
+    /**
+     * User dictionary shared by this snapshot and those derived from it
+     */
+    public IdDictionary getUserDictionary() {
+        return users;
+    }
+
+    /**
+     * Search configuration this snapshot was built with
+     */
+    public UserSearchConfig getSearchConfig() {
+        return searchConfig;
+    }
+
+    /**
+     * Decay whose epoch the stored user-item weights are relative to
+     */
+    public TimeDecay getDecay() {
+        return decay;
+    }
+
+    /**
+     * HNSW graph over the base users, or null in exact search mode
+     */
+    public HnswIndex getBaseAnnIndex() {
+        return baseAnnIndex;
+    }
+
+    /**
+     * Number of users in the base (indexed) part of this snapshot
+     */
+    public int getNumBaseUsers() {
+        return numBaseUsers;
+    }
+
+    /**
+     * Find candidate neighbors for the query using this snapshot's search mode.
+     * Exact mode scores every overlapping user; sharded exact mode takes the top k of every shard
+     * in turn (see {@link VectorStore} for the parallel version); HNSW mode searches the base graph
+     * for at least k + 1 candidates, drops users superseded by the delta, and scores delta users exactly.
+     *
+     * @param buffers pool of dense score buffers for exact mode
+     */
+    public UserPostingsIndex.Candidates findSimilarUsers(SparseVector query, int k, String excludeUserId,
+                                                         ScoreBuffers buffers) {
+        if (baseShards.length > 0) {
+            int excludeOrdinal = getUserOrdinal(excludeUserId);
+            UserPostingsIndex.Candidates[] shardCandidates = new UserPostingsIndex.Candidates[baseShards.length];
+            for (int shard = 0; shard < baseShards.length; shard++) {
+                shardCandidates[shard] = searchShard(shard, query, k, excludeOrdinal);
+            }
+            return gatherShards(shardCandidates, query, excludeOrdinal);
+        }
+        if (baseAnnIndex == null) {
+            return scoreOverlappingUsers(query, excludeUserId, buffers);
+        }
+        return mergeWithDelta(baseAnnIndex.search(query, k + 1), query, excludeUserId);
+    }
+
+    /**
+     * Block version of {@link #findSimilarUsers(SparseVector, int, String, ScoreBuffers)}. In exact mode the
+     * whole block is scored in one pass over the postings; sharded and HNSW modes search query by query.
+     */
+    public UserPostingsIndex.Candidates[] findSimilarUsers(SparseVector[] queries, int k, String[] excludeUserIds,
+                                                           ScoreBuffers buffers) {
+        if (baseAnnIndex != null || baseShards.length > 0) {
+            UserPostingsIndex.Candidates[] results = new UserPostingsIndex.Candidates[queries.length];
+            for (int q = 0; q < queries.length; q++) {
+                results[q] = findSimilarUsers(queries[q], k, excludeUserIds[q], buffers);
+            }
+            return results;
+        }
+        int[] excludeOrdinals = new int[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            excludeOrdinals[q] = getUserOrdinal(excludeUserIds[q]);
+        }
+        return basePostings.scoreOverlappingUsers(queries, excludeOrdinals, numOrdinals, deltaOrdinals, deltaVectors,
+                buffers);
+    }
+
+    /**
+     * Number of base shards, or 0 if the base is not sharded
+     */
+    public int getNumShards() {
+        return baseShards.length;
+    }
+
+    /**
+     * Get a base shard
+     */
+    public UserShard getShard(int shard) {
+        return baseShards[shard];
+    }
+
+    /**
+     * Top k users of one base shard for the query, leaving out users superseded by the delta
+     */
+    public UserPostingsIndex.Candidates searchShard(int shard, SparseVector query, int k, int excludeOrdinal) {
+        return baseShards[shard].search(query, k, excludeOrdinal, deltaOrdinals);
+    }
+
+    /**
+     * Concatenate per-shard candidates and add the exactly scored delta users, keeping every
+     * non-zero score as exact search does. The top k of the result is the global top k.
+     */
+    public UserPostingsIndex.Candidates gatherShards(UserPostingsIndex.Candidates[] shardCandidates,
+                                                     SparseVector query, int excludeOrdinal) {
+        int size = deltaOrdinals.length;
+        for (UserPostingsIndex.Candidates candidates : shardCandidates) {
+            size += candidates.size();
+        }
+        int[] ordinals = new int[size];
+        float[] scores = new float[size];
+        int n = 0;
+        for (UserPostingsIndex.Candidates candidates : shardCandidates) {
+            System.arraycopy(candidates.userOrdinals(), 0, ordinals, n, candidates.size());
+            System.arraycopy(candidates.scores(), 0, scores, n, candidates.size());
+            n += candidates.size();
+        }
+        for (int i = 0; i < deltaOrdinals.length; i++) {
+            float score = query.dot(deltaVectors[i]);
+            if (score != 0.0f && deltaOrdinals[i] != excludeOrdinal) {
+                ordinals[n] = deltaOrdinals[i];
+                scores[n] = score;
+                n++;
+            }
+        }
+        return new UserPostingsIndex.Candidates(Arrays.copyOf(ordinals, n), Arrays.copyOf(scores, n));
+    }
+
+    /**
+     * Combine approximate base candidates with exactly scored delta users, dropping zero scores
+     */
+    public UserPostingsIndex.Candidates mergeWithDelta(UserPostingsIndex.Candidates baseCandidates,
+                                                       SparseVector query, String excludeUserId) {
+        int excludeOrdinal = getUserOrdinal(excludeUserId);
+        int size = baseCandidates.size() + deltaOrdinals.length;
+        int[] ordinals = new int[size];
+        float[] scores = new float[size];
+        int n = 0;
+
+        for (int i = 0; i < baseCandidates.size(); i++) {
+            int ordinal = baseCandidates.userOrdinals()[i];
+            if (ordinal == excludeOrdinal || Arrays.binarySearch(deltaOrdinals, ordinal) >= 0
+                    || baseCandidates.scores()[i] <= 0.0f) {
+                continue;
+            }
+            ordinals[n] = ordinal;
+            scores[n] = baseCandidates.scores()[i];
+            n++;
+        }
+        for (int i = 0; i < deltaOrdinals.length; i++) {
+            float score = query.dot(deltaVectors[i]);
+            if (score > 0.0f && deltaOrdinals[i] != excludeOrdinal) {
+                ordinals[n] = deltaOrdinals[i];
+                scores[n] = score;
+                n++;
+            }
+        }
+        return new UserPostingsIndex.Candidates(Arrays.copyOf(ordinals, n), Arrays.copyOf(scores, n));
+    }
+
+    /**
+     * Score every user sharing at least one item with the query, excluding the given user
+     */
+    public UserPostingsIndex.Candidates scoreOverlappingUsers(SparseVector query, String excludeUserId,
+                                                              ScoreBuffers buffers) {
+        if (baseShards.length > 0) {
+            return findSimilarUsers(query, Integer.MAX_VALUE, excludeUserId, buffers);
+        }
+        return basePostings.scoreOverlappingUsers(query, getUserOrdinal(excludeUserId), numOrdinals,
+                deltaOrdinals, deltaVectors, buffers);
+    }
+
+    /**
+     * Number of queries to score together in {@link #findSimilarUsers(SparseVector[], int, String[], ScoreBuffers)}
+     */
+    public int getQueryBlockSize() {
+        return UserPostingsIndex.blockSize(numOrdinals);
+    }
+
+    /**
+     * Per-user state: dictionary ordinal, accumulated raw item weights, and the normalized vector.
+     * Both vectors are indexed by item and store the same items in the same order.
+     */
+    public record UserState(int ordinal, SparseVector weights, SparseVector vector) {
+    }
+}
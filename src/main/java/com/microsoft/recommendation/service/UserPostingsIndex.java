@@ -0,0 +1,271 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from item index to the (user ordinal, normalized weight) pairs of users who
+ * interacted with it. Neighbor search only visits postings of the query's items, so users
+ * without any overlapping item are never scored.
+ * The index is filled once while a model is built and is read-only after it is published.
+ */
+public final class UserPostingsIndex {
+
+    public static final UserPostingsIndex EMPTY = new UserPostingsIndex();
+
+    private static final int INITIAL_POSTINGS_CAPACITY = 4;
+
+    // Block scoring limits: queries per block and floats per dense score buffer (16 MB); a single
+    // query over more ordinals than fit in one buffer is scored into a sparse accumulator instead
+    private static final int MAX_BLOCK_QUERIES = 32;
+    private static final int BLOCK_SCRATCH_FLOATS = 4 << 20;
+
+    private int[][] postingUsers = new int[0][];
+    private float[][] postingWeights = new float[0][];
+    private int[] postingSizes = new int[0];
+
+    /**
+     * Add every entry of a user's normalized vector to the postings of its items
+     */
+    public void addUser(int userOrdinal, SparseVector vector) {
+        for (int i = 0; i < vector.nnz(); i++) {
+            addPosting(vector.indexAt(i), userOrdinal, vector.valueAt(i));
+        }
+    }
+
+    /**
+     * Append a (user, weight) posting to an item's list
+     */
+    private void addPosting(int itemIndex, int userOrdinal, float weight) {
+        ensureItemCapacity(itemIndex + 1);
+
+        int size = postingSizes[itemIndex];
+        if (postingUsers[itemIndex] == null) {
+            postingUsers[itemIndex] = new int[INITIAL_POSTINGS_CAPACITY];
+            postingWeights[itemIndex] = new float[INITIAL_POSTINGS_CAPACITY];
+        } else if (size == postingUsers[itemIndex].length) {
+            postingUsers[itemIndex] = Arrays.copyOf(postingUsers[itemIndex], size * 2);
+            postingWeights[itemIndex] = Arrays.copyOf(postingWeights[itemIndex], size * 2);
+        }
+
+        postingUsers[itemIndex][size] = userOrdinal;
+        postingWeights[itemIndex][size] = weight;
+        postingSizes[itemIndex] = size + 1;
+    }
+
+    private void ensureItemCapacity(int numItems) {
+        if (numItems <= postingSizes.length) {
+            return;
+        }
+        int capacity = Math.max(numItems, postingSizes.length * 2);
+        postingUsers = Arrays.copyOf(postingUsers, capacity);
+        postingWeights = Arrays.copyOf(postingWeights, capacity);
+        postingSizes = Arrays.copyOf(postingSizes, capacity);
+    }
+
+    /**
+     * Number of postings stored for an item
+     */
+    public int getPostingCount(int itemIndex) {
+        return itemIndex < postingSizes.length ? postingSizes[itemIndex] : 0;
+    }
+
+    /**
+     * User ordinal of the p-th posting of an item
+     */
+    public int getPostingUser(int itemIndex, int p) {
+        return postingUsers[itemIndex][p];
+    }
+
+    /**
+     * Score every user that shares at least one item with the query vector.
+     * Scores are dot products accumulated over the query's postings in item order.
+     * Users listed in the overrides are scored against their override vector instead of
+     * their postings, which lets a snapshot layer recent updates over a read-only index.
+     *
+     * @param numOrdinals      upper bound (exclusive) of the user ordinals that can occur
+     * @param overrideOrdinals ordinals whose postings are stale or missing
+     * @param overrideVectors  current vectors of those users
+     * @param buffers          pool to borrow the dense score buffer from
+     */
+    public Candidates scoreOverlappingUsers(SparseVector query, int excludeOrdinal, int numOrdinals,
+                                           int[] overrideOrdinals, SparseVector[] overrideVectors,
+                                           ScoreBuffers buffers) {
+        return scoreOverlappingUsers(new SparseVector[] {query}, new int[] {excludeOrdinal}, numOrdinals,
+                overrideOrdinals, overrideVectors, buffers)[0];
+    }
+
+    /**
+     * Block version of {@link #scoreOverlappingUsers(SparseVector, int, int, int[], SparseVector[], ScoreBuffers)}:
+     * each postings list shared by several queries of the block is walked once for all of them.
+     * The dense buffer borrowed for the block is queries.length * numOrdinals floats; see {@link #blockSize(int)}.
+     */
+    public Candidates[] scoreOverlappingUsers(SparseVector[] queries, int[] excludeOrdinals, int numOrdinals,
+                                             int[] overrideOrdinals, SparseVector[] overrideVectors,
+                                             ScoreBuffers buffers) {
+        int numQueries = queries.length;
+        if ((long) numOrdinals * numQueries > BLOCK_SCRATCH_FLOATS) {
+            Candidates[] results = new Candidates[numQueries];
+            for (int q = 0; q < numQueries; q++) {
+                results[q] = scoreSparse(queries[q], excludeOrdinals[q], overrideOrdinals, overrideVectors);
+            }
+            return results;
+        }
+
+        // User-major layout: the scores of one user for all queries of the block are adjacent
+        float[] scores = buffers.acquire(numOrdinals * numQueries);
+
+        int[][] touched = new int[numQueries][16];
+        int[] numTouched = new int[numQueries];
+
+        // Group the block's (item, query) entries by item so each postings list is read once
+        int numEntries = 0;
+        for (SparseVector query : queries) {
+            numEntries += query.nnz();
+        }
+        long[] entries = new long[numEntries];
+        int[] entryQueries = new int[numEntries];
+        float[] entryWeights = new float[numEntries];
+        int e = 0;
+        for (int q = 0; q < numQueries; q++) {
+            for (int i = 0; i < queries[q].nnz(); i++) {
+                entries[e] = ((long) queries[q].indexAt(i) << 32) | e;
+                entryQueries[e] = q;
+                entryWeights[e] = queries[q].valueAt(i);
+                e++;
+            }
+        }
+        Arrays.sort(entries);
+
+        int groupStart = 0;
+        while (groupStart < numEntries) {
+            int itemIndex = (int) (entries[groupStart] >>> 32);
+            int groupEnd = groupStart + 1;
+            while (groupEnd < numEntries && (int) (entries[groupEnd] >>> 32) == itemIndex) {
+                groupEnd++;
+            }
+            if (itemIndex < postingSizes.length) {
+                int[] users = postingUsers[itemIndex];
+                float[] weights = postingWeights[itemIndex];
+                int size = postingSizes[itemIndex];
+
+                for (int p = 0; p < size; p++) {
+                    int user = users[p];
+                    int base = user * numQueries;
+                    for (int g = groupStart; g < groupEnd; g++) {
+                        int entry = (int) entries[g];
+                        int q = entryQueries[entry];
+                        if (user == excludeOrdinals[q]) {
+                            continue;
+                        }
+                        if (scores[base + q] == 0.0f) {
+                            touched[q] = push(touched[q], numTouched[q]++, user);
+                        }
+                        scores[base + q] += entryWeights[entry] * weights[p];
+                    }
+                }
+            }
+            groupStart = groupEnd;
+        }
+
+        Candidates[] results = new Candidates[numQueries];
+        for (int q = 0; q < numQueries; q++) {
+            // Replace the scores of overridden users with an exact dot product on their current vector
+            for (int i = 0; i < overrideOrdinals.length; i++) {
+                int user = overrideOrdinals[i];
+                if (user == excludeOrdinals[q]) {
+                    continue;
+                }
+                float score = queries[q].dot(overrideVectors[i]);
+                int slot = user * numQueries + q;
+                if (scores[slot] == 0.0f && score != 0.0f) {
+                    touched[q] = push(touched[q], numTouched[q]++, user);
+                }
+                scores[slot] = score;
+            }
+
+            // Collect non-zero scores and reset the scratch buffer
+            int[] candidateUsers = new int[numTouched[q]];
+            float[] candidateScores = new float[numTouched[q]];
+            int numCandidates = 0;
+            for (int i = 0; i < numTouched[q]; i++) {
+                int slot = touched[q][i] * numQueries + q;
+                if (scores[slot] != 0.0f) {
+                    candidateUsers[numCandidates] = touched[q][i];
+                    candidateScores[numCandidates] = scores[slot];
+                    numCandidates++;
+                }
+                scores[slot] = 0.0f;
+            }
+            results[q] = new Candidates(Arrays.copyOf(candidateUsers, numCandidates),
+                    Arrays.copyOf(candidateScores, numCandidates));
+        }
+        buffers.release(scores);
+        return results;
+    }
+
+    /**
+     * Score one query into an accumulator sized to the users it reaches rather than to every ordinal.
+     * Postings are walked in the same order as the dense path, so scores are identical.
+     */
+    private Candidates scoreSparse(SparseVector query, int excludeOrdinal, int[] overrideOrdinals,
+                                   SparseVector[] overrideVectors) {
+        ScoreAccumulator scores = new ScoreAccumulator();
+        for (int i = 0; i < query.nnz(); i++) {
+            int itemIndex = query.indexAt(i);
+            if (itemIndex >= postingSizes.length) {
+                continue;
+            }
+            float queryWeight = query.valueAt(i);
+            int[] users = postingUsers[itemIndex];
+            float[] weights = postingWeights[itemIndex];
+            for (int p = 0, size = postingSizes[itemIndex]; p < size; p++) {
+                if (users[p] != excludeOrdinal) {
+                    scores.add(users[p], queryWeight * weights[p]);
+                }
+            }
+        }
+        for (int i = 0; i < overrideOrdinals.length; i++) {
+            if (overrideOrdinals[i] != excludeOrdinal) {
+                scores.set(overrideOrdinals[i], query.dot(overrideVectors[i]));
+            }
+        }
+
+        int[] candidateUsers = new int[scores.size()];
+        float[] candidateScores = new float[scores.size()];
+        int numCandidates = 0;
+        for (int i = 0; i < scores.size(); i++) {
+            if (scores.scoreAt(i) != 0.0f) {
+                candidateUsers[numCandidates] = scores.keyAt(i);
+                candidateScores[numCandidates] = scores.scoreAt(i);
+                numCandidates++;
+            }
+        }
+        return new Candidates(Arrays.copyOf(candidateUsers, numCandidates),
+                Arrays.copyOf(candidateScores, numCandidates));
+    }
+
+    /**
+     * Number of queries to score per block so the dense score buffer stays within a fixed budget
+     */
+    public static int blockSize(int numOrdinals) {
+        return Math.max(1, Math.min(MAX_BLOCK_QUERIES, BLOCK_SCRATCH_FLOATS / Math.max(numOrdinals, 1)));
+    }
+
+    private static int[] push(int[] list, int size, int value) {
+        if (size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+        }
+        list[size] = value;
+        return list;
+    }
+
+    /**
+     * Users reached through the postings together with their accumulated scores
+     */
+    public record Candidates(int[] userOrdinals, float[] scores) {
+
+        public int size() {
+            return userOrdinals.length;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.microsoft.recommendation.service;
+
+/**
+ * How neighbor search over user vectors is performed.
+ *
+ * @param mode           EXACT walks the postings index; HNSW uses an approximate graph index
+ * @param m              HNSW max neighbors per node on upper layers (layer 0 keeps 2 * m)
+ * @param efConstruction HNSW candidate list size while building; higher gives a better graph
+ * @param efSearch       HNSW candidate list size while searching; higher trades latency for recall
+ * @param shards         EXACT mode only: number of ordinal-range shards searched in parallel (1 = unsharded)
+ */
+public record UserSearchConfig(Mode mode, int m, int efConstruction, int efSearch, int shards) {
+
+    public static final UserSearchConfig EXACT = new UserSearchConfig(Mode.EXACT, 16, 200, 64);
+
+    public UserSearchConfig {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW parameters must be positive and m >= 2");
+        }
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+    }
+
+    public UserSearchConfig(Mode mode, int m, int efConstruction, int efSearch) {
+        this(mode, m, efConstruction, efSearch, 1);
+    }
+
+    /**
+     * Whether exact search is split across several shards
+     */
+    public boolean isSharded() {
+        return mode == Mode.EXACT && shards > 1;
+    }
+
+    public enum Mode {
+        EXACT,
+        HNSW
+    }
+}
@@ -0,0 +1,168 @@
+package com.microsoft.recommendation.service;
+
+import java.util.Arrays;
+
+/**
+ * One shard of a model's base users: the users of a contiguous ordinal range and their postings
+ * in compressed sparse row form, so all of the shard's weights sit in one contiguous float array.
+ * A search walks only this shard's arrays with a scratch buffer sized to the shard, which lets
+ * shards be searched in parallel without sharing anything but the query.
+ * Shards are built with a model snapshot and are read-only afterwards.
+ */
+public final class UserShard {
+
+    // Reusable per-thread score buffer indexed by shard-local ordinal; reset after every search
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[0]);
+
+    private final int firstOrdinal;
+    private final int numOrdinals;
+    private final int numUsers;
+    // Postings of item i are [itemStarts[i], itemStarts[i + 1]) in shard-local ordinal order
+    private final int[] itemStarts;
+    private final int[] postingUsers;
+    private final float[] postingWeights;
+
+    private UserShard(int firstOrdinal, int numOrdinals, int numUsers, int[] itemStarts,
+                      int[] postingUsers, float[] postingWeights) {
+        this.firstOrdinal = firstOrdinal;
+        this.numOrdinals = numOrdinals;
+        this.numUsers = numUsers;
+        this.itemStarts = itemStarts;
+        this.postingUsers = postingUsers;
+        this.postingWeights = postingWeights;
+    }
+
+    /**
+     * Index the users with ordinals in [from, to)
+     *
+     * @param byOrdinal user states indexed by ordinal; null entries are ordinals without a user
+     */
+    public static UserShard build(UserModel.UserState[] byOrdinal, int from, int to) {
+        // Count postings per item, then lay them out with one prefix sum
+        int numItems = 0;
+        int numUsers = 0;
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            SparseVector vector = byOrdinal[ordinal] != null ? byOrdinal[ordinal].vector() : null;
+            if (vector != null) {
+                numUsers++;
+                if (vector.nnz() > 0) {
+                    numItems = Math.max(numItems, vector.indexAt(vector.nnz() - 1) + 1);
+                }
+            }
+        }
+        int[] itemStarts = new int[numItems + 1];
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            if (byOrdinal[ordinal] != null) {
+                SparseVector vector = byOrdinal[ordinal].vector();
+                for (int i = 0; i < vector.nnz(); i++) {
+                    itemStarts[vector.indexAt(i) + 1]++;
+                }
+            }
+        }
+        for (int item = 0; item < numItems; item++) {
+            itemStarts[item + 1] += itemStarts[item];
+        }
+
+        int[] postingUsers = new int[itemStarts[numItems]];
+        float[] postingWeights = new float[itemStarts[numItems]];
+        int[] filled = Arrays.copyOf(itemStarts, numItems);
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            if (byOrdinal[ordinal] != null) {
+                SparseVector vector = byOrdinal[ordinal].vector();
+                for (int i = 0; i < vector.nnz(); i++) {
+                    int p = filled[vector.indexAt(i)]++;
+                    postingUsers[p] = ordinal - from;
+                    postingWeights[p] = vector.valueAt(i);
+                }
+            }
+        }
+        return new UserShard(from, to - from, numUsers, itemStarts, postingUsers, postingWeights);
+    }
+
+    /**
+     * Top k users of this shard by dot product with the query, scored over the query's postings
+     * in item order so scores match {@link UserPostingsIndex}. Ties go to the lower ordinal.
+     *
+     * @param excludeOrdinal user to leave out, or -1
+     * @param skipOrdinals   sorted ordinals whose postings are stale and must not be returned
+     */
+    public UserPostingsIndex.Candidates search(SparseVector query, int k, int excludeOrdinal, int[] skipOrdinals) {
+        float[] scores = SCRATCH.get();
+        if (scores.length < numOrdinals) {
+            scores = new float[numOrdinals];
+            SCRATCH.set(scores);
+        }
+        int excluded = excludeOrdinal - firstOrdinal;
+        int[] touched = new int[16];
+        int numTouched = 0;
+
+        int numItems = itemStarts.length - 1;
+        for (int i = 0; i < query.nnz(); i++) {
+            int itemIndex = query.indexAt(i);
+            if (itemIndex >= numItems) {
+                continue;
+            }
+            float queryWeight = query.valueAt(i);
+            for (int p = itemStarts[itemIndex], end = itemStarts[itemIndex + 1]; p < end; p++) {
+                int user = postingUsers[p];
+                if (user == excluded) {
+                    continue;
+                }
+                if (scores[user] == 0.0f) {
+                    if (numTouched == touched.length) {
+                        touched = Arrays.copyOf(touched, numTouched * 2);
+                    }
+                    touched[numTouched++] = user;
+                }
+                scores[user] += queryWeight * postingWeights[p];
+            }
+        }
+
+        // Keep the shard's best k and reset the scratch buffer
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = 0; i < numTouched; i++) {
+            int user = touched[i];
+            float score = scores[user];
+            int ordinal = firstOrdinal + user;
+            if (score != 0.0f && Arrays.binarySearch(skipOrdinals, ordinal) < 0) {
+                selector.offer(ordinal, score);
+            }
+            scores[user] = 0.0f;
+        }
+        int[] ordinals = new int[selector.size()];
+        float[] selectedScores = new float[selector.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = selector.idAt(i);
+            selectedScores[i] = (float) selector.scoreAt(i);
+        }
+        return new UserPostingsIndex.Candidates(ordinals, selectedScores);
+    }
+
+    /**
+     * First user ordinal covered by this shard
+     */
+    public int getFirstOrdinal() {
+        return firstOrdinal;
+    }
+
+    /**
+     * Width of the shard's ordinal range
+     */
+    public int getNumOrdinals() {
+        return numOrdinals;
+    }
+
+    /**
+     * Number of users indexed in this shard
+     */
+    public int getNumUsers() {
+        return numUsers;
+    }
+
+    /**
+     * Number of (item, user) postings stored in this shard
+     */
+    public int getNumPostings() {
+        return postingUsers.length;
+    }
+}
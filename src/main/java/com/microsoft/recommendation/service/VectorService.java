@@ -1,9 +1,17 @@
 package com.microsoft.recommendation.service;
 
+import com.microsoft.recommendation.model.ActionType;
 import com.microsoft.recommendation.model.Activity;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 
 @Service
 public class VectorService {
@@ -12,145 +20,349 @@ public class VectorService {
     private static final float VIEW_WEIGHT = 1.0f;
     private static final float ADD_TO_CART_WEIGHT = 3.0f;
     
-    // Global item-to-index mapping
-    private final Map<String, Integer> itemToIndex = new LinkedHashMap<>();
-    private final List<String> indexToItem = new ArrayList<>();
+    // Published model snapshots live in the VectorStore; this service only builds them
+    private final VectorStore vectorStore;
     
-    // User data structures
-    private final Map<String, float[]> userVectors = new HashMap<>();
-    private final Map<String, Map<String, Float>> userItemWeights = new HashMap<>();
-    private final Map<String, Set<String>> userToItems = new HashMap<>();
+    // Serializes model writers; readers go through the published snapshot and never take it
+    private final Object writeLock = new Object();
+    
+    // Folds the delta of appended users into a new base off the append path, one compaction at a time
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Guarded by writeLock
+    private boolean compactionScheduled;
+    
+    // Number of user shards a full rebuild is split into; 1 builds sequentially
+    private final int buildShards;
+    
+    private final ServiceMetrics metrics;
+    
+    // Configured decay of interaction weights (NONE keeps every interaction at its full weight);
+    // each build anchors it at its own epoch
+    private final TimeDecay configuredDecay;
+    
+    public VectorService(VectorStore vectorStore) {
+        this(vectorStore, 0, new ServiceMetrics(), Duration.ZERO);
+    }
+    
+    @Autowired
+    public VectorService(VectorStore vectorStore, @Value("${recommendation.build.shards:0}") int buildShards,
+                         ServiceMetrics metrics, @Value("${recommendation.decay.half-life:0s}") Duration decayHalfLife) {
+        this.vectorStore = vectorStore;
+        this.metrics = metrics;
+        this.configuredDecay = decayHalfLife.isZero() ? TimeDecay.NONE : new TimeDecay(decayHalfLife, 0);
+        // 0 means one shard per available core
+        this.buildShards = buildShards > 0 ? buildShards : Runtime.getRuntime().availableProcessors();
+    }
     
     /**
-     * Build user vectors from activities
+     * Build user vectors from activities into a new snapshot and publish it
      */
     public void buildUserVectors(List<Activity> activities) {
-        // Clear existing data
-        itemToIndex.clear();
-        indexToItem.clear();
-        userVectors.clear();
-        userItemWeights.clear();
-        userToItems.clear();
+        ActivityLog log = new ActivityLog();
+        log.append(activities, System.currentTimeMillis());
+        buildUserVectors(log);
+    }
+    
+    /**
+     * Build user vectors from a columnar activity log into a new snapshot and publish it.
+     * The log's dictionaries are used as staging, so no Activity objects are created.
+     * Users are accumulated in parallel shards; each user's events are still summed in log order,
+     * so the result is identical to a sequential build. With decay enabled, weights are relative to
+     * a new epoch at the time of the build.
+     */
+    public void buildUserVectors(ActivityLog log) {
+        long start = System.nanoTime();
+        Rebuild rebuild = new Rebuild(log.getItemDictionary(), log.getUserDictionary(),
+                configuredDecay.withEpoch(System.currentTimeMillis()));
+        log.forEachByUserShard(buildShards, shard -> (user, item, action, timestamp) -> rebuild.add(user, item, action,
+                timestamp));
+        metrics.recordBuildPhase(ServiceMetrics.BuildPhase.ACCUMULATE, start);
+        rebuild.publish();
+    }
+    
+    /**
+     * Staged full rebuild over interned users and items. Only the aggregated per-user item weights
+     * are kept, so memory grows with distinct user-item pairs rather than with the number of activities.
+     */
+    private final class Rebuild {
         
-        // Step 1: Build global item index
-        Set<String> allItems = new HashSet<>();
-        for (Activity activity : activities) {
-            allItems.add(activity.getItemId());
-        }
+        // Arrival-order dictionaries; final ordinals are assigned in sorted ID order on publish
+        private final IdDictionary stagedItems;
+        private final IdDictionary stagedUsers;
+        private final TimeDecay decay;
+        // Indexed by staged user; each slot is only touched by the shard that owns the user
+        private final SparseVector.Accumulator[] userWeights;
         
-        int index = 0;
-        for (String itemId : allItems.stream().sorted().toList()) {
-            itemToIndex.put(itemId, index);
-            indexToItem.add(itemId);
-            index++;
+        private Rebuild(IdDictionary stagedItems, IdDictionary stagedUsers, TimeDecay decay) {
+            this.stagedItems = stagedItems;
+            this.stagedUsers = stagedUsers;
+            this.decay = decay;
+            this.userWeights = new SparseVector.Accumulator[stagedUsers.size()];
         }
         
-        int numItems = itemToIndex.size();
-        
-        // Step 2: Build raw user vectors and track weights
-        Map<String, float[]> rawVectors = new HashMap<>();
-        
-        for (Activity activity : activities) {
-            String userId = activity.getUserId();
-            String itemId = activity.getItemId();
-            float weight = getActionWeight(activity.getAction());
-            
-            // Initialize user structures if needed
-            rawVectors.putIfAbsent(userId, new float[numItems]);
-            userItemWeights.putIfAbsent(userId, new HashMap<>());
-            userToItems.putIfAbsent(userId, new HashSet<>());
-            
-            // Add to vector
-            int itemIndex = itemToIndex.get(itemId);
-            rawVectors.get(userId)[itemIndex] += weight;
-            
-            // Track weight and items
-            userItemWeights.get(userId).merge(itemId, weight, Float::sum);
-            userToItems.get(userId).add(itemId);
+        /**
+         * Accumulate one interaction of a staged user with a staged item
+         */
+        void add(int user, int item, ActionType action, long timestamp) {
+            SparseVector.Accumulator weights = userWeights[user];
+            if (weights == null) {
+                weights = new SparseVector.Accumulator();
+                userWeights[user] = weights;
+            }
+            weights.add(item, getActionWeight(action) * decay.scale(timestamp));
         }
         
-        // Step 3: Normalize vectors
-        for (Map.Entry<String, float[]> entry : rawVectors.entrySet()) {
-            String userId = entry.getKey();
-            float[] rawVector = entry.getValue();
-            float[] normalizedVector = normalize(rawVector);
-            userVectors.put(userId, normalizedVector);
+        /**
+         * Build the snapshot from everything added so far and publish it
+         */
+        void publish() {
+            synchronized (writeLock) {
+                // Step 1: Build global item index in sorted ID order
+                long start = System.nanoTime();
+                IdDictionary items = new IdDictionary();
+                Integer[] sortedItems = sortedByName(stagedItems);
+                int[] itemRemap = new int[sortedItems.length];
+                for (int staged : sortedItems) {
+                    itemRemap[staged] = items.getOrAdd(stagedItems.nameOf(staged));
+                }
+                metrics.recordBuildPhase(ServiceMetrics.BuildPhase.ITEMS, start);
+                
+                // Step 2: Assign user ordinals in sorted ID order, then build normalized sparse vectors
+                start = System.nanoTime();
+                IdDictionary users = new IdDictionary();
+                Integer[] sortedUsers = sortedByName(stagedUsers);
+                for (int staged : sortedUsers) {
+                    users.getOrAdd(stagedUsers.nameOf(staged));
+                }
+                UserModel.UserState[] userStates = new UserModel.UserState[sortedUsers.length];
+                IntStream.range(0, sortedUsers.length).parallel().forEach(ordinal ->
+                        userStates[ordinal] = toUserState(ordinal, userWeights[sortedUsers[ordinal]].build(itemRemap)));
+                metrics.recordBuildPhase(ServiceMetrics.BuildPhase.USER_VECTORS, start);
+                
+                // Step 3: Index postings and publish the snapshot
+                start = System.nanoTime();
+                vectorStore.publishUserModel(UserModel.build(items, users, userStates, vectorStore.getSearchConfig(),
+                        decay));
+                metrics.recordBuildPhase(ServiceMetrics.BuildPhase.INDEX, start);
+            }
         }
     }
     
     /**
-     * Get action weight
+     * Publish a fully built model, e.g. one restored from a snapshot
      */
-    private float getActionWeight(String action) {
-        if ("add_to_cart".equalsIgnoreCase(action)) {
-            return ADD_TO_CART_WEIGHT;
-        } else if ("view".equalsIgnoreCase(action)) {
-            return VIEW_WEIGHT;
+    public void publishModel(UserModel model) {
+        synchronized (writeLock) {
+            vectorStore.publishUserModel(model);
         }
-        return 1.0f; // default
+    }
+    
+    private static Integer[] sortedByName(IdDictionary dictionary) {
+        Integer[] ids = new Integer[dictionary.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.parallelSort(ids, Comparator.comparing(dictionary::nameOf));
+        return ids;
+    }
+    
+    /**
+     * Whether a batch received at the given time cannot be appended to the current model, which must
+     * then be rebuilt: its weights were decayed with another half-life, or the batch is too far past
+     * the model's decay epoch to be stored relative to it
+     */
+    public boolean requiresRebuild(long receivedAt) {
+        UserModel current = vectorStore.getUserModel();
+        return (current.getNumUsers() > 0 && !matchesDecay(current)) || !current.getDecay().canScale(receivedAt);
     }
     
     /**
-     * Normalize a vector to unit length
+     * Whether a model's weights were decayed with the configured half-life
      */
-    private float[] normalize(float[] vector) {
-        float sumSquares = 0.0f;
-        for (float v : vector) {
-            sumSquares += v * v;
+    public boolean matchesDecay(UserModel model) {
+        return model.getDecay().getHalfLife().equals(configuredDecay.getHalfLife());
+    }
+    
+    /**
+     * Append activities to the existing model without rebuilding it.
+     * New items are added at the end of the item index, only the touched users' weights are
+     * updated, and only their vectors are renormalized. The result is published as a new snapshot.
+     * Weights are decayed relative to the model's epoch, so the other users' weights stay valid.
+     *
+     * @param receivedAt time the batch was received; activities without a timestamp happened then
+     * @return IDs of the users whose vectors changed
+     */
+    public Set<String> appendActivities(List<Activity> activities, long receivedAt) {
+        synchronized (writeLock) {
+            long start = System.nanoTime();
+            UserModel published = vectorStore.getUserModel();
+            // An empty model takes the configured decay, anchored at the first batch
+            UserModel current = published.getNumUsers() == 0 && !matchesDecay(published)
+                    ? published.withDecay(configuredDecay.withEpoch(receivedAt))
+                    : published;
+            TimeDecay decay = current.getDecay();
+            IdDictionary items = current.getItemDictionary();
+            IdDictionary users = current.getUserDictionary();
+            
+            // Step 1: Grow the dictionaries in place and accumulate weights on copies of the touched users
+            Map<Integer, SparseVector.Accumulator> touchedWeights = new LinkedHashMap<>();
+            for (Activity activity : activities) {
+                int item = items.getOrAdd(activity.getItemId());
+                int user = users.getOrAdd(activity.getUserId());
+                touchedWeights.computeIfAbsent(user, ordinal -> {
+                    UserModel.UserState state = current.getUser(ordinal);
+                    return state != null
+                            ? new SparseVector.Accumulator(state.weights())
+                            : new SparseVector.Accumulator();
+                }).add(item, getActionWeight(ActionType.parse(activity.getAction()))
+                        * decay.scale(ActivityLog.eventTime(activity, receivedAt)));
+            }
+            
+            // Step 2: Renormalize only the touched users
+            UserModel.UserState[] updated = new UserModel.UserState[touchedWeights.size()];
+            Set<String> touchedUsers = new HashSet<>();
+            int n = 0;
+            for (Map.Entry<Integer, SparseVector.Accumulator> entry : touchedWeights.entrySet()) {
+                updated[n++] = toUserState(entry.getKey(), entry.getValue().build());
+                touchedUsers.add(users.nameOf(entry.getKey()));
+            }
+            
+            // Step 3: Publish a snapshot layering the touched users over the current one
+            UserModel next = current.withUpdates(updated);
+            vectorStore.publishUserModel(next);
+            metrics.recordBuildPhase(ServiceMetrics.BuildPhase.APPEND, start);
+            scheduleCompaction(next);
+            return touchedUsers;
         }
-        
-        float norm = (float) Math.sqrt(sumSquares);
-        if (norm == 0.0f) {
-            return vector;
+    }
+    
+    /**
+     * Compact the delta of a just published snapshot in the background once it is due (writeLock held)
+     */
+    private void scheduleCompaction(UserModel model) {
+        if (model.needsCompaction() && !compactionScheduled) {
+            compactionScheduled = true;
+            compactionExecutor.execute(() -> compact(model));
         }
-        
-        float[] normalized = new float[vector.length];
-        for (int i = 0; i < vector.length; i++) {
-            normalized[i] = vector[i] / norm;
+    }
+    
+    /**
+     * Build a new base from a snapshot and rebase the latest snapshot onto it.
+     * Appends continue while the base is built; the users they touch stay in the new delta.
+     */
+    private void compact(UserModel source) {
+        long start = System.nanoTime();
+        UserModel compacted = null;
+        try {
+            compacted = source.compact();
+        } finally {
+            synchronized (writeLock) {
+                compactionScheduled = false;
+                UserModel rebased = compacted != null
+                        ? vectorStore.getUserModel().withCompactedBase(source, compacted)
+                        : null;
+                if (rebased != null) {
+                    vectorStore.publishUserModel(rebased);
+                    metrics.recordBuildPhase(ServiceMetrics.BuildPhase.COMPACT, start);
+                    // Appends during the compaction may have filled the delta again
+                    scheduleCompaction(rebased);
+                }
+            }
         }
-        return normalized;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        compactionExecutor.shutdownNow();
+    }
+    
+    /**
+     * Freeze a user's item weights and build their normalized sparse vector
+     */
+    private UserModel.UserState toUserState(int ordinal, SparseVector weights) {
+        return new UserModel.UserState(ordinal, weights, weights.normalize());
+    }
+    
+    /**
+     * Get action weight
+     */
+    private float getActionWeight(ActionType action) {
+        return switch (action) {
+            case ADD_TO_CART -> ADD_TO_CART_WEIGHT;
+            case VIEW -> VIEW_WEIGHT;
+            default -> 1.0f; // default
+        };
+    }
+    
+    /**
+     * Get the currently published model snapshot
+     */
+    public UserModel getModel() {
+        return vectorStore.getUserModel();
     }
     
     /**
      * Get normalized vector for a user
      */
-    public float[] getUserVector(String userId) {
-        return userVectors.get(userId);
+    public SparseVector getUserVector(String userId) {
+        return getModel().getUserVector(userId);
     }
     
     /**
      * Get all user IDs
      */
     public Set<String> getAllUserIds() {
-        return new HashSet<>(userVectors.keySet());
+        return getModel().getAllUserIds();
     }
     
     /**
      * Get items a user interacted with
      */
     public Set<String> getUserItems(String userId) {
-        return userToItems.getOrDefault(userId, new HashSet<>());
+        return getModel().getUserItems(userId);
     }
     
     /**
      * Get weight for a specific user-item interaction
      */
     public float getUserItemWeight(String userId, String itemId) {
-        return userItemWeights.getOrDefault(userId, new HashMap<>())
-                .getOrDefault(itemId, 0.0f);
+        return getModel().getUserItemWeight(userId, itemId);
     }
     
     /**
      * Get all user vectors
      */
-    public Map<String, float[]> getAllUserVectors() {
-        return new HashMap<>(userVectors);
+    public Map<String, SparseVector> getAllUserVectors() {
+        UserModel model = getModel();
+        Map<String, SparseVector> userVectors = new HashMap<>();
+        for (String userId : model.getAllUserIds()) {
+            userVectors.put(userId, model.getUserVector(userId));
+        }
+        return userVectors;
+    }
+    
+    /**
+     * Get the index of an item, or -1 if it is not indexed
+     */
+    public int getItemIndex(String itemId) {
+        return getModel().getItemIndex(itemId);
+    }
+    
+    /**
+     * Get the item ID at an index
+     */
+    public String getItemId(int index) {
+        return getModel().getItemId(index);
     }
     
     /**
      * Get number of items in the index
      */
     public int getNumItems() {
-        return itemToIndex.size();
+        return getModel().getNumItems();
     }
 }
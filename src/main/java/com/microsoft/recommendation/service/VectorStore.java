@@ -1,134 +1,591 @@
 package com.microsoft.recommendation.service;
 
+import com.microsoft.recommendation.model.AnnRecallReport;
+import com.microsoft.recommendation.model.UserShardStats;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class VectorStore {
     
-    private final Map<String, double[]> itemVectors = new HashMap<>();
-    private final Map<String, float[]> userVectors = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(VectorStore.class);
+    
+    private static final Comparator<Map.Entry<String, Float>> BY_SIMILARITY_THEN_USER_ID =
+            Map.Entry.<String, Float>comparingByValue().reversed().thenComparing(Map.Entry::getKey);
+    
+    // Item vectors and the user model are snapshots swapped with a single volatile write
+    private volatile ItemVectors items = ItemVectors.empty();
+    private volatile UserModel userModel;
+    private volatile long userModelPublishedAt = System.currentTimeMillis();
+    
+    // Exact (postings) or approximate (HNSW) neighbor search for user vectors
+    private final UserSearchConfig searchConfig;
+    
+    // Dense item vector kernels (SIMD or scalar), chosen once at startup
+    private final DenseVectorMath vectorMath;
+    
+    // Dense score buffers for exact user search, owned by the scoring executor
+    private final ScoreBuffers scoreBuffers;
+    
+    // Sharded exact search: dedicated scatter-gather threads and per-shard counters (null when unsharded)
+    private final ExecutorService shardExecutor;
+    private final LongAdder[] shardSearches;
+    private final LongAdder[] shardSearchNanos;
+    
+    @Autowired
+    public VectorStore(@Value("${recommendation.similarity.search:exact}") String searchMode,
+                       @Value("${recommendation.similarity.hnsw.m:16}") int hnswM,
+                       @Value("${recommendation.similarity.hnsw.ef-construction:200}") int hnswEfConstruction,
+                       @Value("${recommendation.similarity.hnsw.ef-search:64}") int hnswEfSearch,
+                       @Value("${recommendation.similarity.shards:1}") int shards,
+                       @Value("${recommendation.vectors.simd:auto}") String simd,
+                       ScoringExecutor scoringExecutor) {
+        this(new UserSearchConfig(
+                UserSearchConfig.Mode.valueOf(searchMode.trim().toUpperCase()),
+                hnswM,
+                hnswEfConstruction,
+                hnswEfSearch,
+                shards
+        ), DenseVectorMath.select(simd), scoringExecutor.getScoreBuffers());
+    }
+    
+    public VectorStore(UserSearchConfig searchConfig) {
+        this(searchConfig, DenseVectorMath.select("auto"));
+    }
+    
+    public VectorStore(UserSearchConfig searchConfig, DenseVectorMath vectorMath) {
+        this(searchConfig, vectorMath, new ScoreBuffers(Runtime.getRuntime().availableProcessors()));
+    }
+    
+    public VectorStore(UserSearchConfig searchConfig, DenseVectorMath vectorMath, ScoreBuffers scoreBuffers) {
+        this.searchConfig = searchConfig;
+        this.vectorMath = vectorMath;
+        this.scoreBuffers = scoreBuffers;
+        this.userModel = UserModel.empty(searchConfig);
+        log.info("Dense vector math: {}", vectorMath.describe());
+        
+        if (searchConfig.isSharded()) {
+            int threads = Math.min(searchConfig.shards(), Runtime.getRuntime().availableProcessors());
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.shardExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "user-shard-search-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.shardSearches = newCounters(searchConfig.shards());
+            this.shardSearchNanos = newCounters(searchConfig.shards());
+        } else {
+            this.shardExecutor = null;
+            this.shardSearches = null;
+            this.shardSearchNanos = null;
+        }
+    }
+    
+    private static LongAdder[] newCounters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
     
     /**
      * Add an item with its vector representation
      */
     public void add(String itemId, double[] vector) {
-        itemVectors.put(itemId, vector);
+        addAll(Map.of(itemId, vector));
     }
     
     /**
-     * Query for top-k similar items to the given vector
+     * Add or replace several items at once, publishing them in a single snapshot
+     */
+    public synchronized void addAll(Map<String, double[]> vectors) {
+        items = items.with(vectors, vectorMath);
+    }
+    
+    /**
+     * Replace all item vectors with the given ones (in iteration order) in a single snapshot
+     */
+    public synchronized void replaceAll(Map<String, double[]> vectors) {
+        items = ItemVectors.empty().with(vectors, vectorMath);
+    }
+    
+    /**
+     * Query for top-k similar items to the given vector (ties go to the earlier added item).
+     * The query norm is computed once and item norms come precomputed with the snapshot.
      */
     public List<Map.Entry<String, Double>> query(double[] vector, int k) {
-        return itemVectors.entrySet().stream()
-                .map(entry -> new AbstractMap.SimpleEntry<>(
-                        entry.getKey(),
-                        cosineSimilarity(vector, entry.getValue())
-                ))
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .limit(k)
-                .collect(Collectors.toList());
+        ItemVectors snapshot = items;
+        double queryNorm = vectorMath.norm(vector);
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = 0; i < snapshot.size; i++) {
+            ItemVector item = snapshot.get(i);
+            selector.offer(i, cosineSimilarity(vector, queryNorm, item.vector(), item.norm()));
+        }
+        
+        List<Map.Entry<String, Double>> results = new ArrayList<>(selector.size());
+        for (int i = 0, n = selector.sort(); i < n; i++) {
+            results.add(new AbstractMap.SimpleEntry<>(snapshot.ids.nameOf(selector.idAt(i)), selector.scoreAt(i)));
+        }
+        return results;
     }
     
     /**
      * Check if an item exists in the vector store
      */
     public boolean contains(String itemId) {
-        return itemVectors.containsKey(itemId);
+        return items.positionOf(itemId) >= 0;
     }
     
     /**
      * Get vector for an item
      */
     public double[] getVector(String itemId) {
-        return itemVectors.get(itemId);
+        ItemVectors snapshot = items;
+        int position = snapshot.positionOf(itemId);
+        return position >= 0 ? snapshot.get(position).vector() : null;
     }
     
     /**
      * Get all item IDs
      */
     public Set<String> getAllItemIds() {
-        return new HashSet<>(itemVectors.keySet());
+        ItemVectors snapshot = items;
+        Set<String> itemIds = new HashSet<>();
+        for (int i = 0; i < snapshot.size; i++) {
+            itemIds.add(snapshot.ids.nameOf(i));
+        }
+        return itemIds;
     }
     
     /**
-     * Calculate cosine similarity between two vectors
+     * Calculate cosine similarity between two vectors given their norms
      */
-    private double cosineSimilarity(double[] v1, double[] v2) {
+    private double cosineSimilarity(double[] v1, double norm1, double[] v2, double norm2) {
         if (v1.length != v2.length) {
             throw new IllegalArgumentException("Vectors must have the same length");
         }
         
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        
-        for (int i = 0; i < v1.length; i++) {
-            dotProduct += v1[i] * v2[i];
-            normA += v1[i] * v1[i];
-            normB += v2[i] * v2[i];
-        }
-        
-        if (normA == 0.0 || normB == 0.0) {
+        if (norm1 == 0.0 || norm2 == 0.0) {
             return 0.0;
         }
         
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+        return vectorMath.dot(v1, v2) / (norm1 * norm2);
+    }
+    
+    /**
+     * Get the dense vector kernels in use
+     */
+    public DenseVectorMath getVectorMath() {
+        return vectorMath;
     }
     
     /**
      * Clear all vectors
      */
-    public void clear() {
-        itemVectors.clear();
-        userVectors.clear();
+    public synchronized void clear() {
+        items = ItemVectors.empty();
+        userModel = UserModel.empty(searchConfig);
+        userModelPublishedAt = System.currentTimeMillis();
     }
     
     // ========== User Vector Operations ==========
     
     /**
-     * Upsert a user vector
+     * Get the configured user similarity search settings
      */
-    public void upsertUserVector(String userId, float[] vector) {
-        userVectors.put(userId, vector);
+    public UserSearchConfig getSearchConfig() {
+        return searchConfig;
+    }
+    
+    /**
+     * Publish a new user model snapshot; readers switch to it atomically
+     */
+    public void publishUserModel(UserModel model) {
+        this.userModel = model;
+        this.userModelPublishedAt = System.currentTimeMillis();
+    }
+    
+    /**
+     * Wall-clock time the current user model snapshot was published, in epoch milliseconds
+     */
+    public long getUserModelPublishedAt() {
+        return userModelPublishedAt;
+    }
+    
+    /**
+     * Get the currently published user model snapshot
+     */
+    public UserModel getUserModel() {
+        return userModel;
     }
     
     /**
      * Get a user vector
      */
-    public float[] getUserVector(String userId) {
-        return userVectors.get(userId);
+    public SparseVector getUserVector(String userId) {
+        return userModel.getUserVector(userId);
     }
     
     /**
-     * Find top-K similar users based on cosine similarity (dot product for normalized vectors)
+     * Find top-K similar users in the current snapshot
      */
-    public List<Map.Entry<String, Float>> topKSimilarUsers(float[] queryVector, int k, String excludeUserId) {
-        return userVectors.entrySet().stream()
-                .filter(entry -> !entry.getKey().equals(excludeUserId))
-                .map(entry -> new AbstractMap.SimpleEntry<>(
-                        entry.getKey(),
-                        dotProduct(queryVector, entry.getValue())
-                ))
-                .sorted(Map.Entry.<String, Float>comparingByValue().reversed())
-                .limit(k)
-                .collect(Collectors.toList());
+    public List<Map.Entry<String, Float>> topKSimilarUsers(SparseVector queryVector, int k, String excludeUserId) {
+        return topKSimilarUsers(userModel, queryVector, k, excludeUserId);
     }
     
     /**
-     * Calculate dot product between two vectors
+     * Find top-K similar users based on cosine similarity (dot product for normalized vectors).
+     * In exact mode only users sharing an item with the query are scored, via the snapshot's
+     * postings index; in HNSW mode candidates come from the approximate graph.
+     * A sharded snapshot is searched shard by shard in parallel, and the per-shard top-K lists
+     * are merged with the delta users.
+     * Ties are broken by user ordinal.
      */
-    private float dotProduct(float[] v1, float[] v2) {
-        if (v1.length != v2.length) {
-            throw new IllegalArgumentException("Vectors must have the same length");
+    public List<Map.Entry<String, Float>> topKSimilarUsers(UserModel model, SparseVector queryVector,
+                                                           int k, String excludeUserId) {
+        return toSimilarUsers(model, topKNeighbors(model, queryVector, k, excludeUserId));
+    }
+    
+    /**
+     * Same search as {@link #topKSimilarUsers(UserModel, SparseVector, int, String)}, returning the
+     * neighbors' ordinals and similarities best-first without resolving their IDs
+     */
+    public UserPostingsIndex.Candidates topKNeighbors(UserModel model, SparseVector queryVector,
+                                                      int k, String excludeUserId) {
+        if (model.getNumShards() > 0 && shardExecutor != null) {
+            return selectTopK(searchShards(model, queryVector, k, excludeUserId), k);
+        }
+        return selectTopK(model.findSimilarUsers(queryVector, k, excludeUserId, scoreBuffers), k);
+    }
+    
+    /**
+     * Find top-K similar users with ties broken by user ID rather than ordinal, the order in which a
+     * cluster coordinator merges partial lists. Appended users get later ordinals than a full build
+     * would give them, so the exact modes select from every overlapping user instead of a top-K
+     * already cut by ordinal; HNSW mode can only reorder its approximate candidates.
+     */
+    public List<Map.Entry<String, Float>> topKSimilarUsersByUserId(UserModel model, SparseVector queryVector,
+                                                                   int k, String excludeUserId) {
+        UserPostingsIndex.Candidates candidates;
+        if (model.getNumShards() > 0 && shardExecutor != null) {
+            candidates = searchShards(model, queryVector, Integer.MAX_VALUE, excludeUserId);
+        } else if (model.getBaseAnnIndex() != null) {
+            candidates = model.findSimilarUsers(queryVector, k, excludeUserId, scoreBuffers);
+        } else {
+            candidates = model.scoreOverlappingUsers(queryVector, excludeUserId, scoreBuffers);
         }
         
-        float result = 0.0f;
-        for (int i = 0; i < v1.length; i++) {
-            result += v1[i] * v2[i];
+        // Everyone scoring at least the k-th best score, ranked by score and then user ID
+        List<Map.Entry<String, Float>> byOrdinal = toSimilarUsers(model, selectTopK(candidates, k));
+        if (byOrdinal.isEmpty() || byOrdinal.size() < k) {
+            byOrdinal.sort(BY_SIMILARITY_THEN_USER_ID);
+            return byOrdinal;
+        }
+        float threshold = byOrdinal.get(byOrdinal.size() - 1).getValue();
+        List<Map.Entry<String, Float>> contenders = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (candidates.scores()[i] >= threshold) {
+                contenders.add(new AbstractMap.SimpleEntry<>(
+                        model.getUserId(candidates.userOrdinals()[i]), candidates.scores()[i]));
+            }
+        }
+        contenders.sort(BY_SIMILARITY_THEN_USER_ID);
+        return new ArrayList<>(contenders.subList(0, k));
+    }
+    
+    /**
+     * Find top-K similar users for a block of queries against one snapshot
+     */
+    public List<List<Map.Entry<String, Float>>> topKSimilarUsers(UserModel model, SparseVector[] queryVectors,
+                                                                 int k, String[] excludeUserIds) {
+        UserPostingsIndex.Candidates[] neighbors = topKNeighbors(model, queryVectors, k, excludeUserIds);
+        List<List<Map.Entry<String, Float>>> results = new ArrayList<>(neighbors.length);
+        for (UserPostingsIndex.Candidates queryNeighbors : neighbors) {
+            results.add(toSimilarUsers(model, queryNeighbors));
         }
-        return result;
+        return results;
+    }
+    
+    /**
+     * Block version of {@link #topKNeighbors(UserModel, SparseVector, int, String)}
+     */
+    public UserPostingsIndex.Candidates[] topKNeighbors(UserModel model, SparseVector[] queryVectors,
+                                                        int k, String[] excludeUserIds) {
+        UserPostingsIndex.Candidates[] results = new UserPostingsIndex.Candidates[queryVectors.length];
+        if (model.getNumShards() > 0 && shardExecutor != null) {
+            for (int q = 0; q < queryVectors.length; q++) {
+                results[q] = topKNeighbors(model, queryVectors[q], k, excludeUserIds[q]);
+            }
+            return results;
+        }
+        UserPostingsIndex.Candidates[] candidates = model.findSimilarUsers(queryVectors, k, excludeUserIds, scoreBuffers);
+        for (int q = 0; q < candidates.length; q++) {
+            results[q] = selectTopK(candidates[q], k);
+        }
+        return results;
+    }
+    
+    /**
+     * Resolve neighbors found in a snapshot to (user ID, similarity) pairs, keeping their order
+     */
+    public static List<Map.Entry<String, Float>> toSimilarUsers(UserModel model, UserPostingsIndex.Candidates neighbors) {
+        List<Map.Entry<String, Float>> similarUsers = new ArrayList<>(neighbors.size());
+        for (int i = 0; i < neighbors.size(); i++) {
+            similarUsers.add(new AbstractMap.SimpleEntry<>(
+                    model.getUserId(neighbors.userOrdinals()[i]), neighbors.scores()[i]));
+        }
+        return similarUsers;
+    }
+    
+    /**
+     * Scatter the query to every shard on the shard executor, searching the first shard on the
+     * calling thread, and gather the per-shard top-K lists
+     */
+    private UserPostingsIndex.Candidates searchShards(UserModel model, SparseVector query, int k, String excludeUserId) {
+        int excludeOrdinal = model.getUserOrdinal(excludeUserId);
+        int numShards = model.getNumShards();
+        List<Future<UserPostingsIndex.Candidates>> futures = new ArrayList<>(numShards - 1);
+        for (int shard = 1; shard < numShards; shard++) {
+            int target = shard;
+            futures.add(shardExecutor.submit(() -> searchShard(model, target, query, k, excludeOrdinal)));
+        }
+        
+        UserPostingsIndex.Candidates[] shardCandidates = new UserPostingsIndex.Candidates[numShards];
+        shardCandidates[0] = searchShard(model, 0, query, k, excludeOrdinal);
+        try {
+            for (int shard = 1; shard < numShards; shard++) {
+                shardCandidates[shard] = futures.get(shard - 1).get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching user shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("User shard search failed", e.getCause());
+        }
+        return model.gatherShards(shardCandidates, query, excludeOrdinal);
+    }
+    
+    private UserPostingsIndex.Candidates searchShard(UserModel model, int shard, SparseVector query, int k,
+                                                     int excludeOrdinal) {
+        long start = System.nanoTime();
+        UserPostingsIndex.Candidates candidates = model.searchShard(shard, query, k, excludeOrdinal);
+        shardSearchNanos[shard].add(System.nanoTime() - start);
+        shardSearches[shard].increment();
+        return candidates;
+    }
+    
+    /**
+     * Size and search counters of every shard of the current snapshot; empty when unsharded.
+     * Search counters accumulate since startup.
+     */
+    public List<UserShardStats> getShardStats() {
+        UserModel model = userModel;
+        List<UserShardStats> stats = new ArrayList<>(model.getNumShards());
+        for (int shard = 0; shard < model.getNumShards(); shard++) {
+            UserShard userShard = model.getShard(shard);
+            long searches = shardSearches[shard].sum();
+            stats.add(new UserShardStats(
+                    shard,
+                    userShard.getFirstOrdinal(),
+                    userShard.getNumOrdinals(),
+                    userShard.getNumUsers(),
+                    userShard.getNumPostings(),
+                    searches,
+                    averageMicros(shardSearchNanos[shard].sum(), searches)
+            ));
+        }
+        return stats;
+    }
+    
+    /**
+     * Best K candidates, best first (ties broken by user ordinal)
+     */
+    private static UserPostingsIndex.Candidates selectTopK(UserPostingsIndex.Candidates candidates, int k) {
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = 0; i < candidates.size(); i++) {
+            selector.offer(candidates.userOrdinals()[i], candidates.scores()[i]);
+        }
+        
+        int n = selector.sort();
+        int[] ordinals = new int[n];
+        float[] scores = new float[n];
+        for (int i = 0; i < n; i++) {
+            ordinals[i] = selector.idAt(i);
+            scores[i] = (float) selector.scoreAt(i);
+        }
+        return new UserPostingsIndex.Candidates(ordinals, scores);
+    }
+    
+    /**
+     * Measure HNSW recall@k against exact search on a deterministic sample of users in the current
+     * snapshot, for each efSearch value. In exact mode a temporary graph is built with the
+     * configured M and efConstruction so settings can be tuned before switching modes.
+     */
+    public AnnRecallReport evaluateRecall(int sampleSize, int k, List<Integer> efSearchValues) {
+        UserModel model = userModel;
+        HnswIndex annIndex = model.getBaseAnnIndex() != null
+                ? model.getBaseAnnIndex()
+                : model.buildBaseAnnIndex(searchConfig);
+        
+        // Sample users evenly across the ordinal space
+        List<String> sample = new ArrayList<>();
+        List<String> userIds = model.getAllUserIds().stream().sorted().toList();
+        int step = Math.max(1, userIds.size() / Math.max(1, sampleSize));
+        for (int i = 0; i < userIds.size() && sample.size() < sampleSize; i += step) {
+            sample.add(userIds.get(i));
+        }
+        
+        // Exact results are the ground truth
+        List<Set<String>> exactResults = new ArrayList<>();
+        long exactNanos = 0;
+        for (String userId : sample) {
+            SparseVector query = model.getUserVector(userId);
+            long start = System.nanoTime();
+            List<Map.Entry<String, Float>> exact = toSimilarUsers(model,
+                    selectTopK(model.scoreOverlappingUsers(query, userId, scoreBuffers), k));
+            exactNanos += System.nanoTime() - start;
+            Set<String> ids = new HashSet<>();
+            exact.forEach(entry -> ids.add(entry.getKey()));
+            exactResults.add(ids);
+        }
+        
+        List<AnnRecallReport.EfSearchResult> results = new ArrayList<>();
+        for (int efSearch : efSearchValues) {
+            long found = 0;
+            long expected = 0;
+            long approxNanos = 0;
+            for (int i = 0; i < sample.size(); i++) {
+                String userId = sample.get(i);
+                SparseVector query = model.getUserVector(userId);
+                long start = System.nanoTime();
+                UserPostingsIndex.Candidates candidates = model.mergeWithDelta(
+                        annIndex.search(query, k + 1, efSearch), query, userId);
+                List<Map.Entry<String, Float>> approx = toSimilarUsers(model, selectTopK(candidates, k));
+                approxNanos += System.nanoTime() - start;
+                
+                Set<String> truth = exactResults.get(i);
+                expected += truth.size();
+                for (Map.Entry<String, Float> entry : approx) {
+                    if (truth.contains(entry.getKey())) {
+                        found++;
+                    }
+                }
+            }
+            double recall = expected == 0 ? 1.0 : (double) found / expected;
+            results.add(new AnnRecallReport.EfSearchResult(efSearch, recall, averageMicros(approxNanos, sample.size())));
+        }
+        
+        return new AnnRecallReport(
+                searchConfig.mode().name().toLowerCase(),
+                model.getNumUsers(),
+                sample.size(),
+                k,
+                searchConfig.m(),
+                searchConfig.efConstruction(),
+                averageMicros(exactNanos, sample.size()),
+                results
+        );
+    }
+    
+    private static double averageMicros(long nanos, long count) {
+        return count == 0 ? 0.0 : Math.round(nanos / 1000.0 / count * 100.0) / 100.0;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (shardExecutor != null) {
+            shardExecutor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Item vectors in insertion order, addressed by position, with their norms.
+     * Storage is append-only and shared between snapshots, like {@link IdDictionary}: vectors live in
+     * fixed-size chunks and a snapshot is the chunk directory plus a length, so adding items costs only
+     * the new items. Positions at or past a snapshot's length do not exist in it. A replaced vector is
+     * swapped in place, so snapshots sharing its position all see the new one.
+     */
+    private static final class ItemVectors {
+        
+        private static final int CHUNK_BITS = 10;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+        
+        final IdDictionary ids;
+        final ItemVector[][] chunks;
+        final int size;
+        
+        private ItemVectors(IdDictionary ids, ItemVector[][] chunks, int size) {
+            this.ids = ids;
+            this.chunks = chunks;
+            this.size = size;
+        }
+        
+        /**
+         * A new empty set with its own storage
+         */
+        static ItemVectors empty() {
+            return new ItemVectors(new IdDictionary(), new ItemVector[0][], 0);
+        }
+        
+        ItemVector get(int position) {
+            return chunks[position >>> CHUNK_BITS][position & (CHUNK_SIZE - 1)];
+        }
+        
+        /**
+         * Position of an item in this snapshot, or -1 if it is not in it
+         */
+        int positionOf(String itemId) {
+            int position = ids.get(itemId);
+            return position < size ? position : -1;
+        }
+        
+        /**
+         * Snapshot with the given vectors added or replaced; only their norms are computed.
+         * Must be called on the latest snapshot, by one writer at a time.
+         */
+        ItemVectors with(Map<String, double[]> added, DenseVectorMath vectorMath) {
+            ItemVector[][] directory = chunks;
+            int newSize = size;
+            for (Map.Entry<String, double[]> entry : added.entrySet()) {
+                ItemVector item = new ItemVector(entry.getValue(), vectorMath.norm(entry.getValue()));
+                // This is the latest snapshot, so every ID in the dictionary is in it
+                int position = ids.get(entry.getKey());
+                if (position < 0) {
+                    position = ids.getOrAdd(entry.getKey());
+                    int chunk = position >>> CHUNK_BITS;
+                    if (chunk == directory.length) {
+                        // Older snapshots keep the old directory; the chunks themselves are shared
+                        directory = Arrays.copyOf(directory, Math.max(1, directory.length * 2));
+                    }
+                    if (directory[chunk] == null) {
+                        directory[chunk] = new ItemVector[CHUNK_SIZE];
+                    }
+                    newSize = position + 1;
+                }
+                directory[position >>> CHUNK_BITS][position & (CHUNK_SIZE - 1)] = item;
+            }
+            return new ItemVectors(ids, directory, newSize);
+        }
+    }
+    
+    /**
+     * An item's vector and its precomputed norm, published together
+     */
+    private record ItemVector(double[] vector, double norm) {
     }
 }
@@ -0,0 +1,474 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.Activity;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segment-rotated write-ahead log of ingested activity batches.
+ * Every ingest is written as one checksummed record before it is applied. Callers wait for
+ * durability after releasing their own locks, according to the configured mode: NONE leaves
+ * flushing to the OS, EVERY_WRITE fsyncs each record, and BATCHED has a background flusher fsync
+ * everything written since its last pass in one call (group commit).
+ * Positions are byte offsets across all segments; a snapshot records the position it covers, so
+ * recovery only replays the records after it. The log is disabled when no directory is configured.
+ */
+@Component
+public class WriteAheadLog {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Payload length and CRC32 of the payload
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+    private static final RecordType[] RECORD_TYPES = RecordType.values();
+    // Set on the record type byte when every activity is followed by its own timestamp
+    private static final int EVENT_TIMES_FLAG = 0x80;
+    private static final long NO_EVENT_TIME = Long.MIN_VALUE;
+
+    private final Path directory;
+    private final Durability durability;
+    private final long segmentBytes;
+    private final long groupCommitDelayNanos;
+
+    // Guards the fields below; fsyncs in BATCHED mode run outside it so writers are never blocked by them
+    private final Object lock = new Object();
+    private FileChannel segment;
+    private long segmentBase;
+    private long position;
+    private long durablePosition;
+    private boolean flushing;
+    private boolean closed;
+    private IOException flushFailure;
+    private Thread flusher;
+
+    public WriteAheadLog(@Value("${recommendation.wal.dir:}") String directory,
+                         @Value("${recommendation.wal.durability:batched}") String durability,
+                         @Value("${recommendation.wal.segment-size:64MB}") DataSize segmentSize,
+                         @Value("${recommendation.wal.group-commit-delay:2ms}") Duration groupCommitDelay)
+            throws IOException {
+        this.directory = directory.isBlank() ? null : Path.of(directory);
+        this.durability = Durability.valueOf(durability.trim().toUpperCase().replace('-', '_'));
+        this.segmentBytes = segmentSize.toBytes();
+        this.groupCommitDelayNanos = groupCommitDelay.toNanos();
+        if (this.directory != null) {
+            open();
+        }
+    }
+
+    /**
+     * Find the end of the log, dropping a partially written record left by a crash, and reopen the last segment
+     */
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> bases = segmentBases();
+        segmentBase = bases.isEmpty() ? 0 : bases.get(bases.size() - 1);
+        Path last = segmentPath(segmentBase);
+
+        long end = Files.exists(last) ? scan(last, 0, null) : 0;
+        segment = FileChannel.open(last, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (segment.size() > end) {
+            log.warn("Truncating torn write-ahead log record at {} in {}", end, last);
+            segment.truncate(end);
+        }
+        segment.position(end);
+        position = segmentBase + end;
+        durablePosition = position;
+
+        if (durability == Durability.BATCHED) {
+            flusher = new Thread(this::flushLoop, "wal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Whether a log directory is configured
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Write one record. It is not necessarily durable yet; see {@link #awaitDurable(long)}.
+     *
+     * @return log position just past the record, or 0 if the log is disabled
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    public long append(RecordType type, List<Activity> activities, long timestamp) {
+        if (directory == null) {
+            return 0;
+        }
+        ByteBuffer record = encode(type, activities, timestamp);
+        synchronized (lock) {
+            try {
+                while (segment.position() > 0 && segment.position() + record.remaining() > segmentBytes) {
+                    // Wait for an in-flight group fsync on this segment before sealing it
+                    if (flushing) {
+                        lock.wait();
+                    } else {
+                        rotate();
+                    }
+                }
+                while (record.hasRemaining()) {
+                    segment.write(record);
+                }
+                position = segmentBase + segment.position();
+                if (durability == Durability.EVERY_WRITE) {
+                    segment.force(false);
+                    durablePosition = position;
+                } else if (durability == Durability.BATCHED) {
+                    lock.notifyAll();
+                }
+                return position;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write to the write-ahead log", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted rotating the write-ahead log"));
+            }
+        }
+    }
+
+    /**
+     * Block until every record up to the given position is durable under the configured mode
+     *
+     * @throws UncheckedIOException if flushing the log failed
+     */
+    public void awaitDurable(long target) {
+        if (directory == null || durability == Durability.NONE) {
+            return;
+        }
+        synchronized (lock) {
+            while (durablePosition < target) {
+                if (flushFailure != null) {
+                    throw new UncheckedIOException("Failed to flush the write-ahead log", flushFailure);
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrupted waiting for the write-ahead log"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Log position just past the last written record
+     */
+    public long getPosition() {
+        synchronized (lock) {
+            return position;
+        }
+    }
+
+    /**
+     * Replay every record at or after the given position in log order.
+     * Must be called before the first append.
+     *
+     * @return number of records replayed
+     */
+    public long replay(long fromPosition, RecordHandler handler) throws IOException {
+        if (directory == null) {
+            return 0;
+        }
+        long[] count = new long[1];
+        RecordHandler counting = (type, activities, timestamp) -> {
+            handler.handle(type, activities, timestamp);
+            count[0]++;
+        };
+
+        List<Long> bases = segmentBases();
+        for (int i = 0; i < bases.size(); i++) {
+            long base = bases.get(i);
+            long next = i + 1 < bases.size() ? bases.get(i + 1) : Long.MAX_VALUE;
+            if (next <= fromPosition) {
+                continue;
+            }
+            Path file = segmentPath(base);
+            long end = scan(file, Math.max(0, fromPosition - base), counting);
+            if (next != Long.MAX_VALUE && end != Files.size(file)) {
+                throw new IOException("Corrupt write-ahead log record at " + end + " in " + file);
+            }
+        }
+
+        synchronized (lock) {
+            // The log was reset after the snapshot was taken; continue past the snapshot's position
+            // so new records are not mistaken for ones the snapshot already includes
+            if (position < fromPosition) {
+                position = fromPosition;
+                rotate();
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Delete segments that only hold records before the given position, e.g. ones covered by a snapshot
+     */
+    public void deleteSegmentsBefore(long position) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        synchronized (lock) {
+            List<Long> bases = segmentBases();
+            for (int i = 0; i + 1 < bases.size() && bases.get(i + 1) <= position; i++) {
+                Files.deleteIfExists(segmentPath(bases.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Seal the current segment and start a new one at the current position
+     */
+    private void rotate() throws IOException {
+        if (durability != Durability.NONE) {
+            segment.force(false);
+            durablePosition = position;
+            lock.notifyAll();
+        }
+        segment.close();
+
+        segmentBase = position;
+        segment = FileChannel.open(segmentPath(segmentBase), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Group commit: wait for the first unflushed record, give concurrent writers a short window to
+     * add theirs, then make all of them durable with a single fsync
+     */
+    private void flushLoop() {
+        try {
+            while (true) {
+                FileChannel channel;
+                long target;
+                synchronized (lock) {
+                    while (!closed && durablePosition >= position) {
+                        lock.wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    long deadline = System.nanoTime() + groupCommitDelayNanos;
+                    for (long remaining = groupCommitDelayNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+                        lock.wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                    }
+                    channel = segment;
+                    target = position;
+                    flushing = true;
+                }
+
+                try {
+                    channel.force(false);
+                } finally {
+                    synchronized (lock) {
+                        flushing = false;
+                        durablePosition = Math.max(durablePosition, target);
+                        lock.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            synchronized (lock) {
+                flushFailure = e;
+                lock.notifyAll();
+            }
+            log.error("Write-ahead log flush failed; ingests will fail until restart", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (directory == null) {
+            return;
+        }
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        if (flusher != null) {
+            flusher.join();
+        }
+        synchronized (lock) {
+            if (durability != Durability.NONE) {
+                segment.force(false);
+            }
+            segment.close();
+        }
+    }
+
+    private static ByteBuffer encode(RecordType type, List<Activity> activities, long timestamp) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + 16 + activities.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            boolean eventTimes = activities.stream().anyMatch(activity -> activity.getTimestamp() != null);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(type.ordinal() | (eventTimes ? EVENT_TIMES_FLAG : 0));
+            out.writeLong(timestamp);
+            out.writeInt(activities.size());
+            for (Activity activity : activities) {
+                writeString(out, activity.getUserId());
+                writeString(out, activity.getItemId());
+                writeString(out, activity.getAction());
+                if (eventTimes) {
+                    out.writeLong(activity.getTimestamp() != null ? activity.getTimestamp().toEpochMilli() : NO_EVENT_TIME);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, record.limit() - HEADER_BYTES);
+        record.putInt(0, record.limit() - HEADER_BYTES);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Read the records of a segment from an offset, passing each valid one to the handler (if any)
+     *
+     * @return offset just past the last complete record with a matching checksum
+     */
+    private static long scan(Path file, long offset, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            long end = offset;
+            while (true) {
+                byte[] payload;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > channel.size() - end - HEADER_BYTES) {
+                        return end;
+                    }
+                    payload = in.readNBytes(length);
+                    if (payload.length < length) {
+                        return end;
+                    }
+                } catch (EOFException e) {
+                    return end;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return end;
+                }
+                if (handler != null) {
+                    decode(payload, handler);
+                }
+                end += HEADER_BYTES + payload.length;
+            }
+        }
+    }
+
+    private static void decode(byte[] payload, RecordHandler handler) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int typeByte = in.get() & 0xFF;
+        RecordType type = RECORD_TYPES[typeByte & ~EVENT_TIMES_FLAG];
+        boolean eventTimes = (typeByte & EVENT_TIMES_FLAG) != 0;
+        long timestamp = in.getLong();
+        int count = in.getInt();
+        List<Activity> activities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Activity activity = new Activity(readString(in), readString(in), readString(in));
+            if (eventTimes) {
+                long eventTime = in.getLong();
+                if (eventTime != NO_EVENT_TIME) {
+                    activity.setTimestamp(Instant.ofEpochMilli(eventTime));
+                }
+            }
+            activities.add(activity);
+        }
+        handler.handle(type, activities, timestamp);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private List<Long> segmentBases() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * When an ingest counts as durable
+     */
+    public enum Durability {
+        NONE,
+        BATCHED,
+        EVERY_WRITE
+    }
+
+    /**
+     * Kinds of records. A replace is written as a begin record, its batches and a commit record;
+     * a replace without its commit record was abandoned and is skipped on replay.
+     */
+    public enum RecordType {
+        APPEND,
+        REPLACE_BEGIN,
+        REPLACE_BATCH,
+        REPLACE_COMMIT
+    }
+
+    /**
+     * Receives replayed records in log order
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(RecordType type, List<Activity> activities, long timestamp) throws IOException;
+    }
+}
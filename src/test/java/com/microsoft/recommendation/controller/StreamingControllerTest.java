@@ -0,0 +1,147 @@
+package com.microsoft.recommendation.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.BatchRecommendationRequest;
+import com.microsoft.recommendation.model.RecommendationItem;
+import com.microsoft.recommendation.service.ActivityStreamReader;
+import com.microsoft.recommendation.service.CollaborativeRecommendationService;
+import com.microsoft.recommendation.service.InvalidRequestException;
+import com.microsoft.recommendation.service.ItemBasedRecommendationService;
+import com.microsoft.recommendation.service.RecommendationCache;
+import com.microsoft.recommendation.service.RecommendationService;
+import com.microsoft.recommendation.service.ScoringExecutor;
+import com.microsoft.recommendation.service.ServiceMetrics;
+import com.microsoft.recommendation.service.UserModel;
+import com.microsoft.recommendation.service.UserSearchConfig;
+import com.microsoft.recommendation.service.VectorService;
+import com.microsoft.recommendation.service.VectorStore;
+import com.microsoft.recommendation.service.WriteAheadLog;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingControllerTest {
+
+    private static final UserSearchConfig EXACT = new UserSearchConfig(UserSearchConfig.Mode.EXACT, 16, 200, 64);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ServiceMetrics metrics = new ServiceMetrics();
+    private final VectorStore vectorStore = new VectorStore(EXACT);
+    private final VectorService vectorService = new VectorService(vectorStore, 0, metrics, Duration.ZERO);
+    private final ItemBasedRecommendationService itemBased = new ItemBasedRecommendationService(vectorService, 20);
+    private final ScoringExecutor scoringExecutor = new ScoringExecutor(true, 2, 4, metrics);
+    private final RecommendationCache cache = new RecommendationCache(100, Duration.ofMinutes(1));
+
+    private RecommendationService recommendationService;
+    private CollaborativeRecommendationService collaborative;
+    private StreamingController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        recommendationService = new RecommendationService(vectorStore, vectorService, itemBased, cache,
+                new ActivityStreamReader(objectMapper, Validation.buildDefaultValidatorFactory().getValidator(), 100),
+                new WriteAheadLog("", "batched", DataSize.ofMegabytes(1), Duration.ZERO), metrics, scoringExecutor);
+        collaborative = new CollaborativeRecommendationService(vectorService, vectorStore, cache, metrics,
+                scoringExecutor);
+        // Chunks of two users, so every stream spans several chunks
+        controller = new StreamingController(recommendationService, collaborative, vectorService, scoringExecutor,
+                objectMapper, 2);
+
+        List<Activity> activities = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            activities.add(new Activity("U" + (i % 9), "P" + (i * 5 % 17), i % 4 == 0 ? "add_to_cart" : "view"));
+        }
+        recommendationService.ingestActivities(activities);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scoringExecutor.shutdown();
+        vectorService.shutdown();
+        itemBased.shutdown();
+    }
+
+    private List<JsonNode> lines(ResponseEntity<StreamingResponseBody> response) throws Exception {
+        assertThat(response.getHeaders().getContentType()).hasToString("application/x-ndjson");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertThat(body).endsWith("\n");
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private static List<String> items(JsonNode recommendations) {
+        List<String> items = new ArrayList<>();
+        recommendations.forEach(item -> items.add(item.get("itemId").asText() + "=" + item.get("score").asDouble()));
+        return items;
+    }
+
+    private static List<String> items(List<RecommendationItem> recommendations) {
+        return recommendations.stream().map(item -> item.getItemId() + "=" + item.getScore()).toList();
+    }
+
+    @Test
+    void streamsRecommendationsInRequestOrder() throws Exception {
+        List<String> userIds = List.of("U4", "U0", "unknown", "U8", "U2");
+
+        List<JsonNode> lines = lines(controller.streamRecommendations(new BatchRecommendationRequest(userIds, 3, 5)));
+
+        assertThat(lines).extracting(line -> line.get("userId").asText()).containsExactlyElementsOf(userIds);
+        for (JsonNode line : lines) {
+            assertThat(items(line.get("recommendations")))
+                    .isEqualTo(items(recommendationService.getRecommendations(line.get("userId").asText(), 3)));
+        }
+    }
+
+    @Test
+    void streamsCollaborativeRecommendationsWithTheirNeighbors() throws Exception {
+        List<String> userIds = List.of("U1", "U3", "U5");
+
+        List<JsonNode> lines = lines(controller.streamCollaborativeRecommendations(
+                new BatchRecommendationRequest(userIds, 4, 2)));
+
+        assertThat(lines).extracting(line -> line.get("userId").asText()).containsExactlyElementsOf(userIds);
+        for (JsonNode line : lines) {
+            CollaborativeRecommendationService.Result expected =
+                    collaborative.recommend(line.get("userId").asText(), 4, 2);
+            assertThat(items(line.get("recommendations"))).isEqualTo(items(expected.recommendations()));
+            assertThat(line.get("similarUsers")).hasSize(expected.similarUsers().size());
+        }
+    }
+
+    @Test
+    void exportsTheSimilarUsersOfEveryUser() throws Exception {
+        List<JsonNode> lines = lines(controller.exportSimilarUsers(3));
+
+        UserModel model = vectorService.getModel();
+        assertThat(lines).hasSize(model.getNumUsers());
+        for (JsonNode line : lines) {
+            String userId = line.get("userId").asText();
+            List<String> expected = collaborative.getSimilarUsers(userId, 3).stream().map(Map.Entry::getKey).toList();
+            List<String> exported = new ArrayList<>();
+            line.get("similarUsers").forEach(similarUser -> exported.add(similarUser.get("userId").asText()));
+            assertThat(exported).as(userId).isEqualTo(expected);
+        }
+        assertThatThrownBy(() -> controller.exportSimilarUsers(0)).isInstanceOf(InvalidRequestException.class);
+    }
+}
@@ -0,0 +1,134 @@
+package com.microsoft.recommendation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.microsoft.recommendation.model.Activity;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ActivityStreamReaderTest {
+
+    private static final UserSearchConfig EXACT = new UserSearchConfig(UserSearchConfig.Mode.EXACT, 16, 200, 64);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private ActivityStreamReader reader(int batchSize) {
+        return new ActivityStreamReader(objectMapper, Validation.buildDefaultValidatorFactory().getValidator(),
+                batchSize);
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String ndjson(int count) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            body.append("{\"userId\":\"U").append(i % 7).append("\",\"itemId\":\"P").append(i % 11)
+                    .append("\",\"action\":\"").append(i % 3 == 0 ? "add_to_cart" : "view").append("\"}\n");
+        }
+        return body.toString();
+    }
+
+    /**
+     * Read a body and describe each batch as "user/item/action,..."
+     */
+    private List<String> readBatches(ActivityStreamReader reader, String json) throws IOException {
+        List<String> batches = new ArrayList<>();
+        reader.read(body(json), batch -> {
+            List<String> activities = new ArrayList<>();
+            for (Activity activity : batch) {
+                activities.add(activity.getUserId() + "/" + activity.getItemId() + "/" + activity.getAction());
+            }
+            batches.add(String.join(",", activities));
+        });
+        return batches;
+    }
+
+    @Test
+    void readsNdjsonInFixedSizeBatches() throws Exception {
+        List<String> batches = readBatches(reader(2), """
+                {"userId":"U1","itemId":"P1","action":"view"}
+                {"userId":"U2","itemId":"P2","action":"add_to_cart"}
+
+                {"userId":"U3","itemId":"P3","action":"view","timestamp":"2024-01-01T00:00:00Z"}
+                """);
+
+        assertThat(batches).containsExactly("U1/P1/view,U2/P2/add_to_cart", "U3/P3/view");
+    }
+
+    @Test
+    void readsAJsonArray() throws Exception {
+        List<String> batches = readBatches(reader(10), """
+                [{"userId":"U1","itemId":"P1","action":"view"},
+                 {"userId":"U2","itemId":"P2","action":"view"}]""");
+
+        assertThat(batches).containsExactly("U1/P1/view,U2/P2/view");
+        assertThat(readBatches(reader(10), "[]")).isEmpty();
+    }
+
+    @Test
+    void rejectsMalformedAndInvalidRecordsWithTheirPosition() {
+        ActivityStreamReader reader = reader(10);
+
+        String truncated = "{\"userId\":\"U1\",\"itemId\":\"P1\",\"action\":\"view\"}\n{\"userId\":";
+        assertThatThrownBy(() -> readBatches(reader, truncated))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("Malformed activity at record 2");
+        assertThatThrownBy(() -> readBatches(reader, "{\"userId\":\"U1\",\"itemId\":\"\",\"action\":\"view\"}"))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("Invalid activity at record 1: itemId is required");
+        assertThatThrownBy(() -> readBatches(reader, "[{\"userId\":\"U1\",\"itemId\":\"P1\",\"action\":\"view\"}"))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("Malformed activity at record 2");
+        assertThatThrownBy(() -> readBatches(reader, "[1]"))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("Expected an activity object at record 1");
+    }
+
+    @Test
+    void streamedIngestMatchesListIngestAndKeepsOnlyAcceptedUsers() throws Exception {
+        ServiceMetrics metrics = new ServiceMetrics();
+        VectorStore vectorStore = new VectorStore(EXACT);
+        VectorService vectorService = new VectorService(vectorStore, 0, metrics, Duration.ZERO);
+        ItemBasedRecommendationService itemBased = new ItemBasedRecommendationService(vectorService, 20);
+        try {
+            RecommendationService service = new RecommendationService(vectorStore, vectorService,
+                    itemBased, new RecommendationCache(100, Duration.ofMinutes(1)), reader(4),
+                    new WriteAheadLog("", "batched", DataSize.ofMegabytes(1), Duration.ZERO), metrics,
+                    new ScoringExecutor(false, 0, 0, metrics));
+
+            assertThat(service.ingestActivities(body(ndjson(50)), false)).isEqualTo(50);
+            var streamed = service.getRecommendations("U3", 10);
+            List<Activity> activities = new ArrayList<>();
+            reader(100).read(body(ndjson(50)), activities::addAll);
+            service.ingestActivities(activities);
+            assertThat(service.getRecommendations("U3", 10))
+                    .usingRecursiveFieldByFieldElementComparator().isEqualTo(streamed);
+
+            // A failed replace leaves the previous data in place
+            assertThatThrownBy(() -> service.ingestActivities(body(ndjson(10) + "{"), false))
+                    .isInstanceOf(InvalidRequestException.class);
+            assertThat(service.getActivityCount()).isEqualTo(50);
+
+            long kept = service.ingestActivities(body(ndjson(50)), true, userId -> userId.equals("U1"));
+            assertThat(kept).isEqualTo(7);
+            assertThat(service.getActivityCount()).isEqualTo(57);
+        } finally {
+            vectorService.shutdown();
+            itemBased.shutdown();
+        }
+    }
+}
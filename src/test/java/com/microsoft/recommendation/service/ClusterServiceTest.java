@@ -0,0 +1,163 @@
+package com.microsoft.recommendation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.ClusterNeighbor;
+import com.microsoft.recommendation.model.ClusterSearchRequest;
+import com.microsoft.recommendation.model.ClusterUserVector;
+import com.microsoft.recommendation.model.RecommendationItem;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterServiceTest {
+
+    private static final UserSearchConfig EXACT = new UserSearchConfig(UserSearchConfig.Mode.EXACT, 16, 200, 64);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    /**
+     * One service instance, wired as the application context would, in a cluster of the given topology
+     */
+    private final class Node {
+
+        final CollaborativeRecommendationService collaborative;
+        final ClusterService cluster;
+
+        Node(ClusterTopology topology) throws IOException {
+            ServiceMetrics metrics = new ServiceMetrics();
+            VectorStore vectorStore = new VectorStore(EXACT);
+            WriteAheadLog writeAheadLog = new WriteAheadLog("", "batched", DataSize.ofMegabytes(1), Duration.ZERO);
+            VectorService vectorService = new VectorService(vectorStore, 0, metrics, Duration.ZERO);
+            ItemBasedRecommendationService itemBased = new ItemBasedRecommendationService(vectorService, 20);
+            ScoringExecutor scoringExecutor = new ScoringExecutor(false, 0, 0, metrics);
+            RecommendationCache cache = new RecommendationCache(100, Duration.ofMinutes(1));
+            RecommendationService service = new RecommendationService(vectorStore, vectorService, itemBased, cache,
+                    new ActivityStreamReader(objectMapper, Validation.buildDefaultValidatorFactory().getValidator(), 100),
+                    writeAheadLog, metrics, scoringExecutor);
+            collaborative = new CollaborativeRecommendationService(vectorService, vectorStore, cache, metrics,
+                    scoringExecutor);
+            cluster = new ClusterService(topology, service, collaborative, vectorService, vectorStore,
+                    scoringExecutor, Duration.ofSeconds(5), 1);
+            resources.add(() -> {
+                cluster.shutdown();
+                vectorService.shutdown();
+                itemBased.shutdown();
+            });
+        }
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    private static List<Activity> activities() {
+        List<Activity> activities = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            // Few items per user and repeated pairs, so neighbors and items often tie on score
+            activities.add(new Activity("U" + (i % 40), "P" + (i * 7 % 23), i % 5 == 0 ? "add_to_cart" : "view"));
+        }
+        return activities;
+    }
+
+    /**
+     * Serve the peer endpoints a coordinator calls, backed by another node's cluster service
+     */
+    private void serve(HttpServer server, Node node) {
+        server.createContext("/cluster/similarUsers", exchange -> {
+            ClusterSearchRequest request = objectMapper.readValue(exchange.getRequestBody(), ClusterSearchRequest.class);
+            respond(exchange, 200, node.cluster.searchLocal(request));
+        });
+        server.createContext("/cluster/users/", exchange -> {
+            String userId = exchange.getRequestURI().getPath().substring("/cluster/users/".length());
+            ClusterUserVector user = node.cluster.getLocalUser(userId);
+            respond(exchange, user == null ? 404 : 200, user);
+        });
+        server.start();
+        resources.add(() -> server.stop(0));
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static String describe(CollaborativeRecommendationService.Result result) {
+        List<String> entries = new ArrayList<>();
+        for (RecommendationItem item : result.recommendations()) {
+            entries.add(item.getItemId() + "=" + item.getScore());
+        }
+        for (Map.Entry<String, Float> similarUser : result.similarUsers()) {
+            entries.add(similarUser.getKey() + "~" + similarUser.getValue());
+        }
+        return String.join(",", entries);
+    }
+
+    @Test
+    void mergedClusterResultsMatchAStandaloneNode() throws Exception {
+        List<Activity> activities = activities();
+        Node standalone = new Node(new ClusterTopology(List.of(), 0));
+        standalone.cluster.ingestLocal(activities, false);
+
+        // Node 0 coordinates and is never called over HTTP; node 1 is served on a free port
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        List<String> peers = List.of("http://localhost:1", "http://localhost:" + server.getAddress().getPort());
+        Node coordinator = new Node(new ClusterTopology(peers, 0));
+        Node remote = new Node(new ClusterTopology(peers, 1));
+        serve(server, remote);
+
+        ClusterTopology topology = new ClusterTopology(peers, 0);
+        List<Activity> coordinatorShare = new ArrayList<>();
+        List<Activity> remoteShare = new ArrayList<>();
+        for (Activity activity : activities) {
+            (topology.ownerOf(activity.getUserId()) == 0 ? coordinatorShare : remoteShare).add(activity);
+        }
+        assertThat(coordinatorShare).isNotEmpty();
+        assertThat(remoteShare).isNotEmpty();
+        coordinator.cluster.ingestLocal(coordinatorShare, false);
+        remote.cluster.ingestLocal(remoteShare, false);
+
+        for (int u = 0; u < 40; u++) {
+            String userId = "U" + u;
+            CollaborativeRecommendationService.Result merged = coordinator.cluster.recommend(userId, 5, 3);
+            CollaborativeRecommendationService.Result expected = standalone.collaborative.recommend(userId, 5, 3);
+            assertThat(merged.recommendations()).as(userId).isNotEmpty();
+            assertThat(describe(merged)).as(userId).isEqualTo(describe(expected));
+        }
+        assertThat(coordinator.cluster.recommend("unknown", 5, 3).recommendations()).isEmpty();
+    }
+
+    @Test
+    void scoreNeighborsKeepsTheBestItemsWithTiesByItemId() throws Exception {
+        Node node = new Node(new ClusterTopology(List.of(), 0));
+        List<ClusterNeighbor> neighbors = List.of(
+                new ClusterNeighbor("U1", 0.5f, List.of("P4", "P2", "P1", "P9"), new float[] {2f, 2f, 1f, 4f}),
+                new ClusterNeighbor("U2", 0.25f, List.of("P3", "P1"), new float[] {4f, 8f}));
+
+        CollaborativeRecommendationService.Result result =
+                node.collaborative.scoreNeighbors(new HashSet<>(List.of("P9")), neighbors, 3);
+
+        // P1 = 0.5 + 2, then P2, P3 and P4 tie at 1.0 and the lowest IDs win
+        assertThat(describe(result)).isEqualTo("P1=2.5,P2=1.0,P3=1.0,U1~0.5,U2~0.25");
+    }
+}
@@ -0,0 +1,112 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.AnnRecallReport;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+
+    private static final UserSearchConfig HNSW = new UserSearchConfig(UserSearchConfig.Mode.HNSW, 16, 200, 64);
+    private static final int NUM_USERS = 2000;
+
+    private final IdDictionary items = new IdDictionary();
+    private final IdDictionary users = new IdDictionary();
+
+    private UserModel.UserState user(String userId, int[] itemIndexes, float[] weights) {
+        for (int itemIndex : itemIndexes) {
+            items.getOrAdd("P" + itemIndex);
+        }
+        SparseVector vector = SparseVector.fromUnsorted(itemIndexes.clone(), weights.clone(), itemIndexes.length);
+        return new UserModel.UserState(users.getOrAdd(userId), vector, vector.normalize());
+    }
+
+    // Users mostly interact within one of 20 item groups, with random weights so scores rarely tie
+    private UserModel.UserState randomUser(String userId, Random random) {
+        int group = random.nextInt(20);
+        int nnz = 4 + random.nextInt(6);
+        int[] itemIndexes = random.ints(0, 30).distinct().limit(nnz)
+                .map(i -> i < 25 ? group * 25 + i : random.nextInt(500)).distinct().toArray();
+        float[] weights = new float[itemIndexes.length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 0.1f + random.nextFloat();
+        }
+        return user(userId, itemIndexes, weights);
+    }
+
+    private UserModel model(Random random) {
+        for (int item = 0; item < 500; item++) {
+            items.getOrAdd("P" + item);
+        }
+        UserModel.UserState[] byOrdinal = new UserModel.UserState[NUM_USERS];
+        for (int i = 0; i < NUM_USERS; i++) {
+            byOrdinal[i] = randomUser("U" + i, random);
+        }
+        return UserModel.build(items, users, byOrdinal, HNSW);
+    }
+
+    @Test
+    void recallAgainstExactSearchGrowsWithEfSearch() {
+        VectorStore store = new VectorStore(HNSW);
+        store.publishUserModel(model(new Random(3)));
+
+        AnnRecallReport report = store.evaluateRecall(200, 10, List.of(10, 64, 256));
+
+        assertThat(report.getSampleSize()).isEqualTo(200);
+        List<AnnRecallReport.EfSearchResult> results = report.getResults();
+        assertThat(results).extracting(AnnRecallReport.EfSearchResult::getEfSearch).containsExactly(10, 64, 256);
+        assertThat(results.get(1).getRecall()).isGreaterThanOrEqualTo(0.9);
+        assertThat(results.get(2).getRecall()).isGreaterThanOrEqualTo(0.98)
+                .isGreaterThanOrEqualTo(results.get(0).getRecall());
+    }
+
+    @Test
+    void searchFindsTheQueryUserAmongEfCandidates() {
+        UserModel model = model(new Random(5));
+        HnswIndex index = model.getBaseAnnIndex();
+
+        assertThat(index.size()).isEqualTo(NUM_USERS);
+        for (int i = 0; i < NUM_USERS; i += 97) {
+            UserPostingsIndex.Candidates candidates = index.search(model.getUserVector("U" + i), 5, 64);
+            assertThat(candidates.size()).isEqualTo(64);
+            // The user's own vector is in the index, so it must be found
+            assertThat(candidates.userOrdinals()).contains(model.getUserOrdinal("U" + i));
+        }
+    }
+
+    @Test
+    void usersAddedAfterTheBuildAreScoredExactly() {
+        UserModel model = model(new Random(7));
+        SparseVector query = model.getUserVector("U42");
+        UserModel.UserState copy = model.getUser("U42");
+        UserModel updated = model.withUpdates(new UserModel.UserState[] {
+                user("N1", indexes(copy.weights()), values(copy.weights()))});
+        VectorStore store = new VectorStore(HNSW);
+
+        List<Map.Entry<String, Float>> similarUsers = store.topKSimilarUsers(updated, query, 3, "U42");
+
+        assertThat(similarUsers).hasSize(3);
+        assertThat(similarUsers.get(0).getKey()).isEqualTo("N1");
+        assertThat(similarUsers).extracting(Map.Entry::getKey).doesNotContain("U42");
+    }
+
+    private static int[] indexes(SparseVector vector) {
+        int[] indexes = new int[vector.nnz()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = vector.indexAt(i);
+        }
+        return indexes;
+    }
+
+    private static float[] values(SparseVector vector) {
+        float[] values = new float[vector.nnz()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = vector.valueAt(i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,119 @@
+package com.microsoft.recommendation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.RecommendationItem;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ItemSimilarityModelTest {
+
+    private static final UserSearchConfig EXACT = new UserSearchConfig(UserSearchConfig.Mode.EXACT, 16, 200, 64);
+
+    private final IdDictionary items = new IdDictionary();
+    private final IdDictionary users = new IdDictionary();
+
+    private UserModel.UserState user(String userId, String... itemIds) {
+        int[] indices = new int[itemIds.length];
+        float[] values = new float[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            indices[i] = items.getOrAdd(itemIds[i]);
+            values[i] = 1f;
+        }
+        SparseVector weights = SparseVector.fromUnsorted(indices, values, itemIds.length);
+        return new UserModel.UserState(users.getOrAdd(userId), weights, weights.normalize());
+    }
+
+    // P0 and P1 always appear together; P2 bridges them to P3
+    private UserModel userModel() {
+        UserModel.UserState[] byOrdinal = {
+                user("U0", "P0", "P1"),
+                user("U1", "P0", "P1", "P2"),
+                user("U2", "P2", "P3")
+        };
+        return UserModel.build(items, users, byOrdinal, EXACT);
+    }
+
+    private static List<String> neighborIds(ItemSimilarityModel model, String itemId) {
+        List<String> itemIds = new ArrayList<>();
+        for (int neighbor : model.getNeighbors(model.getItemIndex(itemId))) {
+            itemIds.add(model.getItemId(neighbor));
+        }
+        return itemIds;
+    }
+
+    @Test
+    void keepsTheMostSimilarItemsByCosineOfTheirUserColumns() {
+        ItemSimilarityModel model = ItemSimilarityModel.build(userModel(), 20);
+
+        assertThat(model.getNumItems()).isEqualTo(4);
+        assertThat(neighborIds(model, "P0")).containsExactly("P1", "P2");
+        float[] similarities = model.getSimilarities(model.getItemIndex("P0"));
+        assertThat(similarities[0]).isCloseTo(1f, within(1e-6f));
+        assertThat(similarities[1]).isCloseTo(0.4f, within(1e-6f));
+        // P0 and P1 tie with P2 and resolve in item index order; P3 shares no user with P0
+        assertThat(neighborIds(model, "P2")).containsExactly("P3", "P0", "P1");
+        assertThat(neighborIds(model, "P3")).containsExactly("P2");
+    }
+
+    @Test
+    void keepsOnlyTheConfiguredNumberOfNeighbors() {
+        ItemSimilarityModel model = ItemSimilarityModel.build(userModel(), 2);
+
+        assertThat(neighborIds(model, "P2")).containsExactly("P3", "P0");
+    }
+
+    @Test
+    void coversOnlyItemsOfItsSourceSnapshot() {
+        UserModel source = userModel();
+        ItemSimilarityModel model = ItemSimilarityModel.build(source, 20);
+        items.getOrAdd("P4");
+
+        assertThat(model.getItemIndex("P4")).isEqualTo(-1);
+        assertThat(model.getItemIndex("P9")).isEqualTo(-1);
+        assertThat(model.sharesItemsWith(source)).isTrue();
+        assertThat(model.sharesItemsWith(UserModel.empty(EXACT))).isFalse();
+    }
+
+    @Test
+    void recommendsNeighborsOfTheUsersItemsWeightedByInteraction() throws Exception {
+        ServiceMetrics metrics = new ServiceMetrics();
+        VectorStore vectorStore = new VectorStore(EXACT);
+        VectorService vectorService = new VectorService(vectorStore, 0, metrics, Duration.ZERO);
+        ItemBasedRecommendationService itemBased = new ItemBasedRecommendationService(vectorService, 20);
+        try {
+            RecommendationService service = new RecommendationService(vectorStore, vectorService, itemBased,
+                    new RecommendationCache(100, Duration.ofMinutes(1)),
+                    new ActivityStreamReader(new ObjectMapper(),
+                            Validation.buildDefaultValidatorFactory().getValidator(), 100),
+                    new WriteAheadLog("", "batched", DataSize.ofMegabytes(1), Duration.ZERO),
+                    metrics, new ScoringExecutor(false, 0, 0, metrics));
+            service.ingestActivities(List.of(
+                    new Activity("U0", "P0", "view"), new Activity("U0", "P1", "view"),
+                    new Activity("U1", "P0", "view"), new Activity("U1", "P1", "view"),
+                    new Activity("U1", "P2", "view"),
+                    new Activity("U2", "P2", "view"), new Activity("U2", "P3", "view")));
+            itemBased.rebuild();
+
+            // P2 is a 0.4 neighbor of both of U0's items; the user's own items are never recommended
+            assertThat(describe(itemBased.getItemBasedRecommendations("U0", 5))).containsExactly("P2=0.8");
+            assertThat(describe(itemBased.getItemBasedRecommendations("U2", 1))).containsExactly("P0=0.4");
+            assertThat(itemBased.getItemBasedRecommendations("unknown", 5)).isEmpty();
+        } finally {
+            vectorService.shutdown();
+            itemBased.shutdown();
+        }
+    }
+
+    private static List<String> describe(List<RecommendationItem> recommendations) {
+        return recommendations.stream().map(item -> item.getItemId() + "=" + item.getScore()).toList();
+    }
+}
@@ -0,0 +1,90 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecommendationCacheTest {
+
+    private final RecommendationCache cache = new RecommendationCache(100, Duration.ofMinutes(1));
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private int get(String userId) {
+        return cache.get(RecommendationCache.Endpoint.RECOMMEND, userId, 5, computations::incrementAndGet);
+    }
+
+    @Test
+    void servesCachedResultUntilUserIsInvalidated() {
+        assertThat(get("U1")).isEqualTo(1);
+        assertThat(get("U1")).isEqualTo(1);
+        assertThat(get("U2")).isEqualTo(2);
+
+        cache.invalidateUsers(List.of("U1"));
+
+        assertThat(get("U1")).isEqualTo(3);
+        assertThat(get("U2")).isEqualTo(2);
+    }
+
+    @Test
+    void resultComputedDuringInvalidationIsNeverServed() {
+        int stale = cache.get(RecommendationCache.Endpoint.RECOMMEND, "U1", 5, () -> {
+            cache.invalidateUsers(List.of("U1"));
+            return -1;
+        });
+        assertThat(stale).isEqualTo(-1);
+
+        assertThat(get("U1")).isEqualTo(1);
+    }
+
+    @Test
+    void resultComputedBeforeFullInvalidationStaysUnreachableAfterLaterAppends() {
+        cache.invalidateUsers(List.of("U1"));
+        cache.invalidateUsers(List.of("U1"));
+        cache.get(RecommendationCache.Endpoint.RECOMMEND, "U1", 5, () -> {
+            cache.invalidateAll();
+            return -1;
+        });
+
+        for (int append = 0; append < 5; append++) {
+            assertThat(get("U1")).isPositive();
+            cache.invalidateUsers(List.of("U1"));
+        }
+        assertThat(get("U1")).isPositive();
+    }
+
+    @Test
+    void invalidatingMoreUsersThanTheCacheHoldsKeepsOtherUsersCached() {
+        assertThat(get("U1")).isEqualTo(1);
+        assertThat(get("U2")).isEqualTo(2);
+
+        List<String> touched = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            touched.add("T" + i);
+        }
+        for (int i = 0; i < touched.size(); i += 50) {
+            cache.invalidateUsers(touched.subList(i, i + 50));
+        }
+
+        assertThat(get("U1")).isEqualTo(1);
+        assertThat(get("U2")).isEqualTo(2);
+        assertThat(cache.getStats().getHits()).isEqualTo(2);
+    }
+
+    @Test
+    void bulkLookupComputesOnlyMisses() {
+        get("U1");
+        Map<String, Integer> results = cache.getAll(RecommendationCache.Endpoint.RECOMMEND, List.of("U1", "U2"), 5, 0,
+                missing -> {
+                    assertThat(missing).containsExactly("U2");
+                    return Map.of("U2", 42);
+                });
+
+        assertThat(results).containsEntry("U1", 1).containsEntry("U2", 42);
+    }
+}
@@ -0,0 +1,151 @@
+package com.microsoft.recommendation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.recommendation.model.Activity;
+import com.microsoft.recommendation.model.RecommendationItem;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecommendationServiceRecoveryTest {
+
+    private static final UserSearchConfig EXACT = new UserSearchConfig(UserSearchConfig.Mode.EXACT, 16, 200, 64);
+
+    @TempDir
+    Path directory;
+
+    /**
+     * One service instance with its own write-ahead log, wired as the application context would
+     */
+    private final class Node implements AutoCloseable {
+
+        final WriteAheadLog writeAheadLog;
+        final VectorService vectorService;
+        final ItemBasedRecommendationService itemBasedRecommendationService;
+        final RecommendationService service;
+
+        Node() throws IOException {
+            ServiceMetrics metrics = new ServiceMetrics();
+            VectorStore vectorStore = new VectorStore(EXACT);
+            writeAheadLog = new WriteAheadLog(directory.resolve("wal").toString(), "every-write",
+                    DataSize.ofKilobytes(1), Duration.ZERO);
+            vectorService = new VectorService(vectorStore, 0, metrics, Duration.ZERO);
+            itemBasedRecommendationService = new ItemBasedRecommendationService(vectorService, 20);
+            service = new RecommendationService(vectorStore, vectorService, itemBasedRecommendationService,
+                    new RecommendationCache(100, Duration.ofMinutes(1)),
+                    new ActivityStreamReader(new ObjectMapper(),
+                            Validation.buildDefaultValidatorFactory().getValidator(), 100),
+                    writeAheadLog, metrics, new ScoringExecutor(false, 0, 0, metrics));
+        }
+
+        /**
+         * Every user's recommendations and item weights, for comparing two nodes
+         */
+        Map<String, String> state() {
+            UserModel model = vectorService.getModel();
+            Map<String, String> state = new TreeMap<>();
+            for (String userId : model.getAllUserIds()) {
+                List<String> entries = new ArrayList<>();
+                for (RecommendationItem item : service.getRecommendations(userId, 10)) {
+                    entries.add(item.getItemId() + "=" + item.getScore());
+                }
+                for (String itemId : model.getUserItems(userId).stream().sorted().toList()) {
+                    entries.add(itemId + ":" + model.getUserItemWeight(userId, itemId));
+                }
+                state.put(userId, String.join(",", entries));
+            }
+            return state;
+        }
+
+        @Override
+        public void close() throws Exception {
+            writeAheadLog.close();
+            vectorService.shutdown();
+            itemBasedRecommendationService.shutdown();
+        }
+    }
+
+    private static List<Activity> activities(int from, int to) {
+        List<Activity> activities = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            activities.add(new Activity("U" + (i % 7), "P" + (i % 11), i % 3 == 0 ? "add_to_cart" : "view"));
+        }
+        return activities;
+    }
+
+    @Test
+    void snapshotRoundTripRestoresTheSameState() throws Exception {
+        Path snapshot = directory.resolve("model.snapshot");
+        Map<String, String> expected;
+        long activityCount;
+        long walPosition;
+        try (Node node = new Node()) {
+            node.service.ingestActivities(activities(0, 50));
+            node.service.appendActivities(activities(50, 60));
+            node.service.writeSnapshot(snapshot);
+            expected = node.state();
+            activityCount = node.service.getActivityCount();
+            walPosition = node.writeAheadLog.getPosition();
+        }
+        assertThat(expected).hasSize(7);
+
+        try (Node restored = new Node()) {
+            assertThat(restored.service.restoreSnapshot(snapshot)).isEqualTo(walPosition);
+            assertThat(restored.service.replayWriteAheadLog(walPosition)).isZero();
+            assertThat(restored.state()).isEqualTo(expected);
+            assertThat(restored.service.getActivityCount()).isEqualTo(activityCount);
+        }
+    }
+
+    @Test
+    void replaysRecordsWrittenAfterTheSnapshot() throws Exception {
+        Path snapshot = directory.resolve("model.snapshot");
+        Map<String, String> expected;
+        try (Node node = new Node()) {
+            node.service.ingestActivities(activities(0, 50));
+            node.service.writeSnapshot(snapshot);
+            node.service.appendActivities(activities(50, 60));
+            node.service.appendActivities(activities(60, 75));
+            expected = node.state();
+        }
+
+        try (Node recovered = new Node()) {
+            long walPosition = recovered.service.restoreSnapshot(snapshot);
+            assertThat(recovered.service.replayWriteAheadLog(walPosition)).isEqualTo(2);
+            assertThat(recovered.state()).isEqualTo(expected);
+            assertThat(recovered.service.getActivityCount()).isEqualTo(75);
+        }
+    }
+
+    @Test
+    void replaysCommittedReplaceAndSkipsAbandonedOne() throws Exception {
+        Map<String, String> expected;
+        try (Node node = new Node()) {
+            node.service.ingestActivities(activities(0, 30));
+            node.service.ingestActivities(activities(30, 60));
+            node.service.appendActivities(activities(60, 70));
+            expected = node.state();
+            // A replace that crashed before its commit record
+            node.writeAheadLog.append(WriteAheadLog.RecordType.REPLACE_BEGIN, List.of(), 1);
+            node.writeAheadLog.append(WriteAheadLog.RecordType.REPLACE_BATCH, activities(100, 120), 2);
+        }
+
+        try (Node recovered = new Node()) {
+            // Two logged replaces (begin, batch, commit each), one append and the abandoned replace
+            assertThat(recovered.service.replayWriteAheadLog(0)).isEqualTo(9);
+            assertThat(recovered.state()).isEqualTo(expected);
+            assertThat(recovered.service.getActivityCount()).isEqualTo(40);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScoreAccumulatorTest {
+
+    private static Map<Integer, Float> contents(ScoreAccumulator accumulator) {
+        Map<Integer, Float> contents = new LinkedHashMap<>();
+        for (int i = 0; i < accumulator.size(); i++) {
+            contents.put(accumulator.keyAt(i), accumulator.scoreAt(i));
+        }
+        return contents;
+    }
+
+    @Test
+    void sumsScoresPerKeyInFirstAddedOrder() {
+        ScoreAccumulator accumulator = new ScoreAccumulator();
+
+        accumulator.add(7, 1f);
+        accumulator.add(3, 0.5f);
+        accumulator.add(7, 2f);
+        accumulator.add(0, 0.25f);
+
+        assertThat(accumulator.size()).isEqualTo(3);
+        assertThat(contents(accumulator)).containsExactly(Map.entry(7, 3f), Map.entry(3, 0.5f), Map.entry(0, 0.25f));
+    }
+
+    @Test
+    void growsPastTheExpectedKeysAndMatchesAMap() {
+        ScoreAccumulator accumulator = new ScoreAccumulator(4);
+        Map<Integer, Float> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            // Dense ordinals and sparse large keys mixed together
+            int key = i % 2 == 0 ? random.nextInt(2000) : random.nextInt(Integer.MAX_VALUE);
+            accumulator.add(key, 1f);
+            expected.merge(key, 1f, Float::sum);
+        }
+
+        assertThat(accumulator.size()).isEqualTo(expected.size());
+        assertThat(contents(accumulator)).isEqualTo(expected);
+    }
+
+    @Test
+    void setReplacesTheScoreOfAnExistingKey() {
+        ScoreAccumulator accumulator = new ScoreAccumulator();
+        accumulator.add(5, 2f);
+
+        accumulator.set(5, 0.5f);
+        accumulator.set(9, 0f);
+
+        assertThat(contents(accumulator)).containsExactly(Map.entry(5, 0.5f), Map.entry(9, 0f));
+    }
+
+    @Test
+    void clearForgetsEveryKey() {
+        ScoreAccumulator accumulator = new ScoreAccumulator();
+        for (int key = 0; key < 100; key++) {
+            accumulator.add(key, key);
+        }
+
+        accumulator.clear();
+        accumulator.add(42, 1f);
+
+        assertThat(accumulator.size()).isEqualTo(1);
+        assertThat(contents(accumulator)).containsExactly(Map.entry(42, 1f));
+    }
+}
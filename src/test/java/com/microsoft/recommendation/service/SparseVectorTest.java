@@ -0,0 +1,59 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SparseVectorTest {
+
+    @Test
+    void fromUnsortedSortsIndicesAndSumsDuplicates() {
+        SparseVector vector = SparseVector.fromUnsorted(new int[] {7, 2, 7, 4}, new float[] {1f, 2f, 3f, 4f}, 4);
+
+        assertThat(vector.nnz()).isEqualTo(3);
+        assertThat(new int[] {vector.indexAt(0), vector.indexAt(1), vector.indexAt(2)}).containsExactly(2, 4, 7);
+        assertThat(vector.get(7)).isEqualTo(4f);
+        assertThat(vector.get(3)).isZero();
+    }
+
+    @Test
+    void dotMultipliesOnlySharedIndices() {
+        SparseVector a = new SparseVector(new int[] {1, 3, 5, 9}, new float[] {1f, 2f, 3f, 4f});
+        SparseVector b = new SparseVector(new int[] {0, 3, 9, 12}, new float[] {5f, 6f, 7f, 8f});
+
+        assertThat(a.dot(b)).isEqualTo(2f * 6f + 4f * 7f);
+        assertThat(b.dot(a)).isEqualTo(a.dot(b));
+        assertThat(a.dot(SparseVector.EMPTY)).isZero();
+    }
+
+    @Test
+    void dotOfDisjointVectorsIsZero() {
+        SparseVector a = new SparseVector(new int[] {0, 2}, new float[] {1f, 1f});
+        SparseVector b = new SparseVector(new int[] {1, 3}, new float[] {1f, 1f});
+
+        assertThat(a.dot(b)).isZero();
+    }
+
+    @Test
+    void normalizeReturnsUnitVectorWithSameIndices() {
+        SparseVector vector = new SparseVector(new int[] {2, 5}, new float[] {3f, 4f});
+
+        SparseVector normalized = vector.normalize();
+
+        assertThat(normalized.norm()).isCloseTo(1f, within(1e-6f));
+        assertThat(normalized.get(2)).isCloseTo(0.6f, within(1e-6f));
+        assertThat(normalized.get(5)).isCloseTo(0.8f, within(1e-6f));
+        assertThat(normalized.dot(normalized)).isCloseTo(1f, within(1e-6f));
+        // The original is left untouched
+        assertThat(vector.get(2)).isEqualTo(3f);
+    }
+
+    @Test
+    void normalizeOfZeroVectorReturnsItself() {
+        SparseVector zero = new SparseVector(new int[] {1}, new float[] {0f});
+
+        assertThat(zero.normalize()).isSameAs(zero);
+        assertThat(SparseVector.EMPTY.normalize()).isSameAs(SparseVector.EMPTY);
+    }
+}
@@ -0,0 +1,65 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class TimeDecayTest {
+
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    private final TimeDecay decay = new TimeDecay(Duration.ofDays(1), 10 * DAY);
+
+    @Test
+    void eventOneHalfLifeOldWeighsHalf() {
+        long now = 12 * DAY;
+
+        double weight = decay.scale(11 * DAY) * decay.factorAt(now);
+
+        assertThat(weight).isCloseTo(0.5, within(1e-6));
+        assertThat(decay.scale(10 * DAY)).isEqualTo(1.0f);
+        assertThat(decay.factorAt(10 * DAY)).isEqualTo(1.0);
+    }
+
+    @Test
+    void relativeWeightsDoNotDependOnTheEpoch() {
+        TimeDecay moved = decay.withEpoch(20 * DAY);
+
+        double ratio = decay.scale(9 * DAY) / decay.scale(12 * DAY);
+        double movedRatio = moved.scale(9 * DAY) / moved.scale(12 * DAY);
+
+        assertThat(movedRatio).isCloseTo(ratio, within(1e-6));
+        assertThat(moved.getHalfLife()).isEqualTo(decay.getHalfLife());
+    }
+
+    @Test
+    void eventsTooFarPastTheEpochCannotBeScaled() {
+        assertThat(decay.canScale((10 + TimeDecay.MAX_HALF_LIVES) * DAY)).isTrue();
+        assertThat(decay.canScale((11 + TimeDecay.MAX_HALF_LIVES) * DAY)).isFalse();
+        // Old events keep the floor instead of underflowing to zero
+        assertThat(decay.scale(-1000 * DAY)).isPositive();
+    }
+
+    @Test
+    void zeroHalfLifeDisablesDecay() {
+        assertThat(TimeDecay.NONE.isEnabled()).isFalse();
+        assertThat(TimeDecay.NONE.scale(123)).isEqualTo(1.0f);
+        assertThat(TimeDecay.NONE.factorAt(Long.MAX_VALUE)).isEqualTo(1.0);
+        assertThat(TimeDecay.NONE.withEpoch(5)).isSameAs(TimeDecay.NONE);
+    }
+
+    @Test
+    void rejectsNegativeAndSubMillisecondHalfLives() {
+        assertThatThrownBy(() -> new TimeDecay(Duration.ofSeconds(-1), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TimeDecay(Duration.ofNanos(500_000), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TimeDecay(Duration.ofMillis(1).plusNanos(1), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(new TimeDecay(Duration.ofMillis(1), 0).isEnabled()).isTrue();
+    }
+}
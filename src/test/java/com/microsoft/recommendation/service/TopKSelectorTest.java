@@ -0,0 +1,75 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopKSelectorTest {
+
+    private static List<Integer> ids(TopKSelector selector) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0, n = selector.sort(); i < n; i++) {
+            ids.add(selector.idAt(i));
+        }
+        return ids;
+    }
+
+    @Test
+    void keepsTheHighestScoresBestFirst() {
+        TopKSelector selector = new TopKSelector(3);
+        double[] scores = {0.1, 0.9, 0.5, 0.7, 0.3, 0.8};
+        for (int id = 0; id < scores.length; id++) {
+            selector.offer(id, scores[id]);
+        }
+
+        assertThat(ids(selector)).containsExactly(1, 5, 3);
+        assertThat(selector.scoreAt(0)).isEqualTo(0.9);
+        assertThat(selector.scoreAt(2)).isEqualTo(0.7);
+    }
+
+    @Test
+    void equalScoresAreOrderedByAscendingId() {
+        TopKSelector selector = new TopKSelector(10);
+        for (int id : new int[] {4, 9, 1, 7}) {
+            selector.offer(id, 0.5);
+        }
+        selector.offer(3, 0.6);
+
+        assertThat(ids(selector)).containsExactly(3, 1, 4, 7, 9);
+    }
+
+    @Test
+    void tieAtTheCutoffKeepsTheLowestIdsWhateverTheOfferOrder() {
+        TopKSelector ascending = new TopKSelector(2);
+        TopKSelector descending = new TopKSelector(2);
+        for (int id = 0; id < 6; id++) {
+            ascending.offer(id, 1.0);
+            descending.offer(5 - id, 1.0);
+        }
+
+        assertThat(ids(ascending)).containsExactly(0, 1);
+        assertThat(ids(descending)).containsExactly(0, 1);
+    }
+
+    @Test
+    void holdsFewerThanKWhenFewerAreOffered() {
+        TopKSelector selector = new TopKSelector(Integer.MAX_VALUE);
+        for (int id = 0; id < 100; id++) {
+            selector.offer(id, id % 10);
+        }
+
+        assertThat(selector.size()).isEqualTo(100);
+        assertThat(ids(selector)).startsWith(9, 19, 29).endsWith(80, 90);
+    }
+
+    @Test
+    void zeroKHoldsNothing() {
+        TopKSelector selector = new TopKSelector(0);
+        selector.offer(1, 1.0);
+
+        assertThat(selector.sort()).isZero();
+    }
+}
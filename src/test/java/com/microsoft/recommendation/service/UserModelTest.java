@@ -0,0 +1,148 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserModelTest {
+
+    private static final UserSearchConfig EXACT = new UserSearchConfig(UserSearchConfig.Mode.EXACT, 16, 200, 64);
+
+    private final IdDictionary items = new IdDictionary();
+    private final IdDictionary users = new IdDictionary();
+
+    private UserModel.UserState user(String userId, String... itemIds) {
+        int[] indices = new int[itemIds.length];
+        float[] values = new float[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            indices[i] = items.getOrAdd(itemIds[i]);
+            values[i] = 1f;
+        }
+        SparseVector weights = SparseVector.fromUnsorted(indices, values, itemIds.length);
+        return new UserModel.UserState(users.getOrAdd(userId), weights, weights.normalize());
+    }
+
+    private UserModel base() {
+        UserModel.UserState[] byOrdinal = {
+                user("U0", "P1", "P2"),
+                user("U1", "P2", "P3"),
+                user("U2", "P4")
+        };
+        return UserModel.build(items, users, byOrdinal, EXACT);
+    }
+
+    private static List<String> similarUsers(UserModel model, String userId) {
+        UserPostingsIndex.Candidates candidates = model.scoreOverlappingUsers(model.getUserVector(userId), userId,
+                new ScoreBuffers(1));
+        TopKSelector selector = new TopKSelector(Integer.MAX_VALUE);
+        for (int i = 0; i < candidates.size(); i++) {
+            selector.offer(candidates.userOrdinals()[i], candidates.scores()[i]);
+        }
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0, n = selector.sort(); i < n; i++) {
+            userIds.add(model.getUserId(selector.idAt(i)));
+        }
+        return userIds;
+    }
+
+    @Test
+    void withUpdatesLayersChangedUsersOverTheBase() {
+        UserModel model = base();
+        UserModel.UserState original = model.getUser("U1");
+
+        UserModel updated = model.withUpdates(new UserModel.UserState[] {user("U3", "P4"), user("U1", "P4")});
+
+        assertThat(updated.getNumDeltaUsers()).isEqualTo(2);
+        assertThat(updated.getNumUsers()).isEqualTo(4);
+        assertThat(updated.getUserItems("U1")).containsExactly("P4");
+        assertThat(similarUsers(updated, "U2")).containsExactlyInAnyOrder("U1", "U3");
+        // The earlier snapshot is unaffected
+        assertThat(model.getNumDeltaUsers()).isZero();
+        assertThat(model.getUser("U1")).isSameAs(original);
+        assertThat(model.getNumUsers()).isEqualTo(3);
+    }
+
+    @Test
+    void laterUpdateReplacesTheDeltaEntry() {
+        UserModel once = base().withUpdates(new UserModel.UserState[] {user("U1", "P4")});
+
+        UserModel twice = once.withUpdates(new UserModel.UserState[] {user("U1", "P1")});
+
+        assertThat(twice.getNumDeltaUsers()).isEqualTo(1);
+        assertThat(twice.getUserItems("U1")).containsExactly("P1");
+        assertThat(once.getUserItems("U1")).containsExactly("P4");
+    }
+
+    @Test
+    void needsCompactionOnceTheDeltaReachesItsLimit() {
+        UserModel model = base();
+        UserModel.UserState[] updates = new UserModel.UserState[UserModel.MIN_COMPACTION_DELTA - 1];
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = user("N" + i, "P1");
+        }
+
+        UserModel almost = model.withUpdates(updates);
+        UserModel full = almost.withUpdates(new UserModel.UserState[] {user("U0", "P3")});
+
+        assertThat(almost.needsCompaction()).isFalse();
+        assertThat(full.needsCompaction()).isTrue();
+    }
+
+    @Test
+    void compactionThresholdGrowsWithTheBase() {
+        int numUsers = 64 * 2048;
+        UserModel.UserState[] byOrdinal = new UserModel.UserState[numUsers];
+        for (int i = 0; i < numUsers; i++) {
+            byOrdinal[i] = user("B" + i, "P" + (i % 100));
+        }
+        UserModel model = UserModel.build(items, users, byOrdinal, EXACT);
+        UserModel.UserState[] updates = new UserModel.UserState[UserModel.MIN_COMPACTION_DELTA];
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = user("N" + i, "P1");
+        }
+
+        assertThat(model.compactionThreshold()).isEqualTo(2048);
+        assertThat(model.withUpdates(updates).needsCompaction()).isFalse();
+    }
+
+    @Test
+    void compactMovesTheDeltaIntoTheBase() {
+        UserModel model = base().withUpdates(new UserModel.UserState[] {user("U3", "P2", "P4"), user("U0", "P3")});
+
+        UserModel compacted = model.compact();
+
+        assertThat(compacted.getNumDeltaUsers()).isZero();
+        assertThat(compacted.getAllUserIds()).isEqualTo(model.getAllUserIds());
+        for (String userId : model.getAllUserIds()) {
+            assertThat(compacted.getUser(userId)).isEqualTo(model.getUser(userId));
+            assertThat(similarUsers(compacted, userId)).isEqualTo(similarUsers(model, userId));
+        }
+    }
+
+    @Test
+    void withCompactedBaseKeepsOnlyUsersUpdatedSinceTheSource() {
+        UserModel source = base().withUpdates(new UserModel.UserState[] {user("U3", "P1")});
+        UserModel compacted = source.compact();
+        UserModel latest = source.withUpdates(new UserModel.UserState[] {user("U2", "P2")});
+
+        UserModel rebased = latest.withCompactedBase(source, compacted);
+
+        assertThat(rebased.getNumDeltaUsers()).isEqualTo(1);
+        assertThat(rebased.getUser("U2")).isSameAs(latest.getUser("U2"));
+        assertThat(rebased.getUser("U3")).isSameAs(source.getUser("U3"));
+        assertThat(rebased.getAllUserIds()).isEqualTo(latest.getAllUserIds());
+        assertThat(similarUsers(rebased, "U0")).isEqualTo(similarUsers(latest, "U0"));
+    }
+
+    @Test
+    void withCompactedBaseRejectsASnapshotOnAnotherBase() {
+        UserModel source = base().withUpdates(new UserModel.UserState[] {user("U3", "P1")});
+        UserModel compacted = source.compact();
+        UserModel rebuilt = UserModel.build(items, users, new UserModel.UserState[] {user("U0", "P1")}, EXACT);
+
+        assertThat(rebuilt.withCompactedBase(source, compacted)).isNull();
+    }
+}
@@ -0,0 +1,96 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserPostingsIndexTest {
+
+    private static final int NUM_USERS = 200;
+    // More ordinals than fit in one dense buffer, so scoring switches to the sparse accumulator
+    private static final int SPARSE_NUM_ORDINALS = 8 << 20;
+
+    private static SparseVector randomVector(Random random) {
+        int nnz = 1 + random.nextInt(6);
+        int[] indices = new int[nnz];
+        float[] values = new float[nnz];
+        for (int i = 0; i < nnz; i++) {
+            indices[i] = random.nextInt(40);
+            values[i] = 1 + random.nextInt(3);
+        }
+        return SparseVector.fromUnsorted(indices, values, nnz).normalize();
+    }
+
+    private static UserPostingsIndex index(Random random) {
+        UserPostingsIndex index = new UserPostingsIndex();
+        for (int user = 0; user < NUM_USERS; user++) {
+            index.addUser(user, randomVector(random));
+        }
+        return index;
+    }
+
+    @Test
+    void sparseScoringMatchesDenseScoring() {
+        Random random = new Random(7);
+        UserPostingsIndex index = index(random);
+        int[] overrideOrdinals = {3, 50, NUM_USERS};
+        SparseVector[] overrideVectors = {randomVector(random), new SparseVector(new int[0], new float[0]),
+                randomVector(random)};
+        ScoreBuffers buffers = new ScoreBuffers(1);
+
+        for (int q = 0; q < 20; q++) {
+            SparseVector query = randomVector(random);
+            UserPostingsIndex.Candidates dense = index.scoreOverlappingUsers(query, q, NUM_USERS + 1,
+                    overrideOrdinals, overrideVectors, buffers);
+            UserPostingsIndex.Candidates sparse = index.scoreOverlappingUsers(query, q, SPARSE_NUM_ORDINALS,
+                    overrideOrdinals, overrideVectors, buffers);
+
+            assertThat(dense.size()).isPositive();
+            assertThat(sparse.userOrdinals()).containsExactly(dense.userOrdinals());
+            assertThat(sparse.scores()).containsExactly(dense.scores());
+            assertThat(sparse.userOrdinals()).doesNotContain(q, 50);
+        }
+    }
+
+    @Test
+    void blockScoringReturnsAZeroedBufferToThePool() {
+        Random random = new Random(11);
+        UserPostingsIndex index = index(random);
+        SparseVector[] queries = {randomVector(random), randomVector(random), randomVector(random)};
+        ScoreBuffers buffers = new ScoreBuffers(1);
+
+        UserPostingsIndex.Candidates[] block = index.scoreOverlappingUsers(queries, new int[] {0, 1, 2}, NUM_USERS,
+                new int[0], new SparseVector[0], buffers);
+
+        assertThat(buffers.getPooled()).isEqualTo(1);
+        float[] buffer = buffers.acquire(NUM_USERS * queries.length);
+        for (float score : buffer) {
+            assertThat(score).isZero();
+        }
+        buffers.release(buffer);
+        for (int q = 0; q < queries.length; q++) {
+            UserPostingsIndex.Candidates single = index.scoreOverlappingUsers(queries[q], q, NUM_USERS,
+                    new int[0], new SparseVector[0], buffers);
+            assertThat(block[q].userOrdinals()).containsExactly(single.userOrdinals());
+            assertThat(block[q].scores()).containsExactly(single.scores());
+        }
+    }
+
+    @Test
+    void poolKeepsAtMostItsCapacity() {
+        ScoreBuffers buffers = new ScoreBuffers(2);
+        float[] first = buffers.acquire(8);
+        float[] second = buffers.acquire(8);
+        float[] third = buffers.acquire(8);
+
+        buffers.release(first);
+        buffers.release(second);
+        buffers.release(third);
+
+        assertThat(buffers.getPooled()).isEqualTo(2);
+        assertThat(buffers.acquire(4)).isSameAs(first);
+        assertThat(buffers.acquire(16)).isNotSameAs(second).hasSize(16);
+    }
+}
@@ -0,0 +1,68 @@
+package com.microsoft.recommendation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VectorStoreTest {
+
+    private final VectorStore store = new VectorStore(
+            new UserSearchConfig(UserSearchConfig.Mode.EXACT, 16, 200, 64), DenseVectorMath.select("scalar"));
+
+    // Unit vector at an angle, so item i is closest to items i - 1 and i + 1
+    private static double[] vector(int i) {
+        double angle = i * 0.001;
+        return new double[] {Math.cos(angle), Math.sin(angle)};
+    }
+
+    @Test
+    void appendsItemsAcrossChunksInSmallBatches() {
+        for (int batch = 0; batch < 50; batch++) {
+            Map<String, double[]> vectors = new LinkedHashMap<>();
+            for (int i = batch * 50; i < (batch + 1) * 50; i++) {
+                vectors.put("P" + i, vector(i));
+            }
+            store.addAll(vectors);
+        }
+
+        assertThat(store.getAllItemIds()).hasSize(2500);
+        assertThat(store.contains("P0")).isTrue();
+        assertThat(store.contains("P2499")).isTrue();
+        assertThat(store.contains("P2500")).isFalse();
+        assertThat(store.getVector("P1500")).containsExactly(vector(1500));
+
+        List<Map.Entry<String, Double>> nearest = store.query(vector(2000), 3);
+        assertThat(nearest).extracting(Map.Entry::getKey).containsExactlyInAnyOrder("P1999", "P2000", "P2001");
+        assertThat(nearest.get(0).getKey()).isEqualTo("P2000");
+    }
+
+    @Test
+    void replacingAnItemKeepsItsPosition() {
+        store.addAll(Map.of("P1", vector(1)));
+        store.addAll(Map.of("P2", vector(2)));
+
+        store.add("P1", vector(100));
+
+        assertThat(store.getAllItemIds()).containsExactlyInAnyOrder("P1", "P2");
+        assertThat(store.getVector("P1")).containsExactly(vector(100));
+        assertThat(store.query(vector(100), 1).get(0).getKey()).isEqualTo("P1");
+    }
+
+    @Test
+    void replaceAllStartsFromEmptyStorage() {
+        store.addAll(Map.of("P1", vector(1), "P2", vector(2)));
+
+        store.replaceAll(Map.of("P3", vector(3)));
+
+        assertThat(store.getAllItemIds()).containsExactly("P3");
+        assertThat(store.contains("P1")).isFalse();
+        assertThat(store.getVector("P1")).isNull();
+
+        store.clear();
+        assertThat(store.getAllItemIds()).isEmpty();
+    }
+}
@@ -0,0 +1,216 @@
+package com.microsoft.recommendation.service;
+
+import com.microsoft.recommendation.model.Activity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private WriteAheadLog open(DataSize segmentSize) throws IOException {
+        return new WriteAheadLog(directory.toString(), "every-write", segmentSize, Duration.ZERO);
+    }
+
+    private WriteAheadLog open() throws IOException {
+        return open(DataSize.ofMegabytes(1));
+    }
+
+    private static List<Activity> batch(String userId, String itemId) {
+        return List.of(new Activity(userId, itemId, "view"));
+    }
+
+    /**
+     * Replay from a position and describe each record as "TYPE@timestamp:user/item/action,..."
+     */
+    private static List<String> replay(WriteAheadLog wal, long fromPosition) throws IOException {
+        List<String> records = new ArrayList<>();
+        wal.replay(fromPosition, (type, activities, timestamp) -> {
+            StringBuilder record = new StringBuilder(type + "@" + timestamp + ":");
+            for (Activity activity : activities) {
+                record.append(activity.getUserId()).append('/').append(activity.getItemId())
+                        .append('/').append(activity.getAction());
+                if (activity.getTimestamp() != null) {
+                    record.append('/').append(activity.getTimestamp().toEpochMilli());
+                }
+                record.append(',');
+            }
+            records.add(record.toString());
+        });
+        return records;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("wal-")).sorted().toList();
+        }
+    }
+
+    @Test
+    void replaysRecordsInOrderAfterReopening() throws Exception {
+        WriteAheadLog wal = open();
+        wal.append(WriteAheadLog.RecordType.APPEND, batch("U1", "P1"), 10);
+        wal.append(WriteAheadLog.RecordType.APPEND, List.of(
+                new Activity("U2", "P2", "add_to_cart", Instant.ofEpochMilli(1234)),
+                new Activity("U3", "P3", "view")), 20);
+        long end = wal.getPosition();
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertThat(reopened.getPosition()).isEqualTo(end);
+        assertThat(replay(reopened, 0)).containsExactly(
+                "APPEND@10:U1/P1/view,",
+                "APPEND@20:U2/P2/add_to_cart/1234,U3/P3/view,");
+        reopened.close();
+    }
+
+    @Test
+    void keepsReplaceFramingRecords() throws Exception {
+        WriteAheadLog wal = open();
+        wal.append(WriteAheadLog.RecordType.REPLACE_BEGIN, List.of(), 1);
+        wal.append(WriteAheadLog.RecordType.REPLACE_BATCH, batch("U1", "P1"), 2);
+        wal.append(WriteAheadLog.RecordType.REPLACE_COMMIT, List.of(), 3);
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertThat(replay(reopened, 0)).containsExactly(
+                "REPLACE_BEGIN@1:", "REPLACE_BATCH@2:U1/P1/view,", "REPLACE_COMMIT@3:");
+        reopened.close();
+    }
+
+    @Test
+    void truncatesTornTailOnOpen() throws Exception {
+        WriteAheadLog wal = open();
+        wal.append(WriteAheadLog.RecordType.APPEND, batch("U1", "P1"), 1);
+        long end = wal.append(WriteAheadLog.RecordType.APPEND, batch("U2", "P2"), 2);
+        wal.close();
+        Path segment = segments().get(0);
+        // A crash in the middle of a record: the header promises more bytes than were written
+        Files.write(segment, new byte[] {0, 0, 0, 100, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        WriteAheadLog reopened = open();
+        assertThat(reopened.getPosition()).isEqualTo(end);
+        assertThat(Files.size(segment)).isEqualTo(end);
+        reopened.append(WriteAheadLog.RecordType.APPEND, batch("U3", "P3"), 3);
+        reopened.close();
+
+        WriteAheadLog recovered = open();
+        assertThat(replay(recovered, 0)).containsExactly(
+                "APPEND@1:U1/P1/view,", "APPEND@2:U2/P2/view,", "APPEND@3:U3/P3/view,");
+        recovered.close();
+    }
+
+    @Test
+    void stopsAtRecordWithBadChecksumInLastSegment() throws Exception {
+        WriteAheadLog wal = open();
+        long first = wal.append(WriteAheadLog.RecordType.APPEND, batch("U1", "P1"), 1);
+        wal.append(WriteAheadLog.RecordType.APPEND, batch("U2", "P2"), 2);
+        wal.close();
+        flipLastByte(segments().get(0));
+
+        WriteAheadLog reopened = open();
+        assertThat(reopened.getPosition()).isEqualTo(first);
+        assertThat(replay(reopened, 0)).containsExactly("APPEND@1:U1/P1/view,");
+        reopened.close();
+    }
+
+    @Test
+    void rotatesSegmentsAndReplaysAcrossThem() throws Exception {
+        WriteAheadLog wal = open(DataSize.ofBytes(128));
+        for (int i = 0; i < 10; i++) {
+            wal.append(WriteAheadLog.RecordType.APPEND, batch("U" + i, "P" + i), i);
+        }
+        wal.close();
+
+        assertThat(segments()).hasSizeGreaterThan(2);
+        for (Path segment : segments()) {
+            assertThat(Files.size(segment)).isLessThanOrEqualTo(128);
+        }
+        WriteAheadLog reopened = open(DataSize.ofBytes(128));
+        assertThat(replay(reopened, 0)).hasSize(10).startsWith("APPEND@0:U0/P0/view,");
+        reopened.close();
+    }
+
+    @Test
+    void replaysFromSnapshotPositionAfterDeletingEarlierSegments() throws Exception {
+        WriteAheadLog wal = open(DataSize.ofBytes(128));
+        List<Long> positions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            positions.add(wal.append(WriteAheadLog.RecordType.APPEND, batch("U" + i, "P" + i), i));
+        }
+        long snapshotPosition = positions.get(5);
+        int before = segments().size();
+        wal.deleteSegmentsBefore(snapshotPosition);
+        wal.close();
+
+        assertThat(segments()).hasSizeLessThan(before);
+        WriteAheadLog reopened = open(DataSize.ofBytes(128));
+        assertThat(replay(reopened, snapshotPosition)).containsExactly(
+                "APPEND@6:U6/P6/view,", "APPEND@7:U7/P7/view,", "APPEND@8:U8/P8/view,", "APPEND@9:U9/P9/view,");
+        reopened.close();
+    }
+
+    @Test
+    void corruptSealedSegmentFailsReplay() throws Exception {
+        WriteAheadLog wal = open(DataSize.ofBytes(128));
+        for (int i = 0; i < 10; i++) {
+            wal.append(WriteAheadLog.RecordType.APPEND, batch("U" + i, "P" + i), i);
+        }
+        wal.close();
+        flipLastByte(segments().get(0));
+
+        WriteAheadLog reopened = open(DataSize.ofBytes(128));
+        assertThatThrownBy(() -> replay(reopened, 0))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Corrupt write-ahead log record");
+        reopened.close();
+    }
+
+    @Test
+    void continuesPastSnapshotPositionWhenLogWasReset() throws Exception {
+        WriteAheadLog wal = open();
+        assertThat(replay(wal, 1000)).isEmpty();
+
+        long position = wal.append(WriteAheadLog.RecordType.APPEND, batch("U1", "P1"), 1);
+        wal.close();
+
+        assertThat(position).isGreaterThan(1000);
+        WriteAheadLog reopened = open();
+        assertThat(replay(reopened, 1000)).containsExactly("APPEND@1:U1/P1/view,");
+        reopened.close();
+    }
+
+    @Test
+    void disabledWithoutDirectory() throws Exception {
+        WriteAheadLog wal = new WriteAheadLog("", "batched", DataSize.ofMegabytes(1), Duration.ZERO);
+
+        assertThat(wal.isEnabled()).isFalse();
+        assertThat(wal.append(WriteAheadLog.RecordType.APPEND, batch("U1", "P1"), 1)).isZero();
+        assertThat(replay(wal, 0)).isEmpty();
+    }
+
+    private static void flipLastByte(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+    }
+}